@@ -0,0 +1,110 @@
+package com.codingr.nfclib.benchmarks;
+
+import com.codingr.nfclib.hce.core.ControllerRegistry;
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduResponseSpec;
+import com.codingr.nfclib.schema.ClientFactory;
+import com.codingr.nfclib.schema.LoopbackTransport;
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+import com.codingr.nfclib.schema.examples.SampleServerUsage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end exchanges between a {@link ClientFactory} client and the sample controller
+ * through {@link LoopbackTransport}: client encoding and response resolution, router
+ * dispatch and the handler, without any I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClientExchangeBenchmark {
+
+    private static final String AID = "F0010203040506";
+
+    private LoopbackTransport transport;
+    private ClientFactory.GenericSchemaClient client;
+    private ClientFactory.BufferedSchemaClient bufferedClient;
+    private ByteBuffer updateData;
+    private byte[] getDataApdu;
+
+    @Setup
+    public void setUp() throws ClientFactory.NfcCommunicationException {
+        RouterEngine engine = new RouterEngine.Builder()
+                .registry(new ControllerRegistry())
+                .controllerClasses(SampleServerUsage.SampleCardController.class)
+                .build();
+        SampleCardSchema schema = new SampleCardSchema();
+
+        transport = new LoopbackTransport(engine);
+        client = ClientFactory.createGenericClient(schema, transport, new ClientFactory.ClientResponseHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec, byte[] rawResponse) {
+                return (T) responseSpec;
+            }
+        });
+        client.selectApplication(AID);
+        client.sendCommand(SampleCardSchema.AUTHENTICATE, "1234".getBytes());
+
+        bufferedClient = ClientFactory.createBufferedClient(schema,
+                ClientFactory.asBufferTransport(new LoopbackTransport(engine)),
+                new ClientFactory.BufferedResponseHandler() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec,
+                                                ByteBuffer response) {
+                        return (T) responseSpec;
+                    }
+                });
+        bufferedClient.selectApplication(AID);
+        bufferedClient.sendCommand(SampleCardSchema.AUTHENTICATE, ByteBuffer.wrap("1234".getBytes()));
+        updateData = ByteBuffer.wrap("New record".getBytes());
+
+        getDataApdu = new byte[]{(byte) 0x80, 0x10, 0x00, 0x00};
+    }
+
+    @Benchmark
+    public ApduResponseSpec getData() throws ClientFactory.NfcCommunicationException {
+        return client.sendCommand(SampleCardSchema.GET_DATA, null);
+    }
+
+    @Benchmark
+    public ApduResponseSpec updateRecord() throws ClientFactory.NfcCommunicationException {
+        return client.sendCommand(SampleCardSchema.UPDATE_RECORD, "New record".getBytes());
+    }
+
+    @Benchmark
+    public ApduResponseSpec bufferedGetData() throws ClientFactory.NfcCommunicationException {
+        return bufferedClient.sendCommand(SampleCardSchema.GET_DATA, null);
+    }
+
+    @Benchmark
+    public ApduResponseSpec bufferedUpdateRecord() throws ClientFactory.NfcCommunicationException {
+        updateData.rewind();
+        return bufferedClient.sendCommand(SampleCardSchema.UPDATE_RECORD, updateData);
+    }
+
+    /**
+     * Router and handler only, without the client.
+     */
+    @Benchmark
+    public byte[] rawGetData() throws ClientFactory.NfcCommunicationException {
+        return transport.transmit(getDataApdu);
+    }
+
+    @Benchmark
+    public boolean select() throws ClientFactory.NfcCommunicationException {
+        return client.selectApplication(AID);
+    }
+}
@@ -0,0 +1,63 @@
+package com.codingr.nfclib.benchmarks;
+
+import com.codingr.nfclib.hce.core.ApduResponse;
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte-level helpers on the APDU path: hex conversion and response serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"16", "256"})
+    public int length;
+
+    private byte[] bytes;
+    private String hex;
+    private ApduResponse dataResponse;
+    private ApduResponse statusOnlyResponse;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        hex = ApduUtil.bytesToHex(bytes);
+        dataResponse = new ApduResponse(bytes, ApduUtil.SW_OK);
+        statusOnlyResponse = new ApduResponse(null, ApduUtil.SW_OK);
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return ApduUtil.bytesToHex(bytes);
+    }
+
+    @Benchmark
+    public byte[] hexToBytes() {
+        return ApduUtil.hexStringToByteArray(hex);
+    }
+
+    @Benchmark
+    public byte[] responseToBytes() {
+        return dataResponse.toBytes();
+    }
+
+    @Benchmark
+    public byte[] statusOnlyToBytes() {
+        return statusOnlyResponse.toBytes();
+    }
+}
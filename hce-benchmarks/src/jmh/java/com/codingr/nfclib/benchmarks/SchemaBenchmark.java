@@ -0,0 +1,94 @@
+package com.codingr.nfclib.benchmarks;
+
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduResponseSpec;
+import com.codingr.nfclib.schema.CommandValidator;
+import com.codingr.nfclib.schema.CompiledSchema;
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command lookup and response-spec resolution on the sample schema: the declarative
+ * {@code BaseApduSchema} paths against their {@link CompiledSchema} counterparts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchemaBenchmark {
+
+    private SampleCardSchema schema;
+    private CompiledSchema compiled;
+    private ApduCommandSpec getData;
+    private CommandValidator getDataValidator;
+    private byte[] updateRecordApdu;
+    private byte[] unknownApdu;
+    private byte[] dataResponse;
+    private byte[] errorResponse;
+
+    @Setup
+    public void setUp() {
+        schema = new SampleCardSchema();
+        compiled = CompiledSchema.compile(schema);
+        getData = schema.getCommand(SampleCardSchema.GET_DATA);
+        getDataValidator = new CommandValidator(getData);
+        // Last declared command, the worst case for a linear scan
+        updateRecordApdu = new byte[]{(byte) 0x80, 0x30, 0x00, 0x00, 0x04, 'd', 'a', 't', 'a'};
+        unknownApdu = new byte[]{0x00, (byte) 0xEE, 0x00, 0x00};
+        dataResponse = new byte[34];
+        dataResponse[32] = (byte) 0x90;
+        errorResponse = new byte[]{0x69, (byte) 0x82};
+    }
+
+    @Benchmark
+    public ApduCommandSpec findCommandByApdu() {
+        return schema.findCommandByApdu(updateRecordApdu);
+    }
+
+    @Benchmark
+    public ApduCommandSpec findCommandByApduMiss() {
+        return schema.findCommandByApdu(unknownApdu);
+    }
+
+    @Benchmark
+    public int compiledIndexOf() {
+        return compiled.indexOf(updateRecordApdu, updateRecordApdu.length);
+    }
+
+    @Benchmark
+    public int compiledIndexOfMiss() {
+        return compiled.indexOf(unknownApdu, unknownApdu.length);
+    }
+
+    @Benchmark
+    public ApduResponseSpec resolveResponseSpec() {
+        return resolve(getData, errorResponse);
+    }
+
+    @Benchmark
+    public ApduResponseSpec resolveResponseSpecWithData() {
+        return resolve(getData, dataResponse);
+    }
+
+    @Benchmark
+    public int validatorFindResponse() {
+        return getDataValidator.findResponse(0x6982, 0);
+    }
+
+    private static ApduResponseSpec resolve(ApduCommandSpec commandSpec, byte[] response) {
+        for (ApduResponseSpec responseSpec : commandSpec.getPossibleResponses()) {
+            if (responseSpec.matches(response)) {
+                return responseSpec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.codingr.nfclib.benchmarks;
+
+import com.codingr.nfclib.hce.annotations.ApduController;
+import com.codingr.nfclib.hce.annotations.ApduMapping;
+import com.codingr.nfclib.hce.core.ApduResponse;
+import com.codingr.nfclib.hce.core.BaseApduController;
+import com.codingr.nfclib.hce.core.ControllerFactory;
+import com.codingr.nfclib.hce.core.ControllerRegistry;
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.hce.core.RouterSession;
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SELECT handling in the router: AID lookup, controller creation and activation.
+ * Registered AIDs resolve through the {@link ControllerRegistry}; located AIDs fall
+ * back to the {@code @ApduController} scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectBenchmark {
+
+    static final String LOCATED_AID = "F0BE0C0000000001";
+
+    @Param({"1", "16", "256"})
+    public int registeredAids;
+
+    private RouterSession session;
+    private byte[] selectRegistered;
+    private byte[] selectLocated;
+    private byte[] selectUnknown;
+
+    @Setup
+    public void setUp() {
+        ControllerRegistry registry = new ControllerRegistry();
+        ControllerFactory factory = new ControllerFactory() {
+            @Override
+            public Object createController() {
+                return new EchoController();
+            }
+        };
+        String lastAid = null;
+        for (int i = 0; i < registeredAids; i++) {
+            lastAid = String.format("A0000000%08X", i);
+            registry.register(lastAid, factory);
+        }
+        session = new RouterEngine.Builder()
+                .registry(registry)
+                .controllerClasses(EchoController.class)
+                .build()
+                .newSession();
+        selectRegistered = select(lastAid);
+        selectLocated = select(LOCATED_AID);
+        selectUnknown = select("D2760000850101");
+    }
+
+    @Benchmark
+    public byte[] selectRegistered() {
+        return session.process(selectRegistered);
+    }
+
+    @Benchmark
+    public byte[] selectLocated() {
+        return session.process(selectLocated);
+    }
+
+    @Benchmark
+    public byte[] selectUnknown() {
+        return session.process(selectUnknown);
+    }
+
+    static byte[] select(String aid) {
+        byte[] aidBytes = ApduUtil.hexStringToByteArray(aid);
+        byte[] apdu = new byte[5 + aidBytes.length];
+        apdu[1] = (byte) 0xA4;
+        apdu[2] = 0x04;
+        apdu[4] = (byte) aidBytes.length;
+        System.arraycopy(aidBytes, 0, apdu, 5, aidBytes.length);
+        return apdu;
+    }
+
+    /**
+     * Minimal controller, so the measurement is dominated by routing rather than construction.
+     */
+    @ApduController(aids = {LOCATED_AID})
+    public static class EchoController extends BaseApduController {
+
+        @ApduMapping(command = {(byte) 0x80, (byte) 0xEC})
+        public ApduResponse echo(byte[] apdu) {
+            return ok(apdu);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.codingr.nfclib.benchmarks.load;
+
+/**
+ * Log-linear latency histogram: each power of two of nanoseconds is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so reported percentiles are within about 6%
+ * of the recorded value at any magnitude. Not thread-safe; every terminal records into
+ * its own histogram and the results are merged with {@link #add}.
+ */
+final class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[index(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() { return count; }
+    long getMax() { return max; }
+
+    long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     * @return The upper bound of the bucket holding the percentile, capped at the maximum
+     */
+    long getPercentile(double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long width = 1L << (magnitude - SUB_BITS);
+        return (1L << magnitude) + (sub + 1) * width - 1;
+    }
+}
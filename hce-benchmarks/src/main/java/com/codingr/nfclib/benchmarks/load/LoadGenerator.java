@@ -0,0 +1,274 @@
+package com.codingr.nfclib.benchmarks.load;
+
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduResponseSpec;
+import com.codingr.nfclib.schema.ClientFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives N simulated terminals through a {@link TransactionScript} for a fixed time and
+ * reports throughput, latency percentiles and error rates.
+ *
+ * <p>Every terminal is one thread with its own transport and client, like a physical
+ * reader. Virtual threads are used when the running JDK provides them (looked up
+ * reflectively, so the tool still builds for Java 8), which lets a single process hold
+ * thousands of blocked terminals; otherwise each terminal gets a platform thread.
+ * Terminals record into private histograms that are merged after the run, so measuring
+ * adds no contention of its own.</p>
+ */
+public final class LoadGenerator {
+
+    /**
+     * Opens the transport of one simulated terminal.
+     */
+    public interface TransportFactory {
+        ClientFactory.NfcTransport open(int terminal) throws Exception;
+    }
+
+    public enum ThreadMode {
+        /** Virtual threads if available, platform threads otherwise */
+        AUTO,
+        VIRTUAL,
+        PLATFORM
+    }
+
+    private static final ClientFactory.ClientResponseHandler RESPONSE_SPEC_HANDLER =
+            new ClientFactory.ClientResponseHandler() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec,
+                                            byte[] rawResponse) {
+                    return (T) responseSpec;
+                }
+            };
+
+    private final TransactionScript script;
+    private final TransportFactory transportFactory;
+    private final int terminals;
+    private final long durationMillis;
+    private final long warmupMillis;
+    private final long thinkTimeMillis;
+    private final ThreadMode threadMode;
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    private LoadGenerator(Builder builder) {
+        this.script = builder.script;
+        this.transportFactory = builder.transportFactory;
+        this.terminals = builder.terminals;
+        this.durationMillis = builder.durationMillis;
+        this.warmupMillis = builder.warmupMillis;
+        this.thinkTimeMillis = builder.thinkTimeMillis;
+        this.threadMode = builder.threadMode;
+    }
+
+    /**
+     * Connects all terminals, runs the warm-up and the measured period, then disconnects.
+     */
+    public LoadReport run() throws InterruptedException {
+        ThreadFactory virtualThreads = threadMode == ThreadMode.PLATFORM ? null : virtualThreadFactory();
+        if (threadMode == ThreadMode.VIRTUAL && virtualThreads == null) {
+            throw new IllegalStateException("Virtual threads are not available in this JDK");
+        }
+        measuring = false;
+        stopped = false;
+
+        final CountDownLatch connected = new CountDownLatch(terminals);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger connectErrors = new AtomicInteger();
+        List<Terminal> all = new ArrayList<>(terminals);
+        List<Thread> threads = new ArrayList<>(terminals);
+        for (int i = 0; i < terminals; i++) {
+            final Terminal terminal = new Terminal(i);
+            Runnable body = new Runnable() {
+                @Override
+                public void run() {
+                    terminal.run(connected, start, connectErrors);
+                }
+            };
+            Thread thread = virtualThreads != null ? virtualThreads.newThread(body) : new Thread(body, "terminal-" + i);
+            thread.setDaemon(true);
+            all.add(terminal);
+            threads.add(thread);
+            thread.start();
+        }
+
+        connected.await();
+        start.countDown();
+        Thread.sleep(warmupMillis);
+        long measureStart = System.nanoTime();
+        measuring = true;
+        Thread.sleep(durationMillis);
+        stopped = true;
+        long elapsed = System.nanoTime() - measureStart;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram commandLatency = new LatencyHistogram();
+        LatencyHistogram transactionLatency = new LatencyHistogram();
+        long transactions = 0;
+        long failedTransactions = 0;
+        long commands = 0;
+        long commandErrors = 0;
+        for (Terminal terminal : all) {
+            commandLatency.add(terminal.commandLatency);
+            transactionLatency.add(terminal.transactionLatency);
+            transactions += terminal.transactions;
+            failedTransactions += terminal.failedTransactions;
+            commands += terminal.commands;
+            commandErrors += terminal.commandErrors;
+        }
+        return new LoadReport(terminals, virtualThreads != null ? "virtual" : "platform", elapsed,
+                transactions, failedTransactions, commands, commandErrors, connectErrors.get(),
+                commandLatency, transactionLatency);
+    }
+
+    /**
+     * @return A factory for virtual threads, or null if the JDK has none
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "terminal-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One simulated terminal. Counters are only touched by its own thread until the run is joined.
+     */
+    private final class Terminal {
+        private final int index;
+        final LatencyHistogram commandLatency = new LatencyHistogram();
+        final LatencyHistogram transactionLatency = new LatencyHistogram();
+        long transactions;
+        long failedTransactions;
+        long commands;
+        long commandErrors;
+
+        Terminal(int index) {
+            this.index = index;
+        }
+
+        void run(CountDownLatch connected, CountDownLatch start, AtomicInteger connectErrors) {
+            ClientFactory.NfcTransport transport;
+            try {
+                transport = transportFactory.open(index);
+            } catch (Exception e) {
+                connectErrors.incrementAndGet();
+                connected.countDown();
+                return;
+            }
+            ClientFactory.GenericSchemaClient client =
+                    ClientFactory.createGenericClient(script.getSchema(), transport, RESPONSE_SPEC_HANDLER);
+            connected.countDown();
+            try {
+                start.await();
+                while (!stopped) {
+                    transaction(client, transport);
+                    if (thinkTimeMillis > 0) {
+                        TimeUnit.MILLISECONDS.sleep(thinkTimeMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                transport.disconnect();
+            }
+        }
+
+        private void transaction(ClientFactory.GenericSchemaClient client, ClientFactory.NfcTransport transport) {
+            boolean record = measuring;
+            long transactionStart = System.nanoTime();
+            boolean failed = false;
+            try {
+                long t = System.nanoTime();
+                boolean selected = client.selectApplication(script.getAid());
+                failed = !selected;
+                command(record, System.nanoTime() - t, selected);
+                for (int i = 0; i < script.getSteps().size() && !failed; i++) {
+                    TransactionScript.Step step = script.getSteps().get(i);
+                    t = System.nanoTime();
+                    ApduResponseSpec response = client.sendCommand(step.getCommand(), step.getData());
+                    boolean ok = response != null && response.isSuccess();
+                    command(record, System.nanoTime() - t, ok);
+                    failed = !ok;
+                }
+            } catch (ClientFactory.NfcCommunicationException e) {
+                command(record, 0, false);
+                failed = true;
+                transport.reconnect();
+            }
+            if (record) {
+                transactionLatency.record(System.nanoTime() - transactionStart);
+                transactions++;
+                if (failed) {
+                    failedTransactions++;
+                }
+            }
+        }
+
+        private void command(boolean record, long nanos, boolean ok) {
+            if (!record) {
+                return;
+            }
+            commands++;
+            if (ok) {
+                commandLatency.record(nanos);
+            } else {
+                commandErrors++;
+            }
+        }
+    }
+
+    public static class Builder {
+        private final TransactionScript script;
+        private final TransportFactory transportFactory;
+        private int terminals = 100;
+        private long durationMillis = 10000;
+        private long warmupMillis = 2000;
+        private long thinkTimeMillis;
+        private ThreadMode threadMode = ThreadMode.AUTO;
+
+        public Builder(TransactionScript script, TransportFactory transportFactory) {
+            this.script = script;
+            this.transportFactory = transportFactory;
+        }
+
+        /**
+         * Number of concurrent terminals. Default 100.
+         */
+        public Builder terminals(int terminals) { this.terminals = terminals; return this; }
+
+        /**
+         * Length of the measured period. Default 10 s.
+         */
+        public Builder durationMillis(long millis) { this.durationMillis = millis; return this; }
+
+        /**
+         * Unmeasured load before the measured period. Default 2 s.
+         */
+        public Builder warmupMillis(long millis) { this.warmupMillis = millis; return this; }
+
+        /**
+         * Pause of each terminal between transactions, e.g. to model card presentation. Default 0.
+         */
+        public Builder thinkTimeMillis(long millis) { this.thinkTimeMillis = millis; return this; }
+
+        public Builder threadMode(ThreadMode mode) { this.threadMode = mode; return this; }
+
+        public LoadGenerator build() {
+            return new LoadGenerator(this);
+        }
+    }
+}
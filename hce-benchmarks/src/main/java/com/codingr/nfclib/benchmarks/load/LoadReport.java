@@ -0,0 +1,113 @@
+package com.codingr.nfclib.benchmarks.load;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one {@link LoadGenerator} run.
+ */
+public final class LoadReport {
+
+    private final int terminals;
+    private final String threadMode;
+    private final long elapsedNanos;
+    private final long transactions;
+    private final long failedTransactions;
+    private final long commands;
+    private final long commandErrors;
+    private final long connectErrors;
+    private final LatencyHistogram commandLatency;
+    private final LatencyHistogram transactionLatency;
+
+    LoadReport(int terminals, String threadMode, long elapsedNanos, long transactions, long failedTransactions,
+               long commands, long commandErrors, long connectErrors,
+               LatencyHistogram commandLatency, LatencyHistogram transactionLatency) {
+        this.terminals = terminals;
+        this.threadMode = threadMode;
+        this.elapsedNanos = elapsedNanos;
+        this.transactions = transactions;
+        this.failedTransactions = failedTransactions;
+        this.commands = commands;
+        this.commandErrors = commandErrors;
+        this.connectErrors = connectErrors;
+        this.commandLatency = commandLatency;
+        this.transactionLatency = transactionLatency;
+    }
+
+    public int getTerminals() { return terminals; }
+
+    /**
+     * @return {@code virtual} or {@code platform}
+     */
+    public String getThreadMode() { return threadMode; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @return Completed transactions, failed ones included
+     */
+    public long getTransactions() { return transactions; }
+    public long getFailedTransactions() { return failedTransactions; }
+    public long getCommands() { return commands; }
+
+    /**
+     * @return Commands that failed in the transport or were answered with a non-success status
+     */
+    public long getCommandErrors() { return commandErrors; }
+
+    /**
+     * @return Terminals that could not open their transport
+     */
+    public long getConnectErrors() { return connectErrors; }
+
+    public double getTransactionsPerSecond() {
+        return elapsedNanos == 0 ? 0 : transactions * 1e9 / elapsedNanos;
+    }
+
+    public double getCommandsPerSecond() {
+        return elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos;
+    }
+
+    public double getErrorRate() {
+        return commands == 0 ? 0 : (double) commandErrors / commands;
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     */
+    public long getCommandLatencyNanos(double percentile) {
+        return commandLatency.getPercentile(percentile);
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     */
+    public long getTransactionLatencyNanos(double percentile) {
+        return transactionLatency.getPercentile(percentile);
+    }
+
+    /**
+     * @return Column headings matching {@link #toString()}
+     */
+    public static String header() {
+        return String.format(Locale.ROOT, "%9s %8s %6s %12s %12s %8s | %9s %9s %9s %9s %9s | %9s %9s",
+                "terminals", "threads", "cores", "tx/s", "cmd/s", "errors%",
+                "cmd p50", "cmd p90", "cmd p99", "cmd p99.9", "cmd max", "tx p50", "tx p99");
+    }
+
+    /**
+     * @return One line of results; latencies in microseconds
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%9d %8s %6d %12.0f %12.0f %8.3f | %9.1f %9.1f %9.1f %9.1f %9.1f | %9.1f %9.1f",
+                terminals, threadMode, Runtime.getRuntime().availableProcessors(),
+                getTransactionsPerSecond(), getCommandsPerSecond(), getErrorRate() * 100,
+                micros(commandLatency.getPercentile(50)), micros(commandLatency.getPercentile(90)),
+                micros(commandLatency.getPercentile(99)), micros(commandLatency.getPercentile(99.9)),
+                micros(commandLatency.getMax()),
+                micros(transactionLatency.getPercentile(50)), micros(transactionLatency.getPercentile(99)));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,136 @@
+package com.codingr.nfclib.benchmarks.load;
+
+import com.codingr.nfclib.hce.core.ControllerRegistry;
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.relay.RelayServer;
+import com.codingr.nfclib.relay.TcpNfcTransport;
+import com.codingr.nfclib.schema.ClientFactory;
+import com.codingr.nfclib.schema.LoopbackTransport;
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+import com.codingr.nfclib.schema.examples.SampleServerUsage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+/**
+ * Command-line load test against the sample card.
+ *
+ * <pre>
+ * --target     loopback | relay | host:port   (default loopback)
+ * --terminals  comma-separated terminal counts, one run each (default 100,1000)
+ * --io-threads comma-separated relay I/O thread counts, one run each (default: cores)
+ * --duration   measured seconds per run (default 10)
+ * --warmup     warm-up seconds per run (default 2)
+ * --think      milliseconds between transactions of a terminal (default 0)
+ * --threads    auto | virtual | platform (default auto)
+ * --script     transaction script, see {@link TransactionScript}
+ * </pre>
+ *
+ * {@code loopback} drives the router engine in this JVM; {@code relay} starts a local
+ * {@link RelayServer} and connects over TCP; {@code host:port} targets a running relay.
+ * Run with {@code ./gradlew :hce-benchmarks:loadTest -PloadArgs="--target relay --terminals 100,1000,5000"}.
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_SCRIPT =
+            "SELECT F0010203040506; AUTHENTICATE 31323334; GET_DATA; UPDATE_RECORD 4E6577207265636F7264";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String target = "loopback";
+        int[] terminalCounts = {100, 1000};
+        int[] ioThreadCounts = {Runtime.getRuntime().availableProcessors()};
+        long durationMillis = 10000;
+        long warmupMillis = 2000;
+        long thinkMillis = 0;
+        LoadGenerator.ThreadMode threadMode = LoadGenerator.ThreadMode.AUTO;
+        String scriptText = DEFAULT_SCRIPT;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--target": target = value; break;
+                case "--terminals": terminalCounts = parseInts(value); break;
+                case "--io-threads": ioThreadCounts = parseInts(value); break;
+                case "--duration": durationMillis = Long.parseLong(value) * 1000; break;
+                case "--warmup": warmupMillis = Long.parseLong(value) * 1000; break;
+                case "--think": thinkMillis = Long.parseLong(value); break;
+                case "--threads": threadMode = LoadGenerator.ThreadMode.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "--script": scriptText = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        TransactionScript script = TransactionScript.parse(new SampleCardSchema(), scriptText);
+        final RouterEngine engine = new RouterEngine.Builder()
+                .registry(new ControllerRegistry())
+                .controllerClasses(SampleServerUsage.SampleCardController.class)
+                .build();
+
+        System.out.println("Target: " + target + ", script: " + script);
+        System.out.println(LoadReport.header());
+        if (target.equals("relay")) {
+            for (int ioThreads : ioThreadCounts) {
+                RelayServer server = new RelayServer.Builder(engine).ioThreads(ioThreads).build().start();
+                try {
+                    System.out.println("-- relay with " + ioThreads + " I/O threads");
+                    runAll(script, tcp(new InetSocketAddress("127.0.0.1", server.getPort())),
+                            terminalCounts, durationMillis, warmupMillis, thinkMillis, threadMode);
+                } finally {
+                    server.close();
+                }
+            }
+        } else if (target.equals("loopback")) {
+            runAll(script, new LoadGenerator.TransportFactory() {
+                @Override
+                public ClientFactory.NfcTransport open(int terminal) {
+                    return new LoopbackTransport(engine);
+                }
+            }, terminalCounts, durationMillis, warmupMillis, thinkMillis, threadMode);
+        } else {
+            int colon = target.lastIndexOf(':');
+            runAll(script, tcp(new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)))),
+                    terminalCounts, durationMillis, warmupMillis, thinkMillis, threadMode);
+        }
+    }
+
+    private static void runAll(TransactionScript script, LoadGenerator.TransportFactory transports, int[] terminalCounts,
+                               long durationMillis, long warmupMillis, long thinkMillis,
+                               LoadGenerator.ThreadMode threadMode) throws InterruptedException {
+        for (int terminals : terminalCounts) {
+            LoadReport report = new LoadGenerator.Builder(script, transports)
+                    .terminals(terminals)
+                    .durationMillis(durationMillis)
+                    .warmupMillis(warmupMillis)
+                    .thinkTimeMillis(thinkMillis)
+                    .threadMode(threadMode)
+                    .build()
+                    .run();
+            System.out.println(report);
+            if (report.getConnectErrors() > 0) {
+                System.out.println("   " + report.getConnectErrors() + " terminals failed to connect");
+            }
+        }
+    }
+
+    private static LoadGenerator.TransportFactory tcp(final InetSocketAddress address) {
+        return new LoadGenerator.TransportFactory() {
+            @Override
+            public ClientFactory.NfcTransport open(int terminal) throws IOException {
+                return new TcpNfcTransport(address, null, TcpNfcTransport.DEFAULT_TIMEOUT_MILLIS);
+            }
+        };
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,118 @@
+package com.codingr.nfclib.benchmarks.load;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The exchanges one simulated terminal performs per transaction: a SELECT followed by
+ * schema commands. Commands are resolved against the schema when the script is built,
+ * so a typo fails before the load starts.
+ *
+ * <p>Scripts can also be parsed from text, one step per {@code ;}:
+ * {@code "SELECT F0010203040506; AUTHENTICATE 31323334; GET_DATA"}. Command data is hex.</p>
+ */
+public final class TransactionScript {
+
+    private final ApduSchema schema;
+    private final String aid;
+    private final List<Step> steps;
+
+    private TransactionScript(Builder builder) {
+        this.schema = builder.schema;
+        this.aid = builder.aid;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(builder.steps));
+    }
+
+    /**
+     * Parses a script; see the class documentation for the syntax.
+     *
+     * @throws IllegalArgumentException if a command is not in the schema or SELECT is missing
+     */
+    public static TransactionScript parse(ApduSchema schema, String script) {
+        Builder builder = new Builder(schema);
+        for (String rawStep : script.split(";")) {
+            String[] parts = rawStep.trim().split("\\s+");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            if (parts[0].equalsIgnoreCase("SELECT")) {
+                builder.select(parts.length > 1 ? parts[1] : schema.getSupportedAids()[0]);
+            } else {
+                builder.command(parts[0], parts.length > 1 ? ApduUtil.hexStringToByteArray(parts[1]) : null);
+            }
+        }
+        return builder.build();
+    }
+
+    public ApduSchema getSchema() { return schema; }
+    public String getAid() { return aid; }
+    public List<Step> getSteps() { return steps; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SELECT ").append(aid);
+        for (Step step : steps) {
+            sb.append("; ").append(step.command.getCommandId());
+            if (step.data != null) {
+                sb.append(' ').append(ApduUtil.bytesToHex(step.data));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One schema command with its data.
+     */
+    public static final class Step {
+        private final ApduCommandSpec command;
+        private final byte[] data;
+
+        Step(ApduCommandSpec command, byte[] data) {
+            this.command = command;
+            this.data = data;
+        }
+
+        public ApduCommandSpec getCommand() { return command; }
+
+        /**
+         * @return The command data, or null; shared, do not modify
+         */
+        public byte[] getData() { return data; }
+    }
+
+    public static class Builder {
+        private final ApduSchema schema;
+        private final List<Step> steps = new ArrayList<>();
+        private String aid;
+
+        public Builder(ApduSchema schema) {
+            this.schema = schema;
+        }
+
+        public Builder select(String aid) {
+            this.aid = aid;
+            return this;
+        }
+
+        public Builder command(String commandId, byte[] data) {
+            ApduCommandSpec command = schema.getCommand(commandId);
+            if (command == null) {
+                throw new IllegalArgumentException("Unknown command " + commandId + " in schema " + schema.getName());
+            }
+            steps.add(new Step(command, data != null ? data.clone() : null));
+            return this;
+        }
+
+        public TransactionScript build() {
+            if (aid == null) {
+                throw new IllegalArgumentException("A transaction script must SELECT an application");
+            }
+            return new TransactionScript(this);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.codingr.nfclib.hce.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code @ApduMapping} lookup as a function of the number of mappings of a controller.
+ * {@code legacy*} replays the former per-APDU scan over a {@code HashMap<byte[], Method>}
+ * with {@code copyOfRange}, as a baseline for {@link DispatchTable}.
+ *
+ * <p>Part of hce-core's own JMH source set, so it can reach the package-private table
+ * without splitting the router's package across modules.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatchBenchmark {
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int mappings;
+
+    private DispatchTable table;
+    private Map<byte[], Method> legacyHandlers;
+    private byte[] firstApdu;
+    private byte[] lastApdu;
+    private byte[] unknownApdu;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        Method handler = Object.class.getMethod("toString");
+        byte[][] prefixes = new byte[mappings][];
+        Method[] handlers = new Method[mappings];
+        legacyHandlers = new HashMap<>();
+        for (int i = 0; i < mappings; i++) {
+            // Mix of CLA+INS, CLA+INS+P1 and full header prefixes, as in real controllers
+            byte[] header = {(byte) 0x80, (byte) i, (byte) (i >> 8), 0x00};
+            prefixes[i] = Arrays.copyOf(header, 2 + i % 3);
+            handlers[i] = handler;
+            legacyHandlers.put(prefixes[i], handler);
+        }
+        table = DispatchTable.of(prefixes, handlers);
+        firstApdu = command(prefixes[0]);
+        lastApdu = command(prefixes[mappings - 1]);
+        unknownApdu = new byte[]{0x00, (byte) 0xEE, 0x00, 0x00, 0x02, 0x01, 0x02};
+    }
+
+    @Benchmark
+    public Method tableFirst() {
+        return table.find(firstApdu);
+    }
+
+    @Benchmark
+    public Method tableLast() {
+        return table.find(lastApdu);
+    }
+
+    @Benchmark
+    public Method tableMiss() {
+        return table.find(unknownApdu);
+    }
+
+    @Benchmark
+    public Method legacyLast() {
+        return legacyFindBestMatch(lastApdu);
+    }
+
+    @Benchmark
+    public Method legacyMiss() {
+        return legacyFindBestMatch(unknownApdu);
+    }
+
+    private Method legacyFindBestMatch(byte[] commandApdu) {
+        Method bestMatch = null;
+        int longestMatch = 0;
+        for (Map.Entry<byte[], Method> entry : legacyHandlers.entrySet()) {
+            byte[] prefix = entry.getKey();
+            if (commandApdu.length >= prefix.length
+                    && Arrays.equals(Arrays.copyOfRange(commandApdu, 0, prefix.length), prefix)) {
+                if (prefix.length > longestMatch) {
+                    longestMatch = prefix.length;
+                    bestMatch = entry.getValue();
+                }
+            }
+        }
+        return bestMatch;
+    }
+
+    private static byte[] command(byte[] prefix) {
+        byte[] apdu = {(byte) 0x80, 0x00, 0x00, 0x00, 0x02, 0x01, 0x02};
+        System.arraycopy(prefix, 0, apdu, 0, prefix.length);
+        return apdu;
+    }
+}
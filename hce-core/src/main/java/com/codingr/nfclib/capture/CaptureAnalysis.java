@@ -0,0 +1,143 @@
+package com.codingr.nfclib.capture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of a {@link CaptureAnalyzer} run: per-command statistics of a capture.
+ */
+public final class CaptureAnalysis {
+
+    /** Commands not in any schema that select an application */
+    public static final String SELECT = "SELECT";
+
+    /** Commands not in any schema */
+    public static final String UNKNOWN = "UNKNOWN";
+
+    /** Responses matching none of the command's declared responses */
+    public static final String UNEXPECTED = "UNEXPECTED";
+
+    private final long blocks;
+    private long corruptBlocks;
+    private boolean truncated;
+    private long sessions;
+    private final Map<String, CommandStats> commands = new HashMap<>();
+
+    CaptureAnalysis(long blocks) {
+        this.blocks = blocks;
+    }
+
+    CommandStats stats(String name) {
+        CommandStats stats = commands.get(name);
+        if (stats == null) {
+            stats = new CommandStats(name);
+            commands.put(name, stats);
+        }
+        return stats;
+    }
+
+    void sessionStarted() {
+        sessions++;
+    }
+
+    void corruptBlock() {
+        corruptBlocks++;
+    }
+
+    void truncated() {
+        truncated = true;
+    }
+
+    CaptureAnalysis merge(CaptureAnalysis other) {
+        corruptBlocks += other.corruptBlocks;
+        truncated |= other.truncated;
+        sessions += other.sessions;
+        for (CommandStats stats : other.commands.values()) {
+            stats(stats.getName()).merge(stats);
+        }
+        return this;
+    }
+
+    /**
+     * @return Blocks found in the file, corrupt ones included
+     */
+    public long getBlocks() { return blocks; }
+
+    /**
+     * @return Blocks skipped because their checksum or records were invalid
+     */
+    public long getCorruptBlocks() { return corruptBlocks; }
+
+    /**
+     * @return true if the file ended inside a block
+     */
+    public boolean isTruncated() { return truncated; }
+
+    /**
+     * @return Recorded session starts
+     */
+    public long getSessions() { return sessions; }
+
+    public long getExchanges() {
+        long exchanges = 0;
+        for (CommandStats stats : commands.values()) {
+            exchanges += stats.getCount();
+        }
+        return exchanges;
+    }
+
+    /**
+     * @return Statistics by command ID, {@link #SELECT} or {@link #UNKNOWN}
+     */
+    public Map<String, CommandStats> getCommands() {
+        return Collections.unmodifiableMap(commands);
+    }
+
+    /**
+     * @return Status words over all commands and how often each was returned
+     */
+    public Map<Integer, Long> getStatusWords() {
+        Map<Integer, Long> total = new HashMap<>();
+        for (CommandStats stats : commands.values()) {
+            for (Map.Entry<Integer, Long> entry : stats.getStatusWords().entrySet()) {
+                Long current = total.get(entry.getKey());
+                total.put(entry.getKey(), current == null ? entry.getValue() : current + entry.getValue());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return A table of the commands, most frequent first
+     */
+    @Override
+    public String toString() {
+        List<CommandStats> sorted = new ArrayList<>(commands.values());
+        Collections.sort(sorted, new Comparator<CommandStats>() {
+            @Override
+            public int compare(CommandStats a, CommandStats b) {
+                return Long.compare(b.getCount(), a.getCount());
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%d blocks (%d corrupt%s), %d sessions, %d exchanges%n",
+                blocks, corruptBlocks, truncated ? ", truncated" : "", sessions, getExchanges()));
+        sb.append(String.format(Locale.ROOT, "%-24s %12s %10s %10s %10s  %s%n",
+                "command", "count", "avg us", "p99 us", "max us", "status words"));
+        for (CommandStats stats : sorted) {
+            StringBuilder sw = new StringBuilder();
+            for (Map.Entry<Integer, Long> entry : stats.getStatusWords().entrySet()) {
+                sw.append(String.format(Locale.ROOT, "%04X=%d ", entry.getKey(), entry.getValue()));
+            }
+            sb.append(String.format(Locale.ROOT, "%-24s %12d %10.1f %10.1f %10.1f  %s%n",
+                    stats.getName(), stats.getCount(), stats.getAverageNanos() / 1000.0,
+                    stats.getPercentileNanos(99) / 1000.0, stats.getMaxNanos() / 1000.0, sw.toString().trim()));
+        }
+        return sb.toString();
+    }
+}
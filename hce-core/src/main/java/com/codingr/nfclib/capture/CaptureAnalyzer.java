@@ -0,0 +1,255 @@
+package com.codingr.nfclib.capture;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduResponseSpec;
+import com.codingr.nfclib.schema.ApduSchema;
+import com.codingr.nfclib.schema.CompiledSchema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Offline, parallel analysis of capture files.
+ *
+ * <p>The file is memory-mapped and indexed by walking the block headers only; the blocks
+ * are then checked, decoded and classified by fork/join tasks, each filling its own
+ * statistics, which are merged at the end. Exchanges are classified with the schemas'
+ * compiled command index: by command ID, then by declared response ID. Since blocks are
+ * analyzed independently, exchanges are not attributed to the application selected in
+ * their session, and a command ID declared by several schemas is counted once.</p>
+ *
+ * <p>Unlike {@link CaptureReader}, a block with an invalid checksum is skipped and counted
+ * rather than ending the capture.</p>
+ */
+public final class CaptureAnalyzer {
+
+    /** Files are mapped in segments of up to 1 GiB, aligned on blocks */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    private final CompiledSchema[] schemas;
+    private final int parallelism;
+    private final int blocksPerTask;
+
+    private CaptureAnalyzer(Builder builder) {
+        this.schemas = builder.schemas.toArray(new CompiledSchema[0]);
+        this.parallelism = builder.parallelism;
+        this.blocksPerTask = builder.blocksPerTask;
+    }
+
+    public CaptureAnalysis analyze(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            Index index = index(channel);
+            CaptureAnalysis analysis = new CaptureAnalysis(index.count);
+            if (index.truncated) {
+                analysis.truncated();
+            }
+            if (index.count == 0) {
+                return analysis;
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                return analysis.merge(pool.invoke(new AnalyzeTask(index, 0, index.count)));
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static Index index(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(CaptureFormat.BLOCK_HEADER_LENGTH);
+        readFully(channel, header, 0, CaptureFormat.FILE_HEADER_LENGTH);
+        if (header.getInt(0) != CaptureFormat.FILE_MAGIC) {
+            throw new IOException("Not an APDU capture");
+        }
+        if (header.getShort(4) != CaptureFormat.VERSION) {
+            throw new IOException("Unsupported capture version " + header.getShort(4));
+        }
+        Index index = new Index();
+        MappedByteBuffer segment = null;
+        long segmentStart = 0;
+        long position = CaptureFormat.FILE_HEADER_LENGTH;
+        while (position < size) {
+            if (size - position < CaptureFormat.BLOCK_HEADER_LENGTH) {
+                index.truncated = true;
+                break;
+            }
+            readFully(channel, header, position, CaptureFormat.BLOCK_HEADER_LENGTH);
+            long blockLength = CaptureFormat.BLOCK_HEADER_LENGTH + (long) header.getInt(4);
+            if (header.getInt(0) != CaptureFormat.BLOCK_MAGIC || blockLength < CaptureFormat.BLOCK_HEADER_LENGTH
+                    || blockLength > Integer.MAX_VALUE || position + blockLength > size) {
+                // Either torn by a crash or not a block boundary: nothing after it can be trusted
+                index.truncated = true;
+                break;
+            }
+            if (segment == null || position + blockLength > segmentStart + segment.capacity()) {
+                segmentStart = position;
+                long length = Math.min(size - position, Math.max(SEGMENT_SIZE, blockLength));
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+            index.add(segment, (int) (position - segmentStart), (int) blockLength);
+            position += blockLength;
+        }
+        return index;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Capture ends inside a header");
+            }
+        }
+    }
+
+    private CaptureAnalysis analyzeBlocks(Index index, int from, int to) {
+        CaptureAnalysis analysis = new CaptureAnalysis(0);
+        List<CaptureRecord> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ByteBuffer block = index.segments[i].duplicate();
+            block.position(index.offsets[i]).limit(index.offsets[i] + index.lengths[i]);
+            int length = CaptureFormat.checkBlock(block);
+            records.clear();
+            try {
+                if (length < 0) {
+                    throw new IOException("Block checksum mismatch");
+                }
+                ByteBuffer payload = block.duplicate();
+                payload.position(index.offsets[i] + CaptureFormat.BLOCK_HEADER_LENGTH);
+                CaptureFormat.decodeBlock(payload, block.getInt(index.offsets[i] + 8),
+                        block.getLong(index.offsets[i] + 12), records);
+            } catch (IOException e) {
+                analysis.corruptBlock();
+                continue;
+            }
+            for (CaptureRecord record : records) {
+                if (record.getType() == CaptureFormat.RECORD_SESSION_START) {
+                    analysis.sessionStarted();
+                } else if (record.isExchange()) {
+                    classify(analysis, record);
+                }
+            }
+        }
+        return analysis;
+    }
+
+    private void classify(CaptureAnalysis analysis, CaptureRecord record) {
+        byte[] command = record.getCommand();
+        byte[] response = record.getResponse();
+        ApduCommandSpec spec = null;
+        for (CompiledSchema schema : schemas) {
+            spec = schema.findCommand(command, command.length);
+            if (spec != null) {
+                break;
+            }
+        }
+        String name = spec != null ? spec.getCommandId()
+                : record.isSelect() ? CaptureAnalysis.SELECT : CaptureAnalysis.UNKNOWN;
+        String responseId = null;
+        if (spec != null) {
+            responseId = CaptureAnalysis.UNEXPECTED;
+            for (ApduResponseSpec candidate : spec.getPossibleResponses()) {
+                if (candidate.matches(response)) {
+                    responseId = candidate.getResponseId();
+                    break;
+                }
+            }
+        }
+        int statusWord = response.length < 2 ? 0
+                : ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+        analysis.stats(name).add(ApduUtil.dataLength(command, command.length), Math.max(0, response.length - 2),
+                statusWord, responseId, record.getElapsedNanos());
+    }
+
+    /**
+     * Block locations, in file order.
+     */
+    private static final class Index {
+        MappedByteBuffer[] segments = new MappedByteBuffer[256];
+        int[] offsets = new int[256];
+        int[] lengths = new int[256];
+        int count;
+        boolean truncated;
+
+        void add(MappedByteBuffer segment, int offset, int length) {
+            if (count == offsets.length) {
+                segments = Arrays.copyOf(segments, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            segments[count] = segment;
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+    }
+
+    private final class AnalyzeTask extends RecursiveTask<CaptureAnalysis> {
+        private static final long serialVersionUID = 1L;
+
+        private final Index index;
+        private final int from;
+        private final int to;
+
+        AnalyzeTask(Index index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CaptureAnalysis compute() {
+            if (to - from <= blocksPerTask) {
+                return analyzeBlocks(index, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            AnalyzeTask left = new AnalyzeTask(index, from, middle);
+            left.fork();
+            CaptureAnalysis right = new AnalyzeTask(index, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    public static class Builder {
+        private final List<CompiledSchema> schemas = new ArrayList<>();
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int blocksPerTask = 16;
+
+        /**
+         * Adds a schema to classify exchanges with. Schemas are tried in the order added.
+         */
+        public Builder schema(ApduSchema schema) {
+            this.schemas.add(CompiledSchema.compile(schema));
+            return this;
+        }
+
+        /**
+         * Worker threads. Default: the number of available processors.
+         */
+        public Builder parallelism(int parallelism) { this.parallelism = parallelism; return this; }
+
+        /**
+         * Blocks analyzed sequentially by one task before splitting stops. Default 16.
+         */
+        public Builder blocksPerTask(int blocks) { this.blocksPerTask = Math.max(1, blocks); return this; }
+
+        public CaptureAnalyzer build() {
+            return new CaptureAnalyzer(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.codingr.nfclib.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of APDU capture files written by {@link CaptureWriter}.
+ *
+ * <pre>
+ * file    = header block*
+ * header  = magic "HCAP":4  version:2  reserved:2  startEpochMillis:8
+ * block   = magic "BLK1":4  payloadLength:4  recordCount:4  baseTimestampNanos:8  crc32(payload):4  payload
+ * record  = type:1  session:varint  timestampDelta:zigzag-varint  body
+ *   SESSION_START  source:1
+ *   EXCHANGE       elapsedNanos:varint  commandLength:varint  command  responseLength:varint  response
+ *   SESSION_END    reason:varint
+ * </pre>
+ *
+ * <p>All fixed-size integers are big-endian; varints are unsigned LEB128. Timestamps are
+ * nanoseconds since the epoch; inside a block they are signed deltas to the block's base,
+ * as exchanges are recorded when their response arrives and may interleave. Blocks
+ * are self-contained, so they can be decoded independently and in parallel, and a block
+ * torn by a crash is detected by its length or checksum and ends the capture.</p>
+ */
+public final class CaptureFormat {
+
+    public static final int FILE_MAGIC = 0x48434150;      // "HCAP"
+    public static final int BLOCK_MAGIC = 0x424C4B31;     // "BLK1"
+    public static final short VERSION = 1;
+    public static final int FILE_HEADER_LENGTH = 16;
+    public static final int BLOCK_HEADER_LENGTH = 24;
+
+    public static final byte RECORD_SESSION_START = 1;
+    public static final byte RECORD_EXCHANGE = 2;
+    public static final byte RECORD_SESSION_END = 3;
+
+    /** Recorded by a terminal-side transport */
+    public static final byte SOURCE_CLIENT = 1;
+
+    /** Recorded by the card-side router */
+    public static final byte SOURCE_ROUTER = 2;
+
+    private CaptureFormat() {
+    }
+
+    /**
+     * Decodes the records of one block payload, appending them to {@code records}.
+     *
+     * @param payload The block payload, from its position to its limit
+     * @throws IOException if a record is malformed
+     */
+    public static void decodeBlock(ByteBuffer payload, int recordCount, long baseTimestampNanos,
+                                   List<CaptureRecord> records) throws IOException {
+        try {
+            for (int i = 0; i < recordCount; i++) {
+                byte type = payload.get();
+                int session = (int) readVarint(payload);
+                long timestamp = baseTimestampNanos + unZigZag(readVarint(payload));
+                switch (type) {
+                    case RECORD_SESSION_START:
+                        records.add(CaptureRecord.sessionStart(session, timestamp, payload.get()));
+                        break;
+                    case RECORD_EXCHANGE:
+                        long elapsed = readVarint(payload);
+                        byte[] command = new byte[(int) readVarint(payload)];
+                        payload.get(command);
+                        byte[] response = new byte[(int) readVarint(payload)];
+                        payload.get(response);
+                        records.add(CaptureRecord.exchange(session, timestamp, command, response, elapsed));
+                        break;
+                    case RECORD_SESSION_END:
+                        records.add(CaptureRecord.sessionEnd(session, timestamp, (int) readVarint(payload)));
+                        break;
+                    default:
+                        throw new IOException("Unknown capture record type " + type);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed capture block", e);
+        }
+    }
+
+    /**
+     * @param block A buffer positioned at a block header
+     * @return The payload length if the header is valid and the whole block, checksum
+     *         included, is within the buffer's limit; -1 otherwise
+     */
+    static int checkBlock(ByteBuffer block) {
+        int start = block.position();
+        if (block.remaining() < BLOCK_HEADER_LENGTH || block.order() != ByteOrder.BIG_ENDIAN
+                || block.getInt(start) != BLOCK_MAGIC) {
+            return -1;
+        }
+        int length = block.getInt(start + 4);
+        if (length < 0 || length > block.remaining() - BLOCK_HEADER_LENGTH) {
+            return -1;
+        }
+        // CRC32.update(ByteBuffer) needs API 26; go through arrays for direct buffers too
+        CRC32 crc = new CRC32();
+        int offset = start + BLOCK_HEADER_LENGTH;
+        if (block.hasArray()) {
+            crc.update(block.array(), block.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer payload = block.duplicate();
+            payload.position(offset);
+            byte[] chunk = new byte[Math.min(length, 8192)];
+            for (int remaining = length; remaining > 0; remaining -= chunk.length) {
+                int n = Math.min(remaining, chunk.length);
+                payload.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+        }
+        return (int) crc.getValue() == block.getInt(start + 20) ? length : -1;
+    }
+
+    static int writeVarint(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits");
+    }
+}
@@ -0,0 +1,137 @@
+package com.codingr.nfclib.capture;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a capture file sequentially, block by block.
+ *
+ * <p>A block cut short or failing its checksum, as left by a writer that crashed, ends
+ * the capture: {@link #next()} returns null and {@link #isTruncated()} reports it.</p>
+ */
+public final class CaptureReader implements Closeable {
+
+    private final DataInputStream in;
+    private final long startEpochMillis;
+    private final List<CaptureRecord> block = new ArrayList<>();
+    private byte[] buffer = new byte[CaptureWriter.DEFAULT_BLOCK_SIZE + CaptureFormat.BLOCK_HEADER_LENGTH];
+    private int nextInBlock;
+    private boolean truncated;
+    private boolean finished;
+
+    /**
+     * @throws IOException if the stream does not start with a capture header
+     */
+    public CaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != CaptureFormat.FILE_MAGIC) {
+            throw new IOException("Not an APDU capture");
+        }
+        short version = this.in.readShort();
+        if (version != CaptureFormat.VERSION) {
+            throw new IOException("Unsupported capture version " + version);
+        }
+        this.in.readShort();
+        this.startEpochMillis = this.in.readLong();
+    }
+
+    public static CaptureReader open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return new CaptureReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return When the writer was created
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return The next record, or null at the end of the capture
+     */
+    public CaptureRecord next() throws IOException {
+        while (nextInBlock == block.size()) {
+            if (finished || !readBlock()) {
+                finished = true;
+                return null;
+            }
+        }
+        return block.get(nextInBlock++);
+    }
+
+    /**
+     * @return All remaining records
+     */
+    public List<CaptureRecord> readAll() throws IOException {
+        List<CaptureRecord> records = new ArrayList<>();
+        CaptureRecord record;
+        while ((record = next()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * @return true if the capture ended with an incomplete or corrupt block
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        block.clear();
+        nextInBlock = 0;
+        try {
+            in.readFully(buffer, 0, 4);
+        } catch (EOFException e) {
+            return false;
+        }
+        try {
+            in.readFully(buffer, 4, CaptureFormat.BLOCK_HEADER_LENGTH - 4);
+            ByteBuffer header = ByteBuffer.wrap(buffer, 0, CaptureFormat.BLOCK_HEADER_LENGTH);
+            int length = header.getInt(4);
+            if (header.getInt(0) != CaptureFormat.BLOCK_MAGIC || length < 0) {
+                truncated = true;
+                return false;
+            }
+            if (buffer.length < CaptureFormat.BLOCK_HEADER_LENGTH + length) {
+                byte[] grown = new byte[CaptureFormat.BLOCK_HEADER_LENGTH + length];
+                System.arraycopy(buffer, 0, grown, 0, CaptureFormat.BLOCK_HEADER_LENGTH);
+                buffer = grown;
+            }
+            in.readFully(buffer, CaptureFormat.BLOCK_HEADER_LENGTH, length);
+        } catch (EOFException e) {
+            truncated = true;
+            return false;
+        }
+        ByteBuffer whole = ByteBuffer.wrap(buffer);
+        int length = CaptureFormat.checkBlock(whole);
+        if (length < 0) {
+            truncated = true;
+            return false;
+        }
+        ByteBuffer payload = ByteBuffer.wrap(buffer, CaptureFormat.BLOCK_HEADER_LENGTH, length);
+        CaptureFormat.decodeBlock(payload, whole.getInt(8), whole.getLong(12), block);
+        return true;
+    }
+}
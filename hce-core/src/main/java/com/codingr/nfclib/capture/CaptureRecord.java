@@ -0,0 +1,109 @@
+package com.codingr.nfclib.capture;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.Arrays;
+
+/**
+ * One decoded capture record: the start or end of a card session, or a command and its
+ * response. See {@link CaptureFormat} for the encoding.
+ */
+public final class CaptureRecord {
+
+    private final byte type;
+    private final int session;
+    private final long timestampNanos;
+    private final byte source;
+    private final byte[] command;
+    private final byte[] response;
+    private final long elapsedNanos;
+    private final int reason;
+
+    private CaptureRecord(byte type, int session, long timestampNanos, byte source, byte[] command,
+                          byte[] response, long elapsedNanos, int reason) {
+        this.type = type;
+        this.session = session;
+        this.timestampNanos = timestampNanos;
+        this.source = source;
+        this.command = command;
+        this.response = response;
+        this.elapsedNanos = elapsedNanos;
+        this.reason = reason;
+    }
+
+    static CaptureRecord sessionStart(int session, long timestampNanos, byte source) {
+        return new CaptureRecord(CaptureFormat.RECORD_SESSION_START, session, timestampNanos, source, null, null, 0, 0);
+    }
+
+    static CaptureRecord exchange(int session, long timestampNanos, byte[] command, byte[] response, long elapsedNanos) {
+        return new CaptureRecord(CaptureFormat.RECORD_EXCHANGE, session, timestampNanos, (byte) 0, command, response,
+                elapsedNanos, 0);
+    }
+
+    static CaptureRecord sessionEnd(int session, long timestampNanos, int reason) {
+        return new CaptureRecord(CaptureFormat.RECORD_SESSION_END, session, timestampNanos, (byte) 0, null, null, 0, reason);
+    }
+
+    /**
+     * @return One of the {@code CaptureFormat.RECORD_*} types
+     */
+    public byte getType() { return type; }
+
+    /**
+     * @return The session id, unique within a capture file
+     */
+    public int getSession() { return session; }
+
+    /**
+     * @return When the record was written, in nanoseconds since the epoch; for exchanges, when the command was sent
+     */
+    public long getTimestampNanos() { return timestampNanos; }
+
+    /**
+     * @return {@link CaptureFormat#SOURCE_CLIENT} or {@link CaptureFormat#SOURCE_ROUTER}; session starts only
+     */
+    public byte getSource() { return source; }
+
+    /**
+     * @return The command APDU; exchanges only
+     */
+    public byte[] getCommand() { return command; }
+
+    /**
+     * @return The response APDU, data and status word; exchanges only
+     */
+    public byte[] getResponse() { return response; }
+
+    /**
+     * @return The recorded latency of the exchange
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @return The deactivation reason; session ends only
+     */
+    public int getReason() { return reason; }
+
+    public boolean isExchange() {
+        return type == CaptureFormat.RECORD_EXCHANGE;
+    }
+
+    /**
+     * @return true if the command is a SELECT by AID
+     */
+    public boolean isSelect() {
+        return isExchange() && command.length > 4 && command[0] == 0x00 && command[1] == (byte) 0xA4
+                && command[2] == 0x04 && command[3] == 0x00;
+    }
+
+    /**
+     * @return The selected AID as an upper-case hex string, or null if this is not a SELECT
+     */
+    public String getSelectedAid() {
+        if (!isSelect()) {
+            return null;
+        }
+        int length = Math.min(command[4] & 0xFF, command.length - 5);
+        return ApduUtil.bytesToHex(Arrays.copyOfRange(command, 5, 5 + length));
+    }
+}
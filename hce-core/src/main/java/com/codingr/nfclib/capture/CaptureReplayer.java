@@ -0,0 +1,164 @@
+package com.codingr.nfclib.capture;
+
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.hce.core.RouterSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds captured sessions into a {@link RouterEngine} and compares the responses with
+ * the recorded ones, turning captures into regression tests and benchmarks.
+ *
+ * <p>Each captured session is replayed in its own {@link RouterSession}; sessions that
+ * overlapped in the capture are interleaved in the same order. With original pacing the
+ * replayer waits until each command's recorded offset from the start of the capture;
+ * otherwise commands are sent back to back. Measured latencies cover the router only,
+ * while client captures also recorded the transport.</p>
+ */
+public final class CaptureReplayer {
+
+    private final RouterEngine engine;
+    private final boolean originalPacing;
+    private final boolean statusWordsOnly;
+    private final int maxReportedMismatches;
+
+    private CaptureReplayer(Builder builder) {
+        this.engine = builder.engine;
+        this.originalPacing = builder.originalPacing;
+        this.statusWordsOnly = builder.statusWordsOnly;
+        this.maxReportedMismatches = builder.maxReportedMismatches;
+    }
+
+    public ReplayReport replay(CaptureReader reader) throws IOException, InterruptedException {
+        Map<Integer, RouterSession> sessions = new HashMap<>();
+        List<ReplayReport.Mismatch> mismatches = new ArrayList<>();
+        LongList replayed = new LongList();
+        LongList recorded = new LongList();
+        long mismatchCount = 0;
+        int sessionCount = 0;
+        long firstTimestamp = Long.MIN_VALUE;
+        long replayStart = System.nanoTime();
+
+        CaptureRecord record;
+        while ((record = reader.next()) != null) {
+            RouterSession session = sessions.get(record.getSession());
+            switch (record.getType()) {
+                case CaptureFormat.RECORD_SESSION_START:
+                    if (session != null) {
+                        session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+                    }
+                    sessions.put(record.getSession(), engine.newSession());
+                    sessionCount++;
+                    break;
+                case CaptureFormat.RECORD_SESSION_END:
+                    if (session != null) {
+                        session.deactivate(record.getReason());
+                        sessions.remove(record.getSession());
+                    }
+                    break;
+                case CaptureFormat.RECORD_EXCHANGE:
+                    if (session == null) {
+                        // Capture started in the middle of this session
+                        session = engine.newSession();
+                        sessions.put(record.getSession(), session);
+                        sessionCount++;
+                    }
+                    if (firstTimestamp == Long.MIN_VALUE) {
+                        firstTimestamp = record.getTimestampNanos();
+                    }
+                    if (originalPacing) {
+                        long wait = (record.getTimestampNanos() - firstTimestamp) - (System.nanoTime() - replayStart);
+                        if (wait > 0) {
+                            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                        }
+                    }
+                    long start = System.nanoTime();
+                    byte[] actual = session.process(record.getCommand());
+                    replayed.add(System.nanoTime() - start);
+                    recorded.add(record.getElapsedNanos());
+                    if (!matches(record.getResponse(), actual)) {
+                        mismatchCount++;
+                        if (mismatches.size() < maxReportedMismatches) {
+                            mismatches.add(new ReplayReport.Mismatch(record.getSession(), record.getCommand(),
+                                    record.getResponse(), actual));
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (RouterSession session : sessions.values()) {
+            session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+        }
+        return new ReplayReport(sessionCount, replayed.size(), mismatchCount, mismatches,
+                System.nanoTime() - replayStart, replayed.sorted(), recorded.sorted(), reader.isTruncated());
+    }
+
+    private boolean matches(byte[] expected, byte[] actual) {
+        if (!statusWordsOnly) {
+            return Arrays.equals(expected, actual);
+        }
+        return expected.length >= 2 && actual.length >= 2
+                && expected[expected.length - 2] == actual[actual.length - 2]
+                && expected[expected.length - 1] == actual[actual.length - 1];
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    public static class Builder {
+        private final RouterEngine engine;
+        private boolean originalPacing;
+        private boolean statusWordsOnly;
+        private int maxReportedMismatches = 20;
+
+        public Builder(RouterEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Waits between commands as in the capture. Default false: as fast as possible.
+         */
+        public Builder originalPacing(boolean original) { this.originalPacing = original; return this; }
+
+        /**
+         * Compares only status words, for controllers whose response data is not
+         * deterministic (challenges, counters, timestamps). Default false.
+         */
+        public Builder statusWordsOnly(boolean statusWordsOnly) { this.statusWordsOnly = statusWordsOnly; return this; }
+
+        /**
+         * Mismatches kept with their APDUs in the report; all are counted. Default 20.
+         */
+        public Builder maxReportedMismatches(int max) { this.maxReportedMismatches = max; return this; }
+
+        public CaptureReplayer build() {
+            return new CaptureReplayer(this);
+        }
+    }
+}
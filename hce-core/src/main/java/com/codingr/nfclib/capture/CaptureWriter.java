@@ -0,0 +1,200 @@
+package com.codingr.nfclib.capture;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Appends card sessions to a capture file in the {@link CaptureFormat}.
+ *
+ * <p>Records are encoded into an in-memory block and written out when the block is full,
+ * on {@link #flush()} and on {@link #close()}, so recording costs one array copy per
+ * exchange on the APDU path. A writer can be shared by any number of sessions and
+ * threads. Write errors are kept and rethrown by {@link #flush()} and {@link #close()}
+ * rather than failing the exchange being recorded.</p>
+ */
+public final class CaptureWriter implements Closeable, Flushable {
+
+    /** Default block payload size */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final long startEpochNanos;
+    private final long startNanoTime;
+    private final AtomicInteger nextSession = new AtomicInteger(1);
+    private final CRC32 crc = new CRC32();
+    private byte[] block;
+    private int blockLength;
+    private int blockRecords;
+    private long blockBase;
+    private IOException error;
+    private boolean closed;
+
+    public CaptureWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Payload size at which a block is written; larger records get a block of their own
+     */
+    public CaptureWriter(OutputStream out, int blockSize) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize];
+        long startMillis = System.currentTimeMillis();
+        this.startEpochNanos = startMillis * 1000000L;
+        this.startNanoTime = System.nanoTime();
+        this.out.writeInt(CaptureFormat.FILE_MAGIC);
+        this.out.writeShort(CaptureFormat.VERSION);
+        this.out.writeShort(0);
+        this.out.writeLong(startMillis);
+        this.out.flush();
+    }
+
+    /**
+     * Creates or truncates {@code file}.
+     */
+    public static CaptureWriter open(File file) throws IOException {
+        return new CaptureWriter(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * Records the start of a card session.
+     *
+     * @param source {@link CaptureFormat#SOURCE_CLIENT} or {@link CaptureFormat#SOURCE_ROUTER}
+     * @return The id to record the session's exchanges with
+     */
+    public int startSession(byte source) {
+        int session = nextSession.getAndIncrement();
+        synchronized (this) {
+            int offset = beginRecord(CaptureFormat.RECORD_SESSION_START, session, now(), 1);
+            block[offset++] = source;
+            endRecord(offset);
+        }
+        return session;
+    }
+
+    /**
+     * @param timestampNanos When the command was sent, as returned by {@link #now()}
+     * @param elapsedNanos Time until the response was available
+     */
+    public synchronized void recordExchange(int session, long timestampNanos, byte[] command, byte[] response,
+                                            long elapsedNanos) {
+        int offset = beginRecord(CaptureFormat.RECORD_EXCHANGE, session, timestampNanos,
+                30 + command.length + response.length);
+        offset = CaptureFormat.writeVarint(block, offset, elapsedNanos);
+        offset = CaptureFormat.writeVarint(block, offset, command.length);
+        System.arraycopy(command, 0, block, offset, command.length);
+        offset += command.length;
+        offset = CaptureFormat.writeVarint(block, offset, response.length);
+        System.arraycopy(response, 0, block, offset, response.length);
+        endRecord(offset + response.length);
+    }
+
+    public synchronized void endSession(int session, int reason) {
+        int offset = beginRecord(CaptureFormat.RECORD_SESSION_END, session, now(), 5);
+        endRecord(CaptureFormat.writeVarint(block, offset, reason & 0xFFFFFFFFL));
+    }
+
+    /**
+     * @return The current time in nanoseconds since the epoch, on the writer's monotonic clock
+     */
+    public long now() {
+        return startEpochNanos + (System.nanoTime() - startNanoTime);
+    }
+
+    /**
+     * Writes the current block, even if not full, and flushes the stream.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        writeBlock();
+        if (error == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Reserves room for a record of at most {@code maxBody} body bytes and writes its prefix.
+     *
+     * @return The offset of the record body
+     */
+    private int beginRecord(byte type, int session, long timestampNanos, int maxBody) {
+        int maxLength = 1 + 5 + 10 + maxBody;
+        if (blockRecords > 0 && blockLength + maxLength > blockSize) {
+            writeBlock();
+        }
+        if (blockRecords == 0) {
+            blockBase = timestampNanos;
+        }
+        if (blockLength + maxLength > block.length) {
+            block = Arrays.copyOf(block, blockLength + maxLength);
+        }
+        int offset = blockLength;
+        block[offset++] = type;
+        offset = CaptureFormat.writeVarint(block, offset, session & 0xFFFFFFFFL);
+        return CaptureFormat.writeVarint(block, offset, CaptureFormat.zigZag(timestampNanos - blockBase));
+    }
+
+    private void endRecord(int offset) {
+        blockLength = offset;
+        blockRecords++;
+        if (blockLength >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() {
+        if (blockRecords == 0) {
+            return;
+        }
+        if (error == null && !closed) {
+            crc.reset();
+            crc.update(block, 0, blockLength);
+            try {
+                out.writeInt(CaptureFormat.BLOCK_MAGIC);
+                out.writeInt(blockLength);
+                out.writeInt(blockRecords);
+                out.writeLong(blockBase);
+                out.writeInt((int) crc.getValue());
+                out.write(block, 0, blockLength);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (block.length > blockSize) {
+            block = new byte[blockSize];
+        }
+        blockLength = 0;
+        blockRecords = 0;
+    }
+}
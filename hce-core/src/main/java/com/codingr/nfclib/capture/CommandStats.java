@@ -0,0 +1,121 @@
+package com.codingr.nfclib.capture;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Statistics of one command class in a {@link CaptureAnalysis}.
+ *
+ * <p>Sizes and latencies are counted in power-of-two buckets: bucket {@code i} holds values
+ * of {@code 2^i} to {@code 2^(i+1) - 1}, and bucket 0 also holds zero. Instances are
+ * filled by a single analyzer task and merged; they are not modified once returned.</p>
+ */
+public final class CommandStats {
+
+    static final int BUCKETS = 64;
+
+    private final String name;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private final long[] latencies = new long[BUCKETS];
+    private final long[] commandSizes = new long[BUCKETS];
+    private final long[] responseSizes = new long[BUCKETS];
+    private final Map<Integer, Long> statusWords = new HashMap<>();
+    private final Map<String, Long> responses = new HashMap<>();
+
+    CommandStats(String name) {
+        this.name = name;
+    }
+
+    void add(int commandDataLength, int responseDataLength, int statusWord, String responseId, long nanos) {
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        latencies[bucket(nanos)]++;
+        commandSizes[bucket(commandDataLength)]++;
+        responseSizes[bucket(responseDataLength)]++;
+        increment(statusWords, statusWord, 1);
+        if (responseId != null) {
+            increment(responses, responseId, 1);
+        }
+    }
+
+    void merge(CommandStats other) {
+        count += other.count;
+        totalNanos += other.totalNanos;
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] += other.latencies[i];
+            commandSizes[i] += other.commandSizes[i];
+            responseSizes[i] += other.responseSizes[i];
+        }
+        for (Map.Entry<Integer, Long> entry : other.statusWords.entrySet()) {
+            increment(statusWords, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : other.responses.entrySet()) {
+            increment(responses, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return The schema command ID, {@link CaptureAnalysis#SELECT} or {@link CaptureAnalysis#UNKNOWN}
+     */
+    public String getName() { return name; }
+    public long getCount() { return count; }
+    public long getTotalNanos() { return totalNanos; }
+    public long getMaxNanos() { return maxNanos; }
+
+    public long getAverageNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     * @return The upper bound of the latency bucket holding the percentile
+     */
+    public long getPercentileNanos(double percentile) {
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += latencies[i];
+            if (seen >= rank && seen > 0) {
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    public long[] getLatencyHistogram() { return latencies.clone(); }
+
+    /**
+     * @return Exchanges per command data (Lc) size bucket
+     */
+    public long[] getCommandSizeHistogram() { return commandSizes.clone(); }
+
+    /**
+     * @return Exchanges per response data size bucket, status word excluded
+     */
+    public long[] getResponseSizeHistogram() { return responseSizes.clone(); }
+
+    /**
+     * @return Status words returned and how often each was returned
+     */
+    public Map<Integer, Long> getStatusWords() { return Collections.unmodifiableMap(statusWords); }
+
+    /**
+     * @return Schema response IDs matched and how often, {@link CaptureAnalysis#UNEXPECTED}
+     *         counting responses no declared response matches
+     */
+    public Map<String, Long> getResponses() { return Collections.unmodifiableMap(responses); }
+
+    private static int bucket(long value) {
+        return value <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static <K> void increment(Map<K, Long> counts, K key, long delta) {
+        Long current = counts.get(key);
+        counts.put(key, current == null ? delta : current + delta);
+    }
+}
@@ -0,0 +1,70 @@
+package com.codingr.nfclib.capture;
+
+import com.codingr.nfclib.hce.core.RouterSession;
+import com.codingr.nfclib.schema.ClientFactory;
+
+/**
+ * Transport decorator that records every APDU exchanged by a client, GET RESPONSE and
+ * chained segments included, as a {@link CaptureFormat#SOURCE_CLIENT} session.
+ *
+ * <p>A session starts with the first transmission and ends on {@link #disconnect()} or
+ * {@link #reconnect()}. Recorded latencies include the underlying transport. Failed
+ * transmissions are not recorded.</p>
+ */
+public class RecordingTransport implements ClientFactory.NfcTransport {
+
+    private final ClientFactory.NfcTransport delegate;
+    private final CaptureWriter writer;
+    private int session;
+
+    public RecordingTransport(ClientFactory.NfcTransport delegate, CaptureWriter writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+    }
+
+    @Override
+    public byte[] transmit(byte[] apdu) throws ClientFactory.NfcCommunicationException {
+        if (session == 0) {
+            session = writer.startSession(CaptureFormat.SOURCE_CLIENT);
+        }
+        long timestamp = writer.now();
+        long start = System.nanoTime();
+        byte[] response = delegate.transmit(apdu);
+        writer.recordExchange(session, timestamp, apdu, response, System.nanoTime() - start);
+        return response;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void disconnect() {
+        endSession();
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean reconnect() {
+        endSession();
+        return delegate.reconnect();
+    }
+
+    @Override
+    public byte[] getCardIdentifier() {
+        return delegate.getCardIdentifier();
+    }
+
+    @Override
+    public long getLinkGeneration() {
+        return delegate.getLinkGeneration();
+    }
+
+    private void endSession() {
+        if (session != 0) {
+            writer.endSession(session, RouterSession.DEACTIVATION_LINK_LOSS);
+            session = 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.codingr.nfclib.capture;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link CaptureReplayer} run: response differences and latencies.
+ */
+public final class ReplayReport {
+
+    private final int sessions;
+    private final int exchanges;
+    private final long mismatchCount;
+    private final List<Mismatch> mismatches;
+    private final long elapsedNanos;
+    private final long[] replayedNanos;
+    private final long[] recordedNanos;
+    private final boolean truncated;
+
+    ReplayReport(int sessions, int exchanges, long mismatchCount, List<Mismatch> mismatches, long elapsedNanos,
+                 long[] replayedNanos, long[] recordedNanos, boolean truncated) {
+        this.sessions = sessions;
+        this.exchanges = exchanges;
+        this.mismatchCount = mismatchCount;
+        this.mismatches = Collections.unmodifiableList(mismatches);
+        this.elapsedNanos = elapsedNanos;
+        this.replayedNanos = replayedNanos;
+        this.recordedNanos = recordedNanos;
+        this.truncated = truncated;
+    }
+
+    public int getSessions() { return sessions; }
+    public int getExchanges() { return exchanges; }
+
+    /**
+     * @return Exchanges whose response differed from the recorded one
+     */
+    public long getMismatchCount() { return mismatchCount; }
+
+    /**
+     * @return The first mismatches, with their APDUs
+     */
+    public List<Mismatch> getMismatches() { return mismatches; }
+
+    public boolean isMatching() {
+        return mismatchCount == 0;
+    }
+
+    /**
+     * @return Wall-clock time of the replay, waits included
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getExchangesPerSecond() {
+        return elapsedNanos == 0 ? 0 : exchanges * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     * @return Router processing time of the replay at the percentile
+     */
+    public long getReplayedLatencyNanos(double percentile) {
+        return percentile(replayedNanos, percentile);
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     * @return Latency recorded in the capture at the percentile
+     */
+    public long getRecordedLatencyNanos(double percentile) {
+        return percentile(recordedNanos, percentile);
+    }
+
+    /**
+     * @return true if the capture ended with an incomplete or corrupt block
+     */
+    public boolean isTruncated() { return truncated; }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT,
+                "%d sessions, %d exchanges, %d mismatches%s; %.0f exchanges/s; "
+                        + "replayed p50 %.1f us, p99 %.1f us, max %.1f us; recorded p50 %.1f us, p99 %.1f us",
+                sessions, exchanges, mismatchCount, truncated ? " (capture truncated)" : "",
+                getExchangesPerSecond(),
+                getReplayedLatencyNanos(50) / 1000.0, getReplayedLatencyNanos(99) / 1000.0,
+                getReplayedLatencyNanos(100) / 1000.0,
+                getRecordedLatencyNanos(50) / 1000.0, getRecordedLatencyNanos(99) / 1000.0);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.min(sorted.length, Math.max(1, rank)) - 1];
+    }
+
+    /**
+     * A replayed response that differs from the recorded one.
+     */
+    public static final class Mismatch {
+        private final int session;
+        private final byte[] command;
+        private final byte[] expected;
+        private final byte[] actual;
+
+        Mismatch(int session, byte[] command, byte[] expected, byte[] actual) {
+            this.session = session;
+            this.command = command;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public int getSession() { return session; }
+        public byte[] getCommand() { return command; }
+        public byte[] getExpected() { return expected; }
+        public byte[] getActual() { return actual; }
+
+        @Override
+        public String toString() {
+            return "session " + session + ": " + ApduUtil.bytesToHex(command) + " expected "
+                    + ApduUtil.bytesToHex(expected) + " got " + ApduUtil.bytesToHex(actual);
+        }
+    }
+}
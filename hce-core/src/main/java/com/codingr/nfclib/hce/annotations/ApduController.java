@@ -18,4 +18,22 @@ public @interface ApduController {
      * @return An array of AIDs as strings.
      */
     String[] aids();
+
+    /**
+     * Application label (tag 50) returned in the FCI and the PPSE directory entries.
+     * @return The label, or an empty string for none.
+     */
+    String label() default "";
+
+    /**
+     * Application priority indicator (tag 87), 1 being the highest.
+     * @return The priority, or 0 for none.
+     */
+    int priority() default 0;
+
+    /**
+     * Whether the PPSE directory lists this controller's AIDs.
+     * @return false to keep the AIDs out of the directory.
+     */
+    boolean listed() default true;
 }
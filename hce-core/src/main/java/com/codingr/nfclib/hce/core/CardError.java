@@ -5,6 +5,7 @@ import com.codingr.nfclib.hce.util.ApduUtil;
 public enum CardError {
     INS_NOT_SUPPORTED(ApduUtil.SW_INS_NOT_SUPPORTED),
     FILE_NOT_FOUND(ApduUtil.SW_FILE_NOT_FOUND),
+    INCORRECT_P1P2(ApduUtil.SW_INCORRECT_P1P2),
     CONDITIONS_NOT_SATISFIED(ApduUtil.SW_CONDITIONS_NOT_SATISFIED),
     WRONG_LENGTH(ApduUtil.SW_WRONG_LENGTH);
 
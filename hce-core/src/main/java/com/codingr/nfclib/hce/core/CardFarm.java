@@ -0,0 +1,293 @@
+package com.codingr.nfclib.hce.core;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts many independent virtual cards of one {@link RouterEngine} in the same JVM, for
+ * server-side emulation and test rigs.
+ *
+ * <p>Each card is a {@link RouterSession} with its own selected application, controller
+ * instance and chaining state. Cards are sharded over a fixed pool of worker threads by
+ * ID: a card's APDUs always run on the same worker, in submission order, so sessions need
+ * no locking and workers share nothing but the engine's immutable dispatch tables and
+ * compiled schemas. Each worker has a bounded queue; when it is full, new requests fail
+ * with a {@link RejectedExecutionException} instead of piling up.</p>
+ */
+public final class CardFarm implements Closeable {
+
+    private static final AtomicInteger FARM_COUNT = new AtomicInteger();
+
+    private final RouterEngine engine;
+    private final Worker[] workers;
+    private final AtomicInteger nextCardId = new AtomicInteger();
+    private final AtomicInteger cards = new AtomicInteger();
+    private final LongAdder commands = new LongAdder();
+    private volatile boolean closed;
+
+    private CardFarm(Builder builder) {
+        this.engine = builder.engine;
+        this.workers = new Worker[builder.workers];
+        int farm = FARM_COUNT.incrementAndGet();
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(builder.maxQueuedPerWorker, "card-farm-" + farm + "-" + i);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Creates a card, as if a new card entered a reader's field. No application is selected.
+     */
+    public VirtualCard createCard() {
+        if (closed) {
+            throw new RejectedExecutionException("Card farm is closed");
+        }
+        int id = nextCardId.incrementAndGet();
+        cards.incrementAndGet();
+        return new VirtualCard(id, workers[(id & Integer.MAX_VALUE) % workers.length], engine.newSession());
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return Cards created and not removed
+     */
+    public int getCardCount() {
+        return cards.get();
+    }
+
+    /**
+     * @return APDUs processed by all cards
+     */
+    public long getCommands() {
+        return commands.sum();
+    }
+
+    /**
+     * @return Requests waiting on all workers
+     */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (Worker worker : workers) {
+            queued += worker.queue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * Fails queued requests, deactivates every card as a lost link and stops the workers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.shutdown();
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * One emulated card. All methods may be called from any thread; the work runs on the
+     * card's worker.
+     */
+    public final class VirtualCard {
+        private final int id;
+        private final Worker worker;
+        private final RouterSession session;
+        // Confined to the worker thread
+        private boolean attached;
+        private boolean removed;
+
+        VirtualCard(int id, Worker worker, RouterSession session) {
+            this.id = id;
+            this.worker = worker;
+            this.session = session;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Queues a command APDU.
+         *
+         * @return A future completed with the response APDU
+         */
+        public CompletableFuture<byte[]> transmit(final byte[] apdu) {
+            return worker.submit(new Job<byte[]>(this) {
+                @Override
+                byte[] run() {
+                    commands.increment();
+                    return session.process(apdu);
+                }
+            });
+        }
+
+        /**
+         * Ends the current application session, keeping the card for a later SELECT.
+         *
+         * @param reason {@link RouterSession#DEACTIVATION_LINK_LOSS} or
+         *               {@link RouterSession#DEACTIVATION_DESELECTED}
+         */
+        public CompletableFuture<Void> deactivate(final int reason) {
+            return worker.submit(new Job<Void>(this) {
+                @Override
+                Void run() {
+                    session.deactivate(reason);
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Deactivates the card as a lost link and removes it from the farm, after the
+         * requests already queued for it. Later requests fail with an
+         * {@link IllegalStateException}.
+         */
+        public CompletableFuture<Void> remove() {
+            return worker.submit(new Job<Void>(this) {
+                @Override
+                Void run() {
+                    worker.detach(VirtualCard.this);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private abstract static class Job<T> {
+        final VirtualCard card;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(VirtualCard card) {
+            this.card = card;
+        }
+
+        abstract T run();
+
+        void execute() {
+            try {
+                future.complete(run());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final BlockingQueue<Job<?>> queue;
+        final Thread thread;
+        // Cards that processed a request and are not removed yet; confined to the worker thread
+        private final Set<VirtualCard> attached = new HashSet<>();
+        private volatile boolean shutdown;
+
+        Worker(int maxQueued, String name) {
+            this.queue = new ArrayBlockingQueue<>(maxQueued);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        <T> CompletableFuture<T> submit(Job<T> job) {
+            if (shutdown) {
+                job.future.completeExceptionally(new RejectedExecutionException("Card farm is closed"));
+            } else if (!queue.offer(job)) {
+                job.future.completeExceptionally(new RejectedExecutionException(
+                        "Card farm worker queue is full (" + (queue.size() + queue.remainingCapacity()) + " requests)"));
+            } else if (shutdown && queue.remove(job)) {
+                // Offered after the worker drained its queue; nobody else will complete it
+                job.future.completeExceptionally(new RejectedExecutionException("Card farm is closed"));
+            }
+            return job.future;
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                Job<?> job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                VirtualCard card = job.card;
+                if (card.removed) {
+                    job.future.completeExceptionally(new IllegalStateException("Card " + card.id + " was removed"));
+                    continue;
+                }
+                if (!card.attached) {
+                    card.attached = true;
+                    attached.add(card);
+                }
+                job.execute();
+            }
+            failQueued();
+            for (VirtualCard card : attached) {
+                card.session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+            }
+            attached.clear();
+        }
+
+        void detach(VirtualCard card) {
+            card.removed = true;
+            if (attached.remove(card)) {
+                card.session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+                cards.decrementAndGet();
+            }
+        }
+
+        void shutdown() {
+            shutdown = true;
+            thread.interrupt();
+        }
+
+        private void failQueued() {
+            List<Job<?>> drained = new ArrayList<>();
+            queue.drainTo(drained);
+            for (Job<?> job : drained) {
+                job.future.completeExceptionally(new RejectedExecutionException("Card farm is closed"));
+            }
+        }
+    }
+
+    public static class Builder {
+        private final RouterEngine engine;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int maxQueuedPerWorker = 1024;
+
+        public Builder(RouterEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Worker threads the cards are sharded over. Default: the number of available processors.
+         */
+        public Builder workers(int workers) { this.workers = Math.max(1, workers); return this; }
+
+        /**
+         * Requests waiting per worker before new ones are rejected. Default 1024.
+         */
+        public Builder maxQueuedPerWorker(int max) { this.maxQueuedPerWorker = max; return this; }
+
+        public CardFarm build() {
+            return new CardFarm(this);
+        }
+    }
+}
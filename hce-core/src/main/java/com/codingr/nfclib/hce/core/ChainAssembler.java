@@ -0,0 +1,182 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.Arrays;
+
+/**
+ * Reassembles ISO 7816-4 command chains (CLA bit {@code 0x10}) into a single command.
+ *
+ * <p>Segment data is collected in one buffer that grows on demand up to the capacity and
+ * is kept for the lifetime of the assembler, so only the completed command is allocated. The completed
+ * command carries the header of the last segment without the chaining bit, the data length
+ * and the last segment's Le if present. Both are short unless the total length exceeds 255
+ * bytes or the last segment expects more than 256, in which case both are extended.</p>
+ */
+final class ChainAssembler {
+
+    /** Not part of a chain; process the APDU as is */
+    static final int NOT_CHAINED = 0;
+
+    /** Segment stored; answer {@code 9000} and wait for the next one */
+    static final int SEGMENT_STORED = 1;
+
+    /** Last segment received; {@link #takeCommand()} returns the complete command */
+    static final int COMPLETE = 2;
+
+    /** The chain exceeds the buffer; answer {@code 6700} */
+    static final int TOO_LONG = -1;
+
+    /** A segment of another command arrived mid-chain; answer {@code 6883} */
+    static final int UNEXPECTED_SEGMENT = -2;
+
+    private static final int CHAINING_BIT = 0x10;
+    private static final int INITIAL_BUFFER = 512;
+
+    private final int capacity;
+    private byte[] data;
+    private int length;
+    private boolean inProgress;
+    private byte ins;
+    private byte p1;
+    private byte p2;
+    private byte[] command;
+
+    /**
+     * @param capacity Maximum total command data of a chain
+     */
+    ChainAssembler(int capacity) {
+        this.capacity = capacity;
+        this.data = new byte[Math.min(capacity, INITIAL_BUFFER)];
+    }
+
+    static boolean isChained(byte[] apdu) {
+        return apdu.length >= 4 && apdu[0] != (byte) 0xFF && (apdu[0] & CHAINING_BIT) != 0;
+    }
+
+    boolean isInProgress() {
+        return inProgress;
+    }
+
+    /**
+     * Offers an APDU to the assembler.
+     *
+     * @return One of {@link #NOT_CHAINED}, {@link #SEGMENT_STORED}, {@link #COMPLETE},
+     *         {@link #TOO_LONG} or {@link #UNEXPECTED_SEGMENT}
+     */
+    int offer(byte[] apdu) {
+        if (apdu.length < 4) {
+            // Too short to continue a chain; abandon it and let the router reject the APDU
+            reset();
+            return NOT_CHAINED;
+        }
+        boolean chained = isChained(apdu);
+        if (!chained && !inProgress) {
+            return NOT_CHAINED;
+        }
+        if (inProgress && (apdu[1] != ins || apdu[2] != p1 || apdu[3] != p2)) {
+            reset();
+            // A plain command of another kind abandons the chain and is processed normally
+            return chained ? UNEXPECTED_SEGMENT : NOT_CHAINED;
+        }
+        if (!inProgress) {
+            inProgress = true;
+            ins = apdu[1];
+            p1 = apdu[2];
+            p2 = apdu[3];
+        }
+
+        int offset = ApduUtil.dataOffset(apdu, apdu.length);
+        int segmentLength = ApduUtil.dataLength(apdu, apdu.length);
+        int required = length + segmentLength;
+        if (required > capacity) {
+            reset();
+            return TOO_LONG;
+        }
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.min(Math.max(required, data.length * 2), capacity));
+        }
+        System.arraycopy(apdu, offset, data, length, segmentLength);
+        length += segmentLength;
+        if (chained) {
+            return SEGMENT_STORED;
+        }
+
+        command = build(apdu[0], expectedLength(apdu, offset + segmentLength));
+        reset();
+        return COMPLETE;
+    }
+
+    /**
+     * @return The command completed by the last {@link #offer}, handed over once
+     */
+    byte[] takeCommand() {
+        byte[] completed = command;
+        command = null;
+        return completed;
+    }
+
+    /**
+     * Discards a partial chain, e.g. when the reader deactivates. The buffer is kept.
+     */
+    void reset() {
+        inProgress = false;
+        length = 0;
+    }
+
+    /**
+     * Reads the Le of a segment in the segment's own encoding: one byte after a short Lc,
+     * two after an extended one or after the {@code 00} of a case 2E command.
+     *
+     * @param dataEnd The end of the segment's command data
+     * @return The number of expected response bytes (256 for short Le 00, 65536 for
+     *         extended Le 0000), or -1 if the segment has no Le
+     */
+    private static int expectedLength(byte[] apdu, int dataEnd) {
+        if (apdu.length == 4) {
+            return -1;
+        }
+        if (apdu.length == 5) {
+            return apdu[4] == 0 ? 256 : apdu[4] & 0xFF;
+        }
+        boolean extended = apdu[4] == 0;
+        int leOffset = extended && apdu.length == 7 ? 5 : dataEnd;
+        int leLength = apdu.length - leOffset;
+        if (extended && leLength == 2) {
+            int le = ((apdu[leOffset] & 0xFF) << 8) | (apdu[leOffset + 1] & 0xFF);
+            return le == 0 ? 65536 : le;
+        }
+        if (!extended && leLength == 1) {
+            return apdu[leOffset] == 0 ? 256 : apdu[leOffset] & 0xFF;
+        }
+        return -1;
+    }
+
+    private byte[] build(byte cla, int ne) {
+        boolean extended = length > 255 || ne > 256;
+        int header = length == 0 ? 4 : (extended ? 7 : 5);
+        // A case 2E command has the extended marker in front of its Le
+        int trailer = ne < 0 ? 0 : (!extended ? 1 : length == 0 ? 3 : 2);
+        byte[] apdu = new byte[header + length + trailer];
+        apdu[0] = cla;
+        apdu[1] = ins;
+        apdu[2] = p1;
+        apdu[3] = p2;
+        if (extended && length > 0) {
+            apdu[4] = 0;
+            apdu[5] = (byte) (length >> 8);
+            apdu[6] = (byte) length;
+        } else if (length > 0) {
+            apdu[4] = (byte) length;
+        }
+        System.arraycopy(data, 0, apdu, header, length);
+        if (ne >= 0) {
+            // 256 is written as short 00 or extended 0100, 65536 as extended 0000
+            apdu[apdu.length - 1] = (byte) ne;
+            if (extended) {
+                apdu[apdu.length - 2] = (byte) (ne >> 8);
+            }
+        }
+        return apdu;
+    }
+}
@@ -0,0 +1,14 @@
+package com.codingr.nfclib.hce.core;
+
+/**
+ * Creates the controller that serves a session after its AID is selected.
+ * Registered with a {@link ControllerRegistry}.
+ */
+public interface ControllerFactory {
+    /**
+     * @return A controller instance: an {@code @ApduMapping}-annotated object,
+     *         a {@link com.codingr.nfclib.schema.SchemaBasedController}, or both
+     * @throws Exception if the controller cannot be created
+     */
+    Object createController() throws Exception;
+}
@@ -0,0 +1,60 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.annotations.ApduController;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the {@code @ApduController} class for an AID that has no entry in the
+ * {@link ControllerRegistry}. On Android the router scans the application's dex file;
+ * on a plain JVM use {@link #forClasses}.
+ */
+public interface ControllerLocator {
+
+    /**
+     * @param aid The selected AID as an upper-case hex string
+     * @return The controller class, or null if none handles the AID
+     */
+    Class<?> findController(String aid) throws Exception;
+
+    /**
+     * Lists the controller classes this locator can return, for the PPSE directory.
+     * The default lists none; controllers found only through {@link #findController}
+     * still answer SELECT with their FCI.
+     *
+     * @return The {@code @ApduController} classes known to the locator
+     */
+    default List<Class<?>> getControllerClasses() throws Exception {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return A locator that searches the {@code @ApduController} annotations of the given classes
+     */
+    static ControllerLocator forClasses(final Class<?>... controllerClasses) {
+        return new ControllerLocator() {
+            @Override
+            public Class<?> findController(String aid) {
+                for (Class<?> controllerClass : controllerClasses) {
+                    ApduController controller = controllerClass.getAnnotation(ApduController.class);
+                    if (controller == null) {
+                        continue;
+                    }
+                    for (String supportedAid : controller.aids()) {
+                        if (supportedAid.equalsIgnoreCase(aid)) {
+                            return controllerClass;
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public List<Class<?>> getControllerClasses() {
+                return Arrays.<Class<?>>asList(controllerClasses);
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.schema.CompiledSchema;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Explicit AID to controller registrations, consulted by the router before it
+ * scans for {@code @ApduController} classes.
+ *
+ * <p>Register controllers once at application start-up, e.g. from
+ * {@code Application.onCreate()}, through {@link #getDefault()} or
+ * {@link com.codingr.nfclib.schema.ServerFactory}.</p>
+ */
+public final class ControllerRegistry {
+
+    private static final ControllerRegistry DEFAULT = new ControllerRegistry();
+
+    private final ConcurrentHashMap<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * @return The registry used by {@code ApduRouterService}
+     */
+    public static ControllerRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a controller factory for an AID.
+     *
+     * @param aid The AID as a hex string
+     * @param factory Creates a controller for every session that selects the AID
+     */
+    public void register(String aid, ControllerFactory factory) {
+        register(aid, factory, null);
+    }
+
+    /**
+     * Registers a schema-backed controller factory for an AID, together with the
+     * compiled schema used to validate and dispatch its commands.
+     *
+     * @param aid The AID as a hex string
+     * @param factory Creates a controller for every session that selects the AID
+     * @param compiledSchema The compiled schema of the created controllers, or null
+     */
+    public void register(String aid, ControllerFactory factory, CompiledSchema compiledSchema) {
+        registrations.put(normalize(aid), new Registration(factory, compiledSchema));
+        version.incrementAndGet();
+    }
+
+    public void unregister(String aid) {
+        registrations.remove(normalize(aid));
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return A counter incremented by every change, for caches derived from the registry
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @param aid The AID as a hex string, in any case
+     * @return The registration for the AID, or null if none
+     */
+    public Registration find(String aid) {
+        return registrations.get(normalize(aid));
+    }
+
+    /**
+     * @return The registered AIDs as upper-case hex strings
+     */
+    public Set<String> getAids() {
+        return Collections.unmodifiableSet(registrations.keySet());
+    }
+
+    private static String normalize(String aid) {
+        return aid.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * A registered controller factory and, for schema-backed controllers, its compiled schema.
+     */
+    public static final class Registration {
+        private final ControllerFactory factory;
+        private final CompiledSchema compiledSchema;
+
+        Registration(ControllerFactory factory, CompiledSchema compiledSchema) {
+            this.factory = factory;
+            this.compiledSchema = compiledSchema;
+        }
+
+        public ControllerFactory getFactory() { return factory; }
+        public CompiledSchema getCompiledSchema() { return compiledSchema; }
+    }
+}
@@ -0,0 +1,148 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.schema.ApduSchema;
+import com.codingr.nfclib.schema.CompiledSchema;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable routing configuration of a {@link RouterEngine}: the controller locator and
+ * the runtime overrides of controller handler mappings and schemas.
+ *
+ * <p>The engine publishes one snapshot at a time through an atomic reference. Sessions
+ * read it once per SELECT and keep the dispatch table and schema they activated with, so
+ * an update never pauses traffic nor changes the handlers of a transaction in progress;
+ * it applies from the next SELECT on. Derive updates with {@link #toBuilder()} and
+ * publish them with {@link RouterEngine#updateSnapshot}.</p>
+ *
+ * <p>Classes without overrides use the tables built from their {@code @ApduMapping}
+ * annotations, which the engine caches.</p>
+ */
+public final class DispatchSnapshot {
+
+    private final long version;
+    private final ControllerLocator locator;
+    private final Map<Class<?>, DispatchTable> tables;
+    private final Map<Class<?>, CompiledSchema> schemas;
+
+    private DispatchSnapshot(Builder builder) {
+        this.version = builder.version;
+        this.locator = builder.locator;
+        this.tables = Collections.unmodifiableMap(new HashMap<>(builder.tables));
+        this.schemas = Collections.unmodifiableMap(new HashMap<>(builder.schemas));
+    }
+
+    /**
+     * @return 0 for the engine's initial snapshot, incremented by every {@link #toBuilder()}
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * @return The fallback for AIDs without a registration, or null
+     */
+    public ControllerLocator getLocator() { return locator; }
+
+    /**
+     * @return true if the handler mappings of the class were changed at runtime
+     */
+    public boolean hasHandlerOverride(Class<?> controllerClass) {
+        return tables.containsKey(controllerClass);
+    }
+
+    /**
+     * @return The schema set at runtime for the class, or null
+     */
+    public CompiledSchema getSchemaOverride(Class<?> controllerClass) {
+        return schemas.get(controllerClass);
+    }
+
+    /**
+     * @return A builder holding this snapshot's configuration, for the next version
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.version = version + 1;
+        builder.locator = locator;
+        builder.tables.putAll(tables);
+        builder.schemas.putAll(schemas);
+        return builder;
+    }
+
+    DispatchTable dispatchTable(Class<?> controllerClass, RouterEngine engine) {
+        DispatchTable table = tables.get(controllerClass);
+        return table != null ? table : engine.dispatchTable(controllerClass);
+    }
+
+    public static class Builder {
+        private long version;
+        private ControllerLocator locator;
+        private final Map<Class<?>, DispatchTable> tables = new HashMap<>();
+        private final Map<Class<?>, CompiledSchema> schemas = new HashMap<>();
+
+        public Builder locator(ControllerLocator locator) { this.locator = locator; return this; }
+
+        /**
+         * Maps a command prefix to a public {@code ApduResponse handler(byte[])} method of the
+         * controller class, replacing the handler currently mapped to the same prefix.
+         *
+         * @throws IllegalArgumentException if the class has no such method
+         */
+        public Builder mapCommand(Class<?> controllerClass, byte[] commandPrefix, String handlerName) {
+            Method handler;
+            try {
+                handler = controllerClass.getMethod(handlerName, byte[].class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(controllerClass.getName() + " has no public method "
+                        + handlerName + "(byte[])", e);
+            }
+            if (!ApduResponse.class.isAssignableFrom(handler.getReturnType())) {
+                throw new IllegalArgumentException(handler + " does not return an ApduResponse");
+            }
+            tables.put(controllerClass, table(controllerClass).with(commandPrefix.clone(), handler));
+            return this;
+        }
+
+        /**
+         * Removes the handler mapped to a command prefix of the controller class.
+         */
+        public Builder unmapCommand(Class<?> controllerClass, byte[] commandPrefix) {
+            tables.put(controllerClass, table(controllerClass).without(commandPrefix));
+            return this;
+        }
+
+        /**
+         * Drops the handler overrides of the class, restoring its {@code @ApduMapping}s.
+         */
+        public Builder resetCommands(Class<?> controllerClass) {
+            tables.remove(controllerClass);
+            return this;
+        }
+
+        /**
+         * Validates and dispatches the commands of the controller class with this schema,
+         * instead of the one it or its registration provides.
+         *
+         * @param schema The schema, or null to remove the override
+         */
+        public Builder schema(Class<?> controllerClass, ApduSchema schema) {
+            if (schema == null) {
+                schemas.remove(controllerClass);
+            } else {
+                schemas.put(controllerClass, CompiledSchema.compile(schema));
+            }
+            return this;
+        }
+
+        public DispatchSnapshot build() {
+            return new DispatchSnapshot(this);
+        }
+
+        private DispatchTable table(Class<?> controllerClass) {
+            DispatchTable table = tables.get(controllerClass);
+            return table != null ? table : DispatchTable.forClass(controllerClass);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.annotations.ApduMapping;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code @ApduMapping} handlers of one controller class, ordered by descending
+ * prefix length so the first match is the longest one. Immutable and shared by all
+ * sessions of the class.
+ */
+final class DispatchTable {
+
+    static final DispatchTable EMPTY = new DispatchTable(new byte[0][], new Method[0]);
+
+    private final byte[][] prefixes;
+    private final Method[] handlers;
+
+    private DispatchTable(byte[][] prefixes, Method[] handlers) {
+        this.prefixes = prefixes;
+        this.handlers = handlers;
+    }
+
+    static DispatchTable forClass(Class<?> controllerClass) {
+        List<Method> mapped = new ArrayList<>();
+        for (Method method : controllerClass.getMethods()) {
+            if (method.isAnnotationPresent(ApduMapping.class)) {
+                mapped.add(method);
+            }
+        }
+        byte[][] prefixes = new byte[mapped.size()][];
+        Method[] handlers = mapped.toArray(new Method[0]);
+        for (int i = 0; i < handlers.length; i++) {
+            prefixes[i] = handlers[i].getAnnotation(ApduMapping.class).command();
+        }
+        return of(prefixes, handlers);
+    }
+
+    /**
+     * @param prefixes Command prefixes, parallel to {@code handlers}
+     */
+    static DispatchTable of(final byte[][] prefixes, Method[] handlers) {
+        if (handlers.length == 0) {
+            return EMPTY;
+        }
+        Integer[] order = new Integer[handlers.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return prefixes[b].length - prefixes[a].length;
+            }
+        });
+        byte[][] sortedPrefixes = new byte[order.length][];
+        Method[] sortedHandlers = new Method[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedPrefixes[i] = prefixes[order[i]].clone();
+            sortedHandlers[i] = handlers[order[i]];
+        }
+        return new DispatchTable(sortedPrefixes, sortedHandlers);
+    }
+
+    /**
+     * @return A copy of this table where {@code prefix} maps to {@code handler}, replacing
+     *         any handler previously mapped to the same prefix
+     */
+    DispatchTable with(byte[] prefix, Method handler) {
+        int existing = indexOf(prefix);
+        byte[][] newPrefixes = Arrays.copyOf(prefixes, existing < 0 ? prefixes.length + 1 : prefixes.length);
+        Method[] newHandlers = Arrays.copyOf(handlers, newPrefixes.length);
+        int slot = existing < 0 ? prefixes.length : existing;
+        newPrefixes[slot] = prefix;
+        newHandlers[slot] = handler;
+        return of(newPrefixes, newHandlers);
+    }
+
+    /**
+     * @return A copy of this table without the handler mapped to {@code prefix}
+     */
+    DispatchTable without(byte[] prefix) {
+        int existing = indexOf(prefix);
+        if (existing < 0) {
+            return this;
+        }
+        byte[][] newPrefixes = new byte[prefixes.length - 1][];
+        Method[] newHandlers = new Method[handlers.length - 1];
+        for (int i = 0, j = 0; i < prefixes.length; i++) {
+            if (i != existing) {
+                newPrefixes[j] = prefixes[i];
+                newHandlers[j++] = handlers[i];
+            }
+        }
+        return of(newPrefixes, newHandlers);
+    }
+
+    private int indexOf(byte[] prefix) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (Arrays.equals(prefixes[i], prefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean isEmpty() {
+        return handlers.length == 0;
+    }
+
+    int size() {
+        return handlers.length;
+    }
+
+    /**
+     * @return The handler with the longest prefix matching the APDU, or null
+     */
+    Method find(byte[] apdu) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (startsWith(apdu, prefixes[i])) {
+                return handlers[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] apdu, byte[] prefix) {
+        if (apdu.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (apdu[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package com.codingr.nfclib.hce.core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of a task started by a {@link Prefetcher}, for the handler that needs it.
+ *
+ * <p>Handlers wait for it with {@link #await(long)}, bounded so a slow or failed task
+ * never costs more than the deadline; on null they compute the result inline.</p>
+ */
+public final class Prefetch<T> {
+
+    private final FutureTask<T> task;
+    private volatile Throwable error;
+
+    Prefetch(FutureTask<T> task) {
+        this.task = task;
+    }
+
+    /**
+     * Waits for the result, at most {@code timeoutMillis}.
+     *
+     * @param timeoutMillis The longest wait; 0 only takes a result that is already there
+     * @return The result, or null if the task is not done in time, failed or was cancelled
+     */
+    public T await(long timeoutMillis) {
+        try {
+            return timeoutMillis <= 0 && !task.isDone() ? null : task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            error = e.getCause();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public boolean isDone() {
+        return task.isDone();
+    }
+
+    /**
+     * @return The exception thrown by the task, once {@link #await} saw it fail; otherwise null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Cancels the task, interrupting it if it is running.
+     */
+    public void cancel() {
+        task.cancel(true);
+    }
+}
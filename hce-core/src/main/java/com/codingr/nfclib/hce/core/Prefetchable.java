@@ -0,0 +1,30 @@
+package com.codingr.nfclib.hce.core;
+
+/**
+ * Implemented by controllers that start work as soon as they are selected, instead of
+ * when the command needing it arrives.
+ *
+ * <pre>
+ * private Prefetch&lt;byte[]&gt; challenge;
+ *
+ * public void onActivated(Prefetcher prefetcher) {
+ *     challenge = prefetcher.submit(new Callable&lt;byte[]&gt;() {
+ *         public byte[] call() { return newChallenge(); }
+ *     });
+ * }
+ *
+ * &#64;ApduMapping(command = {(byte) 0x00, (byte) 0x84})
+ * public ApduResponse getChallenge(byte[] apdu) {
+ *     byte[] value = challenge.await(20);
+ *     return new ApduResponse(value != null ? value : newChallenge(), ApduUtil.SW_OK);
+ * }
+ * </pre>
+ */
+public interface Prefetchable {
+
+    /**
+     * Called on the APDU thread right after the controller is activated by a SELECT,
+     * before the SELECT is answered. Submit tasks and return quickly.
+     */
+    void onActivated(Prefetcher prefetcher);
+}
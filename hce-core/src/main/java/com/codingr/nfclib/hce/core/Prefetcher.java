@@ -0,0 +1,63 @@
+package com.codingr.nfclib.hce.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Starts background work for the controller activated by a SELECT, such as preparing a
+ * challenge or signing static data, so the result is ready when the next command arrives.
+ *
+ * <p>A prefetcher belongs to one activation: tasks still pending when the session is
+ * deactivated or another application is selected are cancelled, and later submissions
+ * are cancelled immediately.</p>
+ *
+ * @see Prefetchable
+ */
+public final class Prefetcher {
+
+    private final Executor executor;
+    private final List<Prefetch<?>> started = new ArrayList<>(2);
+    private boolean closed;
+
+    Prefetcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a task on the engine's prefetch executor.
+     *
+     * @return The handle the controller keeps to read the result
+     */
+    public <T> Prefetch<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        Prefetch<T> prefetch = new Prefetch<>(future);
+        synchronized (this) {
+            if (closed) {
+                future.cancel(false);
+                return prefetch;
+            }
+            started.add(prefetch);
+        }
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+        }
+        return prefetch;
+    }
+
+    /**
+     * Cancels pending tasks and any later submission.
+     */
+    synchronized void close() {
+        closed = true;
+        for (Prefetch<?> prefetch : started) {
+            prefetch.cancel();
+        }
+        started.clear();
+    }
+}
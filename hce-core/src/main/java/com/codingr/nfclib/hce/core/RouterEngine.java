@@ -0,0 +1,257 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.capture.CaptureWriter;
+import com.codingr.nfclib.schema.CompiledSchema;
+import com.codingr.nfclib.schema.SchemaBasedController;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Platform-independent APDU routing: AID resolution, controller activation, command
+ * validation, chaining and dispatch to {@code @ApduMapping} handlers or schema-backed
+ * controllers.
+ *
+ * <p>An engine holds the configuration and the dispatch tables, which are built once per
+ * controller class and shared. Per-field state lives in a {@link RouterSession}; create one
+ * per reader, or per emulated card, with {@link #newSession()}. {@code ApduRouterService}
+ * is a thin Android adapter over one session.</p>
+ *
+ * <p>The locator and runtime handler and schema overrides form a {@link DispatchSnapshot},
+ * replaced atomically with {@link #updateSnapshot} while sessions keep routing.</p>
+ */
+public final class RouterEngine {
+
+    private final ControllerRegistry registry;
+    private final AtomicReference<DispatchSnapshot> snapshot;
+    private final ValidationPolicy validationPolicy;
+    private final int maxChainedCommandLength;
+    private final long resumptionWindowMillis;
+    private final int maxSuspendedControllers;
+    private final RouterListener listener;
+    private final Executor prefetchExecutor;
+    private final boolean fciResponses;
+    private final boolean ppseDirectory;
+    private volatile SelectResponses selectResponses;
+    private final CaptureWriter capture;
+    private final ConcurrentHashMap<Class<?>, DispatchTable> dispatchTables = new ConcurrentHashMap<>();
+
+    private RouterEngine(Builder builder) {
+        this.registry = builder.registry;
+        this.snapshot = new AtomicReference<>(new DispatchSnapshot.Builder().locator(builder.locator).build());
+        this.validationPolicy = builder.validationPolicy;
+        this.maxChainedCommandLength = builder.maxChainedCommandLength;
+        this.resumptionWindowMillis = builder.resumptionWindowMillis;
+        this.maxSuspendedControllers = builder.maxSuspendedControllers;
+        this.listener = builder.listener;
+        this.prefetchExecutor = builder.prefetchExecutor;
+        this.fciResponses = builder.fciResponses;
+        this.ppseDirectory = builder.ppseDirectory;
+        this.capture = builder.capture;
+    }
+
+    public RouterSession newSession() {
+        return new RouterSession(this);
+    }
+
+    public ControllerRegistry getRegistry() { return registry; }
+    public ValidationPolicy getValidationPolicy() { return validationPolicy; }
+    public int getMaxChainedCommandLength() { return maxChainedCommandLength; }
+    public RouterListener getListener() { return listener; }
+
+    /**
+     * @return How long a session keeps controllers suspended on link loss, 0 if disabled
+     */
+    public long getResumptionWindowMillis() { return resumptionWindowMillis; }
+    public int getMaxSuspendedControllers() { return maxSuspendedControllers; }
+
+    public boolean isFciResponses() { return fciResponses; }
+    public boolean isPpseDirectory() { return ppseDirectory; }
+
+    /**
+     * @return The executor running {@link Prefetchable} tasks
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor != null ? prefetchExecutor : SharedPrefetchPool.INSTANCE;
+    }
+
+    /**
+     * @return The writer recording every session, or null
+     */
+    public CaptureWriter getCapture() { return capture; }
+
+    /**
+     * @return The routing configuration applied to the next SELECT
+     */
+    public DispatchSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publishes a routing configuration, typically derived from {@link #getSnapshot()} with
+     * {@link DispatchSnapshot#toBuilder()}. Sessions pick it up on their next SELECT.
+     */
+    public void updateSnapshot(DispatchSnapshot update) {
+        snapshot.set(update);
+    }
+
+    /**
+     * Publishes a routing configuration only if the current one is still {@code expected},
+     * for concurrent updaters that derive their update from the current snapshot.
+     *
+     * @return false if another update was published since {@code expected} was read
+     */
+    public boolean updateSnapshot(DispatchSnapshot expected, DispatchSnapshot update) {
+        return snapshot.compareAndSet(expected, update);
+    }
+
+    /**
+     * @return The SELECT responses for the current snapshot and registry, rebuilt only
+     *         after one of them changed
+     */
+    SelectResponses selectResponses(DispatchSnapshot snapshot) throws Exception {
+        SelectResponses responses = selectResponses;
+        if (responses == null || !responses.isCurrent(snapshot, registry.getVersion())) {
+            responses = SelectResponses.build(registry, snapshot);
+            selectResponses = responses;
+        }
+        return responses;
+    }
+
+    /**
+     * @return The table built from the class's {@code @ApduMapping}s, built once per class
+     */
+    DispatchTable dispatchTable(Class<?> controllerClass) {
+        DispatchTable table = dispatchTables.get(controllerClass);
+        if (table == null) {
+            table = DispatchTable.forClass(controllerClass);
+            DispatchTable existing = dispatchTables.putIfAbsent(controllerClass, table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return The compiled schema of a schema-backed controller, or null. Controllers of
+     *         one class can implement different schemas, so this is the controller's own.
+     */
+    CompiledSchema compiledSchema(Object controller) {
+        if (!(controller instanceof SchemaBasedController)) {
+            return null;
+        }
+        return ((SchemaBasedController) controller).getCompiledSchema();
+    }
+
+    /**
+     * Default prefetch executor shared by all engines, created on first use. Threads are
+     * daemons and exit when idle.
+     */
+    private static final class SharedPrefetchPool {
+        static final Executor INSTANCE;
+
+        static {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "router-prefetch-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            INSTANCE = pool;
+        }
+    }
+
+    public static class Builder {
+        private ControllerRegistry registry = ControllerRegistry.getDefault();
+        private ControllerLocator locator;
+        private ValidationPolicy validationPolicy = ValidationPolicy.DEFAULT;
+        private int maxChainedCommandLength = 16384;
+        private long resumptionWindowMillis;
+        private int maxSuspendedControllers = 4;
+        private RouterListener listener = RouterListener.NONE;
+        private Executor prefetchExecutor;
+        private boolean fciResponses;
+        private boolean ppseDirectory;
+        private CaptureWriter capture;
+
+        /**
+         * Registry consulted first on SELECT. Default {@link ControllerRegistry#getDefault()}.
+         */
+        public Builder registry(ControllerRegistry registry) { this.registry = registry; return this; }
+
+        /**
+         * Fallback for AIDs without a registration, part of the initial {@link DispatchSnapshot}.
+         */
+        public Builder locator(ControllerLocator locator) { this.locator = locator; return this; }
+
+        /**
+         * Shortcut for {@code locator(ControllerLocator.forClasses(controllerClasses))}.
+         */
+        public Builder controllerClasses(Class<?>... controllerClasses) {
+            this.locator = ControllerLocator.forClasses(controllerClasses);
+            return this;
+        }
+
+        public Builder validationPolicy(ValidationPolicy policy) { this.validationPolicy = policy; return this; }
+
+        /**
+         * Maximum command data accepted through command chaining. Default 16384 bytes.
+         */
+        public Builder maxChainedCommandLength(int bytes) { this.maxChainedCommandLength = bytes; return this; }
+
+        /**
+         * Enables session resumption: on link loss, a session keeps its {@link SessionResumable}
+         * controller for this long, and a SELECT of the same AID within the window resumes it.
+         * Default 0, disabled.
+         */
+        public Builder resumptionWindowMillis(long millis) { this.resumptionWindowMillis = millis; return this; }
+
+        /**
+         * Suspended controllers kept per session, one per AID; the oldest is dropped first. Default 4.
+         */
+        public Builder maxSuspendedControllers(int max) { this.maxSuspendedControllers = max; return this; }
+
+        public Builder listener(RouterListener listener) { this.listener = listener; return this; }
+
+        /**
+         * Runs the tasks {@link Prefetchable} controllers submit on activation. Default: a
+         * pool shared by all engines, with one daemon thread per processor.
+         */
+        public Builder prefetchExecutor(Executor executor) { this.prefetchExecutor = executor; return this; }
+
+        /**
+         * Answers a successful SELECT with the application's FCI template (6F) built from
+         * its {@code @ApduController} label and priority, instead of a bare 9000. Default false.
+         */
+        public Builder fciResponses(boolean enabled) { this.fciResponses = enabled; return this; }
+
+        /**
+         * Answers SELECT 2PAY.SYS.DDF01 with a directory of the registered AIDs and of the
+         * controller classes the locator lists, for multi-application discovery. Default false.
+         */
+        public Builder ppseDirectory(boolean enabled) { this.ppseDirectory = enabled; return this; }
+
+        /**
+         * Records every session of the engine, for replay with
+         * {@link com.codingr.nfclib.capture.CaptureReplayer}.
+         */
+        public Builder capture(CaptureWriter writer) { this.capture = writer; return this; }
+
+        public RouterEngine build() {
+            return new RouterEngine(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.codingr.nfclib.hce.core;
+
+/**
+ * Observes the routing decisions of a {@link RouterSession}. All methods have empty
+ * defaults; implement only what you need. Callbacks run on the thread processing the
+ * APDU, so they should be cheap.
+ */
+public interface RouterListener {
+
+    /** Listener that ignores every event */
+    RouterListener NONE = new RouterListener() {
+    };
+
+    /**
+     * A controller was activated by a SELECT.
+     *
+     * @param registered true if it came from the {@link ControllerRegistry}, false if located by class
+     */
+    default void onActivated(String aid, Object controller, boolean registered) {
+    }
+
+    /**
+     * A SELECT brought back a controller suspended on link loss, instead of creating one.
+     *
+     * @see SessionResumable
+     */
+    default void onResumed(String aid, Object controller) {
+    }
+
+    /**
+     * No controller handles the selected AID.
+     */
+    default void onAidNotFound(String aid) {
+    }
+
+    /**
+     * Creating the controller for a selected AID failed.
+     */
+    default void onActivationError(String aid, Exception error) {
+    }
+
+    /**
+     * An APDU was answered with an error status word before reaching a handler.
+     *
+     * @param reason A short human-readable explanation
+     */
+    default void onRejected(byte[] command, byte[] statusWord, String reason) {
+    }
+
+    /**
+     * A handler response does not match the schema of its command.
+     */
+    default void onResponseMismatch(String commandId, ApduResponse response) {
+    }
+
+    /**
+     * A handler threw an exception.
+     */
+    default void onHandlerError(byte[] command, Exception error) {
+    }
+
+    /**
+     * An APDU was answered.
+     *
+     * @param command The APDU as received; for chained commands, the last segment
+     * @param response The response returned to the reader
+     * @param nanos Processing time inside the router
+     */
+    default void onCommand(byte[] command, byte[] response, long nanos) {
+    }
+
+    /**
+     * The session ended, with the deactivation reason reported by the platform.
+     */
+    default void onDeactivated(int reason) {
+    }
+}
@@ -0,0 +1,199 @@
+package com.codingr.nfclib.hce.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free router instrumentation: processing time histogram, status word distribution,
+ * activations and rejections. Install it with {@link RouterEngine.Builder#listener}; one
+ * instance can be shared by every session of an engine.
+ *
+ * <p>Processing times cover the router only (lookup, dispatch and handler), not the
+ * transport, and are counted in power-of-two nanosecond buckets.</p>
+ */
+public final class RouterMetrics implements RouterListener {
+
+    static final int BUCKETS = 64;
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder activations = new LongAdder();
+    private final LongAdder resumptions = new LongAdder();
+    private final LongAdder aidsNotFound = new LongAdder();
+    private final LongAdder activationErrors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder handlerErrors = new LongAdder();
+    private final LongAdder responseMismatches = new LongAdder();
+    private final LongAdder deactivations = new LongAdder();
+    private final ConcurrentHashMap<Integer, LongAdder> statusWords = new ConcurrentHashMap<>();
+
+    @Override
+    public void onActivated(String aid, Object controller, boolean registered) {
+        activations.increment();
+    }
+
+    @Override
+    public void onResumed(String aid, Object controller) {
+        resumptions.increment();
+    }
+
+    @Override
+    public void onAidNotFound(String aid) {
+        aidsNotFound.increment();
+    }
+
+    @Override
+    public void onActivationError(String aid, Exception error) {
+        activationErrors.increment();
+    }
+
+    @Override
+    public void onRejected(byte[] command, byte[] statusWord, String reason) {
+        rejected.increment();
+    }
+
+    @Override
+    public void onResponseMismatch(String commandId, ApduResponse response) {
+        responseMismatches.increment();
+    }
+
+    @Override
+    public void onHandlerError(byte[] command, Exception error) {
+        handlerErrors.increment();
+    }
+
+    @Override
+    public void onCommand(byte[] command, byte[] response, long nanos) {
+        commands.increment();
+        totalNanos.add(nanos);
+        buckets.incrementAndGet(nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos));
+        if (response.length >= 2) {
+            int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+            LongAdder count = statusWords.get(sw);
+            if (count == null) {
+                LongAdder created = new LongAdder();
+                count = statusWords.putIfAbsent(sw, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.increment();
+        }
+    }
+
+    @Override
+    public void onDeactivated(int reason) {
+        deactivations.increment();
+    }
+
+    /**
+     * @return A copy of all counters
+     */
+    public Snapshot snapshot() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = buckets.get(i);
+        }
+        Map<Integer, Long> sw = new HashMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : statusWords.entrySet()) {
+            sw.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new Snapshot(commands.sum(), totalNanos.sum(), histogram, activations.sum(), resumptions.sum(),
+                aidsNotFound.sum(), activationErrors.sum(), rejected.sum(), handlerErrors.sum(),
+                responseMismatches.sum(), deactivations.sum(), Collections.unmodifiableMap(sw));
+    }
+
+    /**
+     * Router counters at one point in time.
+     */
+    public static final class Snapshot {
+        private final long commands;
+        private final long totalNanos;
+        private final long[] histogram;
+        private final long activations;
+        private final long resumptions;
+        private final long aidsNotFound;
+        private final long activationErrors;
+        private final long rejected;
+        private final long handlerErrors;
+        private final long responseMismatches;
+        private final long deactivations;
+        private final Map<Integer, Long> statusWords;
+
+        Snapshot(long commands, long totalNanos, long[] histogram, long activations, long resumptions,
+                 long aidsNotFound, long activationErrors, long rejected, long handlerErrors,
+                 long responseMismatches, long deactivations, Map<Integer, Long> statusWords) {
+            this.commands = commands;
+            this.totalNanos = totalNanos;
+            this.histogram = histogram;
+            this.activations = activations;
+            this.resumptions = resumptions;
+            this.aidsNotFound = aidsNotFound;
+            this.activationErrors = activationErrors;
+            this.rejected = rejected;
+            this.handlerErrors = handlerErrors;
+            this.responseMismatches = responseMismatches;
+            this.deactivations = deactivations;
+            this.statusWords = statusWords;
+        }
+
+        /**
+         * @return APDUs answered, SELECTs and chained segments included
+         */
+        public long getCommands() { return commands; }
+        public long getTotalNanos() { return totalNanos; }
+
+        public long getAverageNanos() {
+            return commands == 0 ? 0 : totalNanos / commands;
+        }
+
+        /**
+         * @return APDU counts per bucket; bucket {@code i} holds processing times of
+         *         {@code 2^i} to {@code 2^(i+1) - 1} nanoseconds
+         */
+        public long[] getHistogram() { return histogram.clone(); }
+
+        /**
+         * @param percentile A value between 0 and 100
+         * @return The upper bound of the histogram bucket holding the percentile
+         */
+        public long getPercentileNanos(double percentile) {
+            long rank = (long) Math.ceil(commands * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        public long getActivations() { return activations; }
+
+        /**
+         * @return SELECTs that resumed a suspended controller, not counted as activations
+         */
+        public long getResumptions() { return resumptions; }
+        public long getAidsNotFound() { return aidsNotFound; }
+        public long getActivationErrors() { return activationErrors; }
+
+        /**
+         * @return APDUs answered with an error before reaching a handler
+         */
+        public long getRejected() { return rejected; }
+        public long getHandlerErrors() { return handlerErrors; }
+        public long getResponseMismatches() { return responseMismatches; }
+        public long getDeactivations() { return deactivations; }
+
+        /**
+         * @return Status words returned and how often each was returned
+         */
+        public Map<Integer, Long> getStatusWords() { return statusWords; }
+    }
+}
@@ -0,0 +1,373 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.capture.CaptureFormat;
+import com.codingr.nfclib.capture.CaptureWriter;
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.CommandValidator;
+import com.codingr.nfclib.schema.CompiledSchema;
+import com.codingr.nfclib.schema.SchemaBasedController;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Routing state of one card emulation session: the active controller, its dispatch
+ * table and schema, and any command chain in progress.
+ *
+ * <p>A session processes one APDU at a time, like the field it represents; use one
+ * session per reader. Sessions are cheap, all shared state lives in the
+ * {@link RouterEngine}.</p>
+ */
+public final class RouterSession {
+
+    /** The link to the reader was lost (same value as Android's HostApduService) */
+    public static final int DEACTIVATION_LINK_LOSS = 0;
+
+    /** The reader selected another AID (same value as Android's HostApduService) */
+    public static final int DEACTIVATION_DESELECTED = 1;
+
+    private static final byte[] SELECT_APDU_HEADER = {(byte) 0x00, (byte) 0xA4, (byte) 0x04, (byte) 0x00};
+
+    private final RouterEngine engine;
+    private final RouterListener listener;
+    private final ValidationPolicy validationPolicy;
+    private final CaptureWriter capture;
+    private int captureSession;
+    private final long resumptionWindowNanos;
+    private String activeAid;
+    private Object activeController;
+    private DispatchTable handlers = DispatchTable.EMPTY;
+    private CompiledSchema activeSchema;
+    private ChainAssembler chainAssembler;
+    private Prefetcher prefetcher;
+    private long commandSequence;
+    // Controllers suspended on link loss by AID, oldest first; created on first use
+    private LinkedHashMap<String, Suspended> suspended;
+
+    RouterSession(RouterEngine engine) {
+        this.engine = engine;
+        this.listener = engine.getListener();
+        this.validationPolicy = engine.getValidationPolicy();
+        this.capture = engine.getCapture();
+        this.resumptionWindowNanos = engine.getResumptionWindowMillis() * 1000000L;
+    }
+
+    /**
+     * @return The controller activated by the last SELECT, or null
+     */
+    public Object getActiveController() {
+        return activeController;
+    }
+
+    /**
+     * Processes one command APDU.
+     *
+     * @return The response APDU, data followed by the status word
+     */
+    public byte[] process(byte[] commandApdu) {
+        if (capture != null && captureSession == 0) {
+            captureSession = capture.startSession(CaptureFormat.SOURCE_ROUTER);
+        }
+        long timestamp = capture != null ? capture.now() : 0;
+        long start = System.nanoTime();
+        byte[] response = route(commandApdu);
+        long elapsed = System.nanoTime() - start;
+        listener.onCommand(commandApdu, response, elapsed);
+        if (capture != null) {
+            capture.recordExchange(captureSession, timestamp, commandApdu, response, elapsed);
+        }
+        return response;
+    }
+
+    /**
+     * Ends the session: drops the active controller and any partial command chain. With
+     * resumption enabled, a lost link suspends a {@link SessionResumable} controller instead.
+     */
+    public void deactivate(int reason) {
+        listener.onDeactivated(reason);
+        if (captureSession != 0) {
+            capture.endSession(captureSession, reason);
+            captureSession = 0;
+        }
+        closePrefetcher();
+        if (reason == DEACTIVATION_LINK_LOSS && resumptionWindowNanos > 0) {
+            suspend();
+        }
+        clearActive();
+    }
+
+    private void clearActive() {
+        closePrefetcher();
+        activeAid = null;
+        activeController = null;
+        activeSchema = null;
+        handlers = DispatchTable.EMPTY;
+        if (chainAssembler != null) {
+            chainAssembler.reset();
+        }
+    }
+
+    private byte[] route(byte[] commandApdu) {
+        if (isSelectApdu(commandApdu)) {
+            return handleSelectApdu(commandApdu);
+        }
+
+        if (activeController == null) {
+            return reject(commandApdu, ApduUtil.SW_CONDITIONS_NOT_SATISFIED, "No active controller, SELECT first");
+        }
+
+        // Most sessions never chain, so the assembler is only created by a chained segment
+        if (chainAssembler == null && ChainAssembler.isChained(commandApdu)) {
+            chainAssembler = new ChainAssembler(engine.getMaxChainedCommandLength());
+        }
+
+        // Chained segments are collected and acknowledged; handlers only see the whole command
+        switch (chainAssembler != null ? chainAssembler.offer(commandApdu) : ChainAssembler.NOT_CHAINED) {
+            case ChainAssembler.SEGMENT_STORED:
+                return ApduUtil.SW_OK;
+            case ChainAssembler.COMPLETE:
+                commandApdu = chainAssembler.takeCommand();
+                break;
+            case ChainAssembler.TOO_LONG:
+                return reject(commandApdu, ApduUtil.SW_WRONG_LENGTH,
+                        "Command chain exceeds " + engine.getMaxChainedCommandLength() + " bytes");
+            case ChainAssembler.UNEXPECTED_SEGMENT:
+                return reject(commandApdu, ApduUtil.SW_LAST_COMMAND_EXPECTED, "Unexpected chained segment");
+            default:
+                break;
+        }
+
+        int schemaCommand = CompiledSchema.NOT_IN_SCHEMA;
+        if (activeSchema != null) {
+            schemaCommand = activeSchema.indexOf(commandApdu, commandApdu.length);
+            if (validationPolicy.isValidateCommands()) {
+                if (schemaCommand == CompiledSchema.WRONG_P1P2) {
+                    return reject(commandApdu, ApduUtil.SW_INCORRECT_P1P2, "Incorrect P1/P2");
+                }
+                if (schemaCommand == CompiledSchema.WRONG_LENGTH) {
+                    return reject(commandApdu, ApduUtil.SW_WRONG_LENGTH, "Wrong data length");
+                }
+            }
+        }
+
+        // Explicit @ApduMapping handlers take precedence; schema commands without one
+        // go straight to handleSchemaCommand through the compiled command index.
+        Method bestMatch = handlers.find(commandApdu);
+
+        if (bestMatch == null && schemaCommand < 0) {
+            return reject(commandApdu, ApduUtil.SW_INS_NOT_SUPPORTED, "No handler found");
+        }
+
+        try {
+            ApduResponse response;
+            if (bestMatch != null) {
+                response = (ApduResponse) bestMatch.invoke(activeController, commandApdu);
+            } else {
+                ApduCommandSpec commandSpec = activeSchema.getValidator(schemaCommand).getSpec();
+                response = ((SchemaBasedController) activeController).handleSchemaCommand(commandSpec, commandApdu);
+            }
+            if (schemaCommand >= 0 && validationPolicy.shouldValidateResponse(commandSequence++)) {
+                validateResponse(activeSchema.getValidator(schemaCommand), response);
+            }
+            return response.toBytes();
+        } catch (Exception e) {
+            listener.onHandlerError(commandApdu, e);
+            return ApduUtil.SW_CONDITIONS_NOT_SATISFIED;
+        }
+    }
+
+    private byte[] handleSelectApdu(byte[] selectApdu) {
+        int aidLength = Math.min(selectApdu[4] & 0xFF, selectApdu.length - 5);
+        byte[] aid = new byte[aidLength];
+        System.arraycopy(selectApdu, 5, aid, 0, aidLength);
+        String aidHex = ApduUtil.bytesToHex(aid);
+
+        try {
+            // One snapshot per activation: the transaction keeps its handlers across updates
+            DispatchSnapshot snapshot = engine.getSnapshot();
+            if (engine.isPpseDirectory() && SelectResponses.PPSE_AID.equals(aidHex)) {
+                clearActive();
+                return engine.selectResponses(snapshot).getDirectory();
+            }
+
+            if (suspended != null && resume(aidHex)) {
+                return selectResponse(snapshot, aidHex);
+            }
+
+            ControllerRegistry.Registration registration = engine.getRegistry().find(aidHex);
+            if (registration != null) {
+                Object controller = registration.getFactory().createController();
+                activate(snapshot, aidHex, controller, registration.getCompiledSchema());
+                listener.onActivated(aidHex, controller, true);
+                return selectResponse(snapshot, aidHex);
+            }
+
+            ControllerLocator locator = snapshot.getLocator();
+            Class<?> controllerClass = locator != null ? locator.findController(aidHex) : null;
+            if (controllerClass != null) {
+                Object controller = controllerClass.getDeclaredConstructor().newInstance();
+                activate(snapshot, aidHex, controller, null);
+                listener.onActivated(aidHex, controller, false);
+                return selectResponse(snapshot, aidHex);
+            }
+            listener.onAidNotFound(aidHex);
+            return ApduUtil.SW_FILE_NOT_FOUND;
+        } catch (Exception e) {
+            // Also when the FCI failed after activation: the terminal sees a failed SELECT
+            clearActive();
+            listener.onActivationError(aidHex, e);
+            return ApduUtil.SW_CONDITIONS_NOT_SATISFIED;
+        }
+    }
+
+    private byte[] selectResponse(DispatchSnapshot snapshot, String aid) throws Exception {
+        if (!engine.isFciResponses()) {
+            return ApduUtil.SW_OK;
+        }
+        return engine.selectResponses(snapshot).getFci(aid, activeController.getClass());
+    }
+
+    /**
+     * @param registeredSchema The schema of the controller's registration, or null
+     */
+    private void activate(DispatchSnapshot snapshot, String aid, Object controller, CompiledSchema registeredSchema) {
+        CompiledSchema schema = snapshot.getSchemaOverride(controller.getClass());
+        if (schema == null) {
+            schema = registeredSchema != null ? registeredSchema : engine.compiledSchema(controller);
+        }
+        activeAid = aid;
+        activeController = controller;
+        handlers = snapshot.dispatchTable(controller.getClass(), engine);
+        activeSchema = schema;
+        if (chainAssembler != null) {
+            chainAssembler.reset();
+        }
+        startPrefetch();
+    }
+
+    private void startPrefetch() {
+        closePrefetcher();
+        if (activeController instanceof Prefetchable) {
+            prefetcher = new Prefetcher(engine.getPrefetchExecutor());
+            try {
+                ((Prefetchable) activeController).onActivated(prefetcher);
+            } catch (RuntimeException e) {
+                // The controller stays active; its handlers fall back to inline work
+                listener.onActivationError(activeAid, e);
+            }
+        }
+    }
+
+    private void closePrefetcher() {
+        if (prefetcher != null) {
+            prefetcher.close();
+            prefetcher = null;
+        }
+    }
+
+    private void suspend() {
+        if (!(activeController instanceof SessionResumable)) {
+            return;
+        }
+        try {
+            if (!((SessionResumable) activeController).onSuspend()) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            listener.onActivationError(activeAid, e);
+            return;
+        }
+        if (suspended == null) {
+            suspended = new LinkedHashMap<>();
+        }
+        long now = System.nanoTime();
+        dropExpired(now);
+        suspended.remove(activeAid);
+        suspended.put(activeAid, new Suspended(activeController, handlers, activeSchema, now));
+        if (suspended.size() > engine.getMaxSuspendedControllers()) {
+            Iterator<Suspended> oldest = suspended.values().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * @return true if a controller suspended for the AID was resumed
+     */
+    private boolean resume(String aid) {
+        long now = System.nanoTime();
+        dropExpired(now);
+        Suspended entry = suspended.remove(aid);
+        if (entry == null) {
+            return false;
+        }
+        try {
+            if (!((SessionResumable) entry.controller).onResume(now - entry.suspendedAt)) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            listener.onActivationError(aid, e);
+            return false;
+        }
+        activeAid = aid;
+        activeController = entry.controller;
+        handlers = entry.handlers;
+        activeSchema = entry.schema;
+        if (chainAssembler != null) {
+            chainAssembler.reset();
+        }
+        startPrefetch();
+        listener.onResumed(aid, entry.controller);
+        return true;
+    }
+
+    private void dropExpired(long now) {
+        Iterator<Suspended> entries = suspended.values().iterator();
+        while (entries.hasNext()) {
+            if (now - entries.next().suspendedAt > resumptionWindowNanos) {
+                entries.remove();
+            } else {
+                break; // in suspension order, the rest is younger
+            }
+        }
+    }
+
+    private byte[] reject(byte[] commandApdu, byte[] statusWord, String reason) {
+        listener.onRejected(commandApdu, statusWord, reason);
+        return statusWord;
+    }
+
+    private void validateResponse(CommandValidator validator, ApduResponse response) {
+        byte[] statusWord = response.getStatusWord();
+        int dataLength = response.getData() != null ? response.getData().length : 0;
+        int sw = ((statusWord[0] & 0xFF) << 8) | (statusWord[1] & 0xFF);
+        if (!validator.validateResponse(sw, dataLength)) {
+            listener.onResponseMismatch(validator.getSpec().getCommandId(), response);
+        }
+    }
+
+    /**
+     * A controller kept after link loss, with the dispatch state it was activated with.
+     */
+    private static final class Suspended {
+        final Object controller;
+        final DispatchTable handlers;
+        final CompiledSchema schema;
+        final long suspendedAt;
+
+        Suspended(Object controller, DispatchTable handlers, CompiledSchema schema, long suspendedAt) {
+            this.controller = controller;
+            this.handlers = handlers;
+            this.schema = schema;
+            this.suspendedAt = suspendedAt;
+        }
+    }
+
+    private static boolean isSelectApdu(byte[] commandApdu) {
+        return commandApdu.length > 4
+                && commandApdu[0] == SELECT_APDU_HEADER[0] && commandApdu[1] == SELECT_APDU_HEADER[1]
+                && commandApdu[2] == SELECT_APDU_HEADER[2] && commandApdu[3] == SELECT_APDU_HEADER[3];
+    }
+}
@@ -0,0 +1,196 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.annotations.ApduController;
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed SELECT responses: the FCI template of every known AID and the PPSE
+ * directory, each encoded once with its status word into a final array.
+ *
+ * <pre>
+ * FCI   6F { 84 AID, A5 { [50 label] [87 priority] } }
+ * PPSE  6F { 84 "2PAY.SYS.DDF01", A5 { BF0C { 61 { 4F AID [50 label] [87 priority] } ... } } }
+ * </pre>
+ *
+ * <p>Built from the {@link ControllerRegistry} and the classes listed by the snapshot's
+ * {@link ControllerLocator}, and replaced by the engine when either changes. The arrays
+ * are shared by every tap and must not be modified.</p>
+ */
+final class SelectResponses {
+
+    /** "2PAY.SYS.DDF01", the proximity payment system environment */
+    static final String PPSE_AID = "325041592E5359532E4444463031";
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final DispatchSnapshot snapshot;
+    private final int registryVersion;
+    private final byte[] directory;
+    private final ConcurrentHashMap<String, byte[]> fci = new ConcurrentHashMap<>();
+
+    private SelectResponses(DispatchSnapshot snapshot, int registryVersion, List<Entry> entries) {
+        this.snapshot = snapshot;
+        this.registryVersion = registryVersion;
+        List<Entry> listed = new ArrayList<>();
+        for (Entry entry : entries) {
+            fci.putIfAbsent(entry.aid, fciResponse(entry));
+            if (entry.listed) {
+                listed.add(entry);
+            }
+        }
+        this.directory = directoryResponse(listed);
+    }
+
+    static SelectResponses build(ControllerRegistry registry, DispatchSnapshot snapshot) throws Exception {
+        int version = registry.getVersion();
+        List<Entry> entries = new ArrayList<>();
+        for (String aid : registry.getAids()) {
+            ControllerRegistry.Registration registration = registry.find(aid);
+            if (registration != null) {
+                String label = registration.getCompiledSchema() != null
+                        ? registration.getCompiledSchema().getSchema().getName() : null;
+                entries.add(new Entry(aid, label, 0, true));
+            }
+        }
+        if (snapshot.getLocator() != null) {
+            for (Class<?> controllerClass : snapshot.getLocator().getControllerClasses()) {
+                ApduController controller = controllerClass.getAnnotation(ApduController.class);
+                if (controller != null) {
+                    for (String aid : controller.aids()) {
+                        entries.add(Entry.of(aid, controller));
+                    }
+                }
+            }
+        }
+        return new SelectResponses(snapshot, version, entries);
+    }
+
+    boolean isCurrent(DispatchSnapshot snapshot, int registryVersion) {
+        return this.snapshot == snapshot && this.registryVersion == registryVersion;
+    }
+
+    /**
+     * @return The PPSE directory response, status word included
+     */
+    byte[] getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param controllerClass The activated controller's class, for AIDs found only by the locator
+     * @return The FCI response of the AID, status word included
+     */
+    byte[] getFci(String aid, Class<?> controllerClass) {
+        byte[] response = fci.get(aid);
+        if (response == null) {
+            ApduController controller = controllerClass.getAnnotation(ApduController.class);
+            response = fciResponse(controller != null ? Entry.of(aid, controller) : new Entry(aid, null, 0, false));
+            byte[] existing = fci.putIfAbsent(aid, response);
+            if (existing != null) {
+                response = existing;
+            }
+        }
+        return response;
+    }
+
+    private static byte[] fciResponse(Entry entry) {
+        ByteArrayOutputStream proprietary = new ByteArrayOutputStream();
+        entry.writeLabelAndPriority(proprietary);
+        ByteArrayOutputStream template = new ByteArrayOutputStream();
+        writeTlv(template, 0x84, ApduUtil.hexStringToByteArray(entry.aid));
+        writeTlv(template, 0xA5, proprietary.toByteArray());
+        return withStatusWord(0x6F, template.toByteArray());
+    }
+
+    private static byte[] directoryResponse(List<Entry> entries) {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                // 1 is the highest priority, 0 means none and sorts last
+                int pa = a.priority == 0 ? Integer.MAX_VALUE : a.priority;
+                int pb = b.priority == 0 ? Integer.MAX_VALUE : b.priority;
+                return pa != pb ? (pa < pb ? -1 : 1) : a.aid.compareTo(b.aid);
+            }
+        });
+        ByteArrayOutputStream discretionary = new ByteArrayOutputStream();
+        String previous = null;
+        for (Entry entry : entries) {
+            if (entry.aid.equals(previous)) {
+                continue;
+            }
+            previous = entry.aid;
+            ByteArrayOutputStream application = new ByteArrayOutputStream();
+            writeTlv(application, 0x4F, ApduUtil.hexStringToByteArray(entry.aid));
+            entry.writeLabelAndPriority(application);
+            writeTlv(discretionary, 0x61, application.toByteArray());
+        }
+        ByteArrayOutputStream proprietary = new ByteArrayOutputStream();
+        writeTlv(proprietary, 0xBF0C, discretionary.toByteArray());
+        ByteArrayOutputStream template = new ByteArrayOutputStream();
+        writeTlv(template, 0x84, ApduUtil.hexStringToByteArray(PPSE_AID));
+        writeTlv(template, 0xA5, proprietary.toByteArray());
+        return withStatusWord(0x6F, template.toByteArray());
+    }
+
+    private static byte[] withStatusWord(int tag, byte[] value) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        writeTlv(response, tag, value);
+        response.write(ApduUtil.SW_OK, 0, 2);
+        return response.toByteArray();
+    }
+
+    /**
+     * Writes a BER-TLV with a one or two byte tag and a definite length.
+     */
+    private static void writeTlv(ByteArrayOutputStream out, int tag, byte[] value) {
+        if (tag > 0xFF) {
+            out.write(tag >> 8);
+        }
+        out.write(tag & 0xFF);
+        int length = value.length;
+        if (length > 0xFF) {
+            out.write(0x82);
+            out.write(length >> 8);
+        } else if (length > 0x7F) {
+            out.write(0x81);
+        }
+        out.write(length & 0xFF);
+        out.write(value, 0, length);
+    }
+
+    private static final class Entry {
+        final String aid;
+        final String label;
+        final int priority;
+        final boolean listed;
+
+        Entry(String aid, String label, int priority, boolean listed) {
+            this.aid = aid.toUpperCase(Locale.ROOT);
+            this.label = label;
+            this.priority = priority;
+            this.listed = listed;
+        }
+
+        static Entry of(String aid, ApduController controller) {
+            return new Entry(aid, controller.label(), controller.priority(), controller.listed());
+        }
+
+        void writeLabelAndPriority(ByteArrayOutputStream out) {
+            if (label != null && !label.isEmpty()) {
+                writeTlv(out, 0x50, label.getBytes(ASCII));
+            }
+            if (priority > 0) {
+                writeTlv(out, 0x87, new byte[]{(byte) priority});
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.codingr.nfclib.hce.core;
+
+/**
+ * Implemented by controllers whose session may survive a brief loss of the link, so a
+ * quick re-tap continues where it stopped instead of running SELECT and authentication
+ * again. Only used when resumption is enabled with
+ * {@link RouterEngine.Builder#resumptionWindowMillis}.
+ *
+ * <p>When the link is lost, the session keeps the controller instance, keyed by its AID,
+ * for the resumption window. A SELECT of the same AID within the window brings the
+ * instance back; otherwise a new controller is created as usual.</p>
+ */
+public interface SessionResumable {
+
+    /**
+     * Called when the link is lost. Clear whatever must not outlive the tap, such as
+     * a transaction half-way through, and keep the rest.
+     *
+     * @return true to keep this controller for resumption, false to discard it
+     */
+    boolean onSuspend();
+
+    /**
+     * Called when the same AID is selected again within the resumption window.
+     *
+     * @param suspendedNanos How long the controller was suspended
+     * @return true to resume this controller, false to start over with a new one
+     */
+    boolean onResume(long suspendedNanos);
+}
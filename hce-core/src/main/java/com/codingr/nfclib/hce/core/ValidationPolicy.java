@@ -0,0 +1,89 @@
+package com.codingr.nfclib.hce.core;
+
+/**
+ * Controls how the router validates traffic of schema-backed controllers.
+ *
+ * <p>Command validation runs before dispatch and answers {@code 6700} or {@code 6A86}
+ * without invoking the handler. Response validation checks the handler's answer against
+ * the command's possible responses and only logs mismatches; it can be switched off,
+ * sampled or always on to bound its cost on production devices.</p>
+ */
+public final class ValidationPolicy {
+
+    public enum ResponseValidation {
+        OFF,
+        SAMPLED,
+        ALWAYS
+    }
+
+    /** Commands validated, responses not validated */
+    public static final ValidationPolicy DEFAULT = new Builder().build();
+
+    private final boolean validateCommands;
+    private final ResponseValidation responseValidation;
+    private final int samplePeriod;
+
+    private ValidationPolicy(Builder builder) {
+        this.validateCommands = builder.validateCommands;
+        this.responseValidation = builder.responseValidation;
+        this.samplePeriod = builder.samplePeriod;
+    }
+
+    public boolean isValidateCommands() {
+        return validateCommands;
+    }
+
+    public ResponseValidation getResponseValidation() {
+        return responseValidation;
+    }
+
+    /**
+     * Decides whether the response to the given command should be validated.
+     *
+     * @param sequence A counter incremented for every dispatched command
+     * @return true if this response should be validated
+     */
+    public boolean shouldValidateResponse(long sequence) {
+        switch (responseValidation) {
+            case ALWAYS:
+                return true;
+            case SAMPLED:
+                return sequence % samplePeriod == 0;
+            default:
+                return false;
+        }
+    }
+
+    public static class Builder {
+        private boolean validateCommands = true;
+        private ResponseValidation responseValidation = ResponseValidation.OFF;
+        private int samplePeriod = 1;
+
+        public Builder validateCommands(boolean validateCommands) {
+            this.validateCommands = validateCommands;
+            return this;
+        }
+
+        public Builder responseValidation(ResponseValidation responseValidation) {
+            this.responseValidation = responseValidation;
+            return this;
+        }
+
+        /**
+         * Validates a fraction of responses, e.g. 0.01 for one response in a hundred.
+         * Sampling is deterministic (every n-th command), so it costs a single modulo.
+         */
+        public Builder sampleRate(double rate) {
+            if (rate <= 0 || rate > 1) {
+                throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + rate);
+            }
+            this.responseValidation = ResponseValidation.SAMPLED;
+            this.samplePeriod = (int) Math.max(1, Math.round(1 / rate));
+            return this;
+        }
+
+        public ValidationPolicy build() {
+            return new ValidationPolicy(this);
+        }
+    }
+}
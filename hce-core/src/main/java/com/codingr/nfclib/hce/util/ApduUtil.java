@@ -0,0 +1,70 @@
+package com.codingr.nfclib.hce.util;
+
+public class ApduUtil {
+
+    public static final byte[] SW_OK = {(byte) 0x90, (byte) 0x00};
+    public static final byte[] SW_INS_NOT_SUPPORTED = {(byte) 0x6D, (byte) 0x00};
+    public static final byte[] SW_WRONG_LENGTH = {(byte) 0x67, (byte) 0x00};
+    public static final byte[] SW_WRONG_DATA = {(byte) 0x6A, (byte) 0x80};
+    public static final byte[] SW_FILE_NOT_FOUND = {(byte) 0x6A, (byte) 0x82};
+    public static final byte[] SW_INCORRECT_P1P2 = {(byte) 0x6A, (byte) 0x86};
+    public static final byte[] SW_LAST_COMMAND_EXPECTED = {(byte) 0x68, (byte) 0x83};
+    public static final byte[] SW_CONDITIONS_NOT_SATISFIED = {(byte) 0x69, (byte) 0x85};
+    public static final byte[] SW_SECURITY_STATUS_NOT_SATISFIED = {(byte) 0x69, (byte) 0x82};
+
+    public static String bytesToHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02X", b));
+        }
+        return sb.toString();
+    }
+
+    public static byte[] hexStringToByteArray(String s) {
+        int len = s.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
+                                 + Character.digit(s.charAt(i+1), 16));
+        }
+        return data;
+    }
+
+    /**
+     * Returns the offset of the command data in an APDU, following the ISO 7816-4
+     * short and extended length encodings.
+     *
+     * @param apdu The APDU bytes
+     * @param length The number of valid bytes in {@code apdu}
+     * @return The offset of the first data byte (equal to {@code length} if there is no data)
+     */
+    public static int dataOffset(byte[] apdu, int length) {
+        if (length <= 5) {
+            return length;
+        }
+        if (apdu[4] != 0) {
+            return 5;
+        }
+        return length > 7 ? 7 : length;
+    }
+
+    /**
+     * Returns the Lc value of an APDU, i.e. the length of its command data.
+     *
+     * @param apdu The APDU bytes
+     * @param length The number of valid bytes in {@code apdu}
+     * @return The command data length, 0 for case 1 and case 2 APDUs
+     */
+    public static int dataLength(byte[] apdu, int length) {
+        if (length <= 5) {
+            return 0;
+        }
+        if (apdu[4] != 0) {
+            return Math.min(apdu[4] & 0xFF, length - 5);
+        }
+        if (length <= 7) {
+            return 0;
+        }
+        return Math.min(((apdu[5] & 0xFF) << 8) | (apdu[6] & 0xFF), length - 7);
+    }
+}
@@ -0,0 +1,30 @@
+package com.codingr.nfclib.relay;
+
+/**
+ * Framing used between {@link RelayServer} and {@link TcpNfcTransport}.
+ *
+ * <p>Every message is {@code [type:1][length:2, big-endian][payload:length]}. A terminal
+ * sends {@link #TYPE_APDU} frames and receives one {@link #TYPE_RESPONSE} frame per
+ * command, in order. {@link #TYPE_RESET} deactivates the card session as a lost link and
+ * keeps the card on the same connection, like removing and re-tapping it; it is answered
+ * with an empty response frame. Closing the connection ends the session as a lost link.</p>
+ */
+public final class RelayProtocol {
+
+    /** Command APDU, terminal to card */
+    public static final byte TYPE_APDU = 0x01;
+
+    /** Response APDU (data and status word), card to terminal */
+    public static final byte TYPE_RESPONSE = 0x02;
+
+    /** Deactivate the card session as a lost link, like a re-tap */
+    public static final byte TYPE_RESET = 0x03;
+
+    public static final int HEADER_LENGTH = 3;
+
+    /** Largest payload the 16-bit length can express */
+    public static final int MAX_PAYLOAD_LENGTH = 0xFFFF;
+
+    private RelayProtocol() {
+    }
+}
@@ -0,0 +1,413 @@
+package com.codingr.nfclib.relay;
+
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.hce.core.RouterSession;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking TCP server exposing the controllers of a {@link RouterEngine} as virtual
+ * cards. Each connection is an isolated card session ({@link RouterSession}); terminals
+ * talk to it with {@link TcpNfcTransport} or any client speaking {@link RelayProtocol}.
+ *
+ * <p>One acceptor thread hands new connections round-robin to a fixed number of I/O
+ * loops, each a {@link Selector} serving many connections. APDUs are processed on the
+ * I/O loop of their connection, so controllers must not block; per-connection buffers
+ * start small and only grow for long frames, which keeps thousands of idle sessions
+ * cheap. A connection is not read while responses are waiting to be written, so a
+ * terminal that pipelines commands without reading the answers is throttled by TCP
+ * instead of growing the server's buffers.</p>
+ *
+ * <p>By default the server only listens on the loopback interface; use
+ * {@link Builder#bindAddress} to expose the virtual cards to other hosts.</p>
+ */
+public final class RelayServer implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    /** Unwritten response bytes above which buffered commands wait */
+    private static final int MAX_PENDING_OUTPUT = 16384;
+
+    private final RouterEngine engine;
+    private final InetSocketAddress bindAddress;
+    private final int maxFrameLength;
+    private final IoLoop[] loops;
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    private RelayServer(Builder builder) {
+        this.engine = builder.engine;
+        this.bindAddress = builder.bindAddress;
+        this.maxFrameLength = builder.maxFrameLength;
+        this.loops = new IoLoop[builder.ioThreads];
+    }
+
+    /**
+     * Binds the server socket and starts the acceptor and I/O threads.
+     */
+    public synchronized RelayServer start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Relay server already started");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(bindAddress, 1024);
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(Selector.open());
+            Thread thread = new Thread(loops[i], "hce-relay-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "hce-relay-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * @return The bound port; useful when the server was built with port 0
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getAcceptedConnections() { return acceptedConnections.get(); }
+    public long getActiveConnections() { return activeConnections.get(); }
+
+    /**
+     * @return Command APDUs processed over all connections
+     */
+    public long getCommands() { return commands.get(); }
+
+    /**
+     * Stops accepting, closes every connection and ends their card sessions.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                acceptedConnections.incrementAndGet();
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // A failed accept only affects that connection
+            }
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // A failing controller only costs its own connection, not the loop
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Selector failure; fall through and release the connections
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                SocketChannel channel;
+                while ((channel = pending.poll()) != null) {
+                    closeQuietly(channel);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    Connection connection = new Connection(channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    activeConnections.incrementAndGet();
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+    }
+
+    /**
+     * One terminal connection and its card session. Only touched by its I/O loop.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final RouterSession session = engine.newSession();
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            process();
+        }
+
+        /**
+         * Called when the channel is writable again.
+         */
+        void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            process();
+        }
+
+        /**
+         * Answers the buffered commands and writes what the channel takes. Reading is
+         * suspended until every response has been written.
+         */
+        private void process() throws IOException {
+            boolean backlog;
+            do {
+                backlog = dispatch();
+                if (closed) {
+                    return;
+                }
+                out.flip();
+                channel.write(out);
+                out.compact();
+            } while (backlog && out.position() == 0);
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Handles the complete frames in {@code in}.
+         *
+         * @return true if frames were left for later because responses are waiting to be written
+         */
+        private boolean dispatch() throws IOException {
+            in.flip();
+            try {
+                while (in.remaining() >= RelayProtocol.HEADER_LENGTH) {
+                    if (out.position() >= MAX_PENDING_OUTPUT) {
+                        return true;
+                    }
+                    int start = in.position();
+                    byte type = in.get(start);
+                    int length = ((in.get(start + 1) & 0xFF) << 8) | (in.get(start + 2) & 0xFF);
+                    if (length > maxFrameLength) {
+                        close();
+                        return false;
+                    }
+                    if (in.remaining() < RelayProtocol.HEADER_LENGTH + length) {
+                        if (in.capacity() < RelayProtocol.HEADER_LENGTH + length) {
+                            in = grow(in, RelayProtocol.HEADER_LENGTH + length);
+                            in.flip();
+                        }
+                        return false;
+                    }
+                    byte[] payload = new byte[length];
+                    in.position(start + RelayProtocol.HEADER_LENGTH);
+                    in.get(payload);
+                    if (!handle(type, payload)) {
+                        close();
+                        return false;
+                    }
+                }
+                return false;
+            } finally {
+                in.compact();
+            }
+        }
+
+        private boolean handle(byte type, byte[] payload) throws IOException {
+            switch (type) {
+                case RelayProtocol.TYPE_APDU:
+                    commands.incrementAndGet();
+                    writeFrame(RelayProtocol.TYPE_RESPONSE, session.process(payload));
+                    return true;
+                case RelayProtocol.TYPE_RESET:
+                    session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+                    writeFrame(RelayProtocol.TYPE_RESPONSE, new byte[0]);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void writeFrame(byte type, byte[] payload) throws IOException {
+            if (payload.length > RelayProtocol.MAX_PAYLOAD_LENGTH) {
+                throw new IOException("Response of " + payload.length + " bytes exceeds the relay frame size");
+            }
+            int frameLength = RelayProtocol.HEADER_LENGTH + payload.length;
+            if (out.remaining() < frameLength) {
+                out.flip();
+                out = grow(out, out.remaining() + frameLength);
+            }
+            out.put(type);
+            out.put((byte) (payload.length >> 8));
+            out.put((byte) payload.length);
+            out.put(payload);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            activeConnections.decrementAndGet();
+            try {
+                session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+            } catch (RuntimeException e) {
+                // The connection is gone either way
+            }
+        }
+    }
+
+    /**
+     * @param buffer A buffer in read mode
+     * @return A larger buffer in write mode holding the remaining bytes of {@code buffer}
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    public static class Builder {
+        private final RouterEngine engine;
+        private InetSocketAddress bindAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        private int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        private int maxFrameLength = RelayProtocol.MAX_PAYLOAD_LENGTH;
+
+        public Builder(RouterEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Listens on the loopback interface. Default 0, an ephemeral port; see {@link RelayServer#getPort()}.
+         */
+        public Builder port(int port) {
+            this.bindAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            return this;
+        }
+
+        /**
+         * Listens on the given address, e.g. {@code new InetSocketAddress(7816)} for all interfaces.
+         */
+        public Builder bindAddress(InetSocketAddress address) { this.bindAddress = address; return this; }
+
+        /**
+         * Number of selector loops serving connections. Default: available processors.
+         */
+        public Builder ioThreads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least one I/O thread is required");
+            }
+            this.ioThreads = threads;
+            return this;
+        }
+
+        /**
+         * Longest accepted frame payload; longer frames close the connection. Default 65535.
+         */
+        public Builder maxFrameLength(int bytes) {
+            this.maxFrameLength = Math.min(bytes, RelayProtocol.MAX_PAYLOAD_LENGTH);
+            return this;
+        }
+
+        public RelayServer build() {
+            return new RelayServer(this);
+        }
+    }
+}
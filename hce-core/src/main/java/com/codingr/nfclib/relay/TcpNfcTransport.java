@@ -0,0 +1,168 @@
+package com.codingr.nfclib.relay;
+
+import com.codingr.nfclib.schema.ClientFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ClientFactory.NfcTransport} that reaches a virtual card on a {@link RelayServer}.
+ *
+ * <p>The connection is opened by the constructor and is one card session. A transmission
+ * error closes it; {@link #reconnect()} then opens a new connection, or, while still
+ * connected, starts a fresh session with {@link RelayProtocol#TYPE_RESET}. Like a reader,
+ * a transport serves one exchange at a time.</p>
+ */
+public class TcpNfcTransport implements ClientFactory.NfcTransport {
+
+    /** Default connect and read timeout */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final InetSocketAddress address;
+    private final byte[] cardIdentifier;
+    private final int timeoutMillis;
+    private final byte[] header = new byte[RelayProtocol.HEADER_LENGTH];
+    // A lock rather than synchronized, so virtual threads blocked on the socket do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private Socket socket;
+    private DataInputStream input;
+    private OutputStream output;
+    // Written under the lock, read without it
+    private volatile long linkGeneration;
+
+    public TcpNfcTransport(String host, int port) throws IOException {
+        this(new InetSocketAddress(host, port), null, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param cardIdentifier Identifier reported to clients, enables response caching; may be null
+     * @param timeoutMillis Connect timeout and maximum wait for a response
+     */
+    public TcpNfcTransport(InetSocketAddress address, byte[] cardIdentifier, int timeoutMillis) throws IOException {
+        this.address = address;
+        this.cardIdentifier = cardIdentifier != null ? cardIdentifier.clone() : null;
+        this.timeoutMillis = timeoutMillis;
+        open();
+    }
+
+    @Override
+    public byte[] transmit(byte[] apdu) throws ClientFactory.NfcCommunicationException {
+        if (apdu.length > RelayProtocol.MAX_PAYLOAD_LENGTH) {
+            throw new ClientFactory.NfcCommunicationException("APDU of " + apdu.length + " bytes exceeds the relay frame size");
+        }
+        lock.lock();
+        try {
+            if (socket == null) {
+                throw new ClientFactory.NfcCommunicationException("Not connected to " + address);
+            }
+            return exchange(RelayProtocol.TYPE_APDU, apdu);
+        } catch (IOException e) {
+            close();
+            throw new ClientFactory.NfcCommunicationException("Relay exchange with " + address + " failed", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        lock.lock();
+        try {
+            return socket != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        lock.lock();
+        try {
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean reconnect() {
+        lock.lock();
+        try {
+            if (socket != null) {
+                exchange(RelayProtocol.TYPE_RESET, new byte[0]);
+                linkGeneration++;
+            } else {
+                open();
+            }
+            return true;
+        } catch (IOException e) {
+            close();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] getCardIdentifier() {
+        return cardIdentifier;
+    }
+
+    @Override
+    public long getLinkGeneration() {
+        return linkGeneration;
+    }
+
+    private byte[] exchange(byte type, byte[] payload) throws IOException {
+        header[0] = type;
+        header[1] = (byte) (payload.length >> 8);
+        header[2] = (byte) payload.length;
+        output.write(header);
+        output.write(payload);
+        output.flush();
+
+        input.readFully(header);
+        if (header[0] != RelayProtocol.TYPE_RESPONSE) {
+            throw new IOException("Unexpected relay frame type " + header[0]);
+        }
+        byte[] response = new byte[((header[1] & 0xFF) << 8) | (header[2] & 0xFF)];
+        input.readFully(response);
+        return response;
+    }
+
+    private void open() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(address, timeoutMillis);
+            s.setSoTimeout(timeoutMillis);
+            input = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            output = new BufferedOutputStream(s.getOutputStream());
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+        linkGeneration++;
+    }
+
+    private void close() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        socket = null;
+        input = null;
+        output = null;
+    }
+}
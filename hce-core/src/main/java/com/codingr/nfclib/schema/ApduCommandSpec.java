@@ -1,5 +1,9 @@
 package com.codingr.nfclib.schema;
 
+import com.codingr.nfclib.schema.layout.FieldSpec;
+
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -19,6 +23,11 @@ public class ApduCommandSpec {
     private final Integer maxDataLength;
     private final Integer expectedLe; // null means Le is optional
     private final List<ApduResponseSpec> possibleResponses;
+    private final List<FieldSpec> commandLayout;
+    private final List<FieldSpec> responseLayout;
+    private final long cacheTtlMillis; // 0 means responses are never cached
+    private final List<String> invalidates;
+    private final boolean idempotent;
     
     private ApduCommandSpec(Builder builder) {
         this.commandId = builder.commandId;
@@ -32,6 +41,11 @@ public class ApduCommandSpec {
         this.maxDataLength = builder.maxDataLength;
         this.expectedLe = builder.expectedLe;
         this.possibleResponses = builder.possibleResponses;
+        this.commandLayout = builder.commandLayout;
+        this.responseLayout = builder.responseLayout;
+        this.cacheTtlMillis = builder.cacheTtlMillis;
+        this.invalidates = builder.invalidates;
+        this.idempotent = builder.idempotent || builder.cacheTtlMillis > 0;
     }
     
     public String getCommandId() { return commandId; }
@@ -45,6 +59,21 @@ public class ApduCommandSpec {
     public Integer getMaxDataLength() { return maxDataLength; }
     public Integer getExpectedLe() { return expectedLe; }
     public List<ApduResponseSpec> getPossibleResponses() { return possibleResponses; }
+    public List<FieldSpec> getCommandLayout() { return commandLayout; }
+    public List<FieldSpec> getResponseLayout() { return responseLayout; }
+    public boolean isCacheable() { return cacheTtlMillis > 0; }
+    public long getCacheTtlMillis() { return cacheTtlMillis; }
+    
+    /**
+     * @return Ids of the commands whose cached responses are dropped when this command is sent
+     */
+    public List<String> getInvalidates() { return invalidates; }
+    
+    /**
+     * @return true if sending the command twice has the same effect as sending it once,
+     *         so clients may retry it after a transport error. Cacheable commands are idempotent.
+     */
+    public boolean isIdempotent() { return idempotent; }
     
     /**
      * Checks if the given APDU bytes match this command specification
@@ -96,6 +125,11 @@ public class ApduCommandSpec {
         private Integer maxDataLength;
         private Integer expectedLe;
         private List<ApduResponseSpec> possibleResponses;
+        private List<FieldSpec> commandLayout = Collections.emptyList();
+        private List<FieldSpec> responseLayout = Collections.emptyList();
+        private long cacheTtlMillis;
+        private List<String> invalidates = Collections.emptyList();
+        private boolean idempotent;
         
         public Builder(String commandId, byte cla, byte ins) {
             this.commandId = commandId;
@@ -117,6 +151,28 @@ public class ApduCommandSpec {
             this.possibleResponses = responses; 
             return this; 
         }
+        public Builder commandLayout(List<FieldSpec> fields) { this.commandLayout = fields; return this; }
+        public Builder responseLayout(List<FieldSpec> fields) { this.responseLayout = fields; return this; }
+        
+        /**
+         * Marks the command as idempotent and lets clients with a response cache reuse
+         * its successful responses for the given time.
+         */
+        public Builder cacheable(long ttlMillis) { this.cacheTtlMillis = ttlMillis; return this; }
+        
+        /**
+         * Declares that the command can safely be re-sent after a transport error.
+         */
+        public Builder idempotent(boolean idempotent) { this.idempotent = idempotent; return this; }
+        
+        /**
+         * Drops cached responses of the given commands whenever this command is sent,
+         * e.g. UPDATE_RECORD invalidates GET_DATA.
+         */
+        public Builder invalidates(String... commandIds) { 
+            this.invalidates = Collections.unmodifiableList(Arrays.asList(commandIds)); 
+            return this; 
+        }
         
         public ApduCommandSpec build() {
             return new ApduCommandSpec(this);
@@ -41,18 +41,34 @@ public class ApduResponseSpec {
      * @return true if the response matches this specification
      */
     public boolean matches(byte[] responseBytes) {
-        if (responseBytes.length < 2) return false;
-        
-        // Check status word (last 2 bytes)
-        byte[] actualSW = new byte[] {
-            responseBytes[responseBytes.length - 2],
-            responseBytes[responseBytes.length - 1]
-        };
+        return matches(responseBytes, responseBytes.length);
+    }
+    
+    /**
+     * Checks if the first {@code length} bytes of a response buffer match this specification
+     * @param responseBytes The buffer holding the response
+     * @param length The response length, including the status word
+     * @return true if the response matches this specification
+     */
+    public boolean matches(byte[] responseBytes, int length) {
+        if (length < 2) return false;
         
-        if (!java.util.Arrays.equals(statusWord, actualSW)) return false;
+        int sw = ((responseBytes[length - 2] & 0xFF) << 8) | (responseBytes[length - 1] & 0xFF);
+        return matches(sw, length - 2);
+    }
+    
+    /**
+     * Checks if a decoded status word and data length match this specification
+     * @param statusWord The status word, e.g. 0x9000
+     * @param dataLength The response data length, without the status word
+     * @return true if the response matches this specification
+     */
+    public boolean matches(int statusWord, int dataLength) {
+        if (this.statusWord == null || this.statusWord.length != 2) return false;
+        if ((this.statusWord[0] & 0xFF) != (statusWord >>> 8)
+                || (this.statusWord[1] & 0xFF) != (statusWord & 0xFF)) return false;
         
         // Check data length constraints
-        int dataLength = responseBytes.length - 2;
         if (minDataLength != null && dataLength < minDataLength) return false;
         if (maxDataLength != null && dataLength > maxDataLength) return false;
         
@@ -1,6 +1,8 @@
 package com.codingr.nfclib.schema;
 
 import com.codingr.nfclib.hce.annotations.ApduController;
+import com.codingr.nfclib.schema.layout.FieldSpec;
+import com.codingr.nfclib.schema.layout.PayloadLayout;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
@@ -125,7 +127,10 @@ public abstract class BaseApduSchema<T extends Enum<T> & CommandId> implements A
         .description(description)
         .p1(annotation.p1())
         .p2(annotation.p2())
-        .dataLength(annotation.minDataLength(), annotation.maxDataLength());
+        .dataLength(annotation.minDataLength(), annotation.maxDataLength())
+        .cacheable(annotation.cacheTtlMillis())
+        .invalidates(annotation.invalidates())
+        .idempotent(annotation.idempotent());
         
         // Try to get possible responses from the method implementation
         List<ApduResponseSpec> responses = getResponsesFromMethod(method);
@@ -133,6 +138,12 @@ public abstract class BaseApduSchema<T extends Enum<T> & CommandId> implements A
             builder.possibleResponses(responses);
         }
         
+        PayloadLayout layout = method.getAnnotation(PayloadLayout.class);
+        if (layout != null) {
+            builder.commandLayout(FieldSpec.fromAnnotations(layout.command()))
+                   .responseLayout(FieldSpec.fromAnnotations(layout.response()));
+        }
+        
         return builder.build();
     }
     
@@ -0,0 +1,114 @@
+package com.codingr.nfclib.schema;
+
+/**
+ * Optional behaviour of clients created by {@link ClientFactory}.
+ * Instances are immutable and can be shared between clients.
+ */
+public class ClientConfig {
+
+    /** Follows 61xx/6Cxx up to 64 KiB and 64 chunks, chains commands above 255 bytes, no retries and no response cache */
+    public static final ClientConfig DEFAULT = new Builder().build();
+
+    private final ResponseCache responseCache;
+    private final boolean followResponseChaining;
+    private final int maxResponseLength;
+    private final int maxResponseChunks;
+    private final ClientMetrics metrics;
+    private final int commandSegmentLength;
+    private final RetryPolicy retryPolicy;
+    private final RetryMetrics retryMetrics;
+
+    private ClientConfig(Builder builder) {
+        this.responseCache = builder.responseCache;
+        this.followResponseChaining = builder.followResponseChaining;
+        this.maxResponseLength = builder.maxResponseLength;
+        this.maxResponseChunks = builder.maxResponseChunks;
+        this.metrics = builder.metrics;
+        this.commandSegmentLength = builder.commandSegmentLength;
+        this.retryPolicy = builder.retryPolicy;
+        this.retryMetrics = builder.retryMetrics;
+    }
+
+    /**
+     * @return The response cache, or null if responses are never cached
+     */
+    public ResponseCache getResponseCache() { return responseCache; }
+    public boolean isFollowResponseChaining() { return followResponseChaining; }
+    public int getMaxResponseLength() { return maxResponseLength; }
+    public int getMaxResponseChunks() { return maxResponseChunks; }
+
+    /**
+     * @return The per-command metrics, or null if not collected
+     */
+    public ClientMetrics getMetrics() { return metrics; }
+    public int getCommandSegmentLength() { return commandSegmentLength; }
+    public RetryPolicy getRetryPolicy() { return retryPolicy; }
+
+    /**
+     * @return The retry counters, or null if not collected
+     */
+    public RetryMetrics getRetryMetrics() { return retryMetrics; }
+
+    public static class Builder {
+        private ResponseCache responseCache;
+        private boolean followResponseChaining = true;
+        private int maxResponseLength = 65536;
+        private int maxResponseChunks = 64;
+        private ClientMetrics metrics;
+        private int commandSegmentLength = 255;
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+        private RetryMetrics retryMetrics;
+
+        /**
+         * Serves cacheable commands from {@code cache}. Caching needs a transport that
+         * reports a card identifier.
+         */
+        public Builder responseCache(ResponseCache cache) { this.responseCache = cache; return this; }
+
+        /**
+         * Whether the client sends GET RESPONSE on {@code 61xx} and repeats the command with
+         * the card's Le on {@code 6Cxx}, handing the complete response to the handler.
+         * Enabled by default.
+         */
+        public Builder followResponseChaining(boolean follow) { this.followResponseChaining = follow; return this; }
+
+        /**
+         * Bounds the reassembled response (data and status word). Default 65536 bytes.
+         */
+        public Builder maxResponseLength(int bytes) { this.maxResponseLength = bytes; return this; }
+
+        /**
+         * Bounds the number of response APDUs collected for one command. Default 64.
+         */
+        public Builder maxResponseChunks(int chunks) { this.maxResponseChunks = chunks; return this; }
+
+        /**
+         * Records round-trip times, bytes, status words, chunks and handler time per command.
+         */
+        public Builder metrics(ClientMetrics metrics) { this.metrics = metrics; return this; }
+
+        /**
+         * Command data longer than this is sent as a command chain (CLA bit 0x10) of
+         * segments of at most this length. Default 255, lower it for readers with
+         * small frame sizes.
+         */
+        public Builder commandSegmentLength(int bytes) {
+            if (bytes < 1 || bytes > 255) {
+                throw new IllegalArgumentException("Segment length must be 1..255: " + bytes);
+            }
+            this.commandSegmentLength = bytes;
+            return this;
+        }
+
+        /**
+         * Retries idempotent commands after transport errors. Default {@link RetryPolicy#NONE}.
+         */
+        public Builder retryPolicy(RetryPolicy policy) { this.retryPolicy = policy; return this; }
+
+        public Builder retryMetrics(RetryMetrics metrics) { this.retryMetrics = metrics; return this; }
+
+        public ClientConfig build() {
+            return new ClientConfig(this);
+        }
+    }
+}
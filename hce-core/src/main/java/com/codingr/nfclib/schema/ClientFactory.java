@@ -0,0 +1,1058 @@
+package com.codingr.nfclib.schema;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory for creating NFC terminal client implementations from schemas.
+ * Generates clients with typed methods for each command in the schema,
+ * while allowing developers to implement custom response processing logic.
+ */
+public class ClientFactory {
+    
+    /**
+     * Creates an NFC terminal client from a schema and response handler.
+     * The generated client has methods corresponding to each command in the schema.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The underlying NFC transport implementation
+     * @param responseHandler Handler for processing responses with custom logic
+     * @return A client interface with schema-specific methods
+     */
+    public static <T> T createClient(ApduSchema schema, NfcTransport transport, 
+                                   ClientResponseHandler responseHandler, Class<T> clientInterface) {
+        return (T) Proxy.newProxyInstance(
+            ClientFactory.class.getClassLoader(),
+            new Class[] { clientInterface },
+            new ClientInvocationHandler(schema, transport, responseHandler)
+        );
+    }
+    
+    /**
+     * Creates a generic schema-based client that provides access to all schema commands.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The underlying NFC transport implementation
+     * @param responseHandler Handler for processing responses
+     * @return A generic client for the schema
+     */
+    public static GenericSchemaClient createGenericClient(ApduSchema schema, NfcTransport transport, 
+                                                        ClientResponseHandler responseHandler) {
+        return new GenericSchemaClientImpl(schema, transport, responseHandler);
+    }
+    
+    /**
+     * Creates a generic schema-based client with optional behaviour such as response caching.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The underlying NFC transport implementation
+     * @param responseHandler Handler for processing responses
+     * @param config Client configuration
+     * @return A generic client for the schema
+     */
+    public static GenericSchemaClient createGenericClient(ApduSchema schema, NfcTransport transport,
+                                                        ClientResponseHandler responseHandler, ClientConfig config) {
+        return new GenericSchemaClientImpl(schema, transport, responseHandler, config);
+    }
+    
+    /**
+     * Creates a session manager: a generic client that skips redundant SELECTs and
+     * reconnects and re-selects after transport errors.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The underlying NFC transport implementation
+     * @param responseHandler Handler for processing responses
+     * @param config Client configuration
+     * @return A session manager for the schema
+     */
+    public static SessionManager createSessionManager(ApduSchema schema, NfcTransport transport,
+                                                      ClientResponseHandler responseHandler, ClientConfig config) {
+        return new SessionManager(transport, new GenericSchemaClientImpl(schema, transport, responseHandler, config));
+    }
+    
+    /**
+     * Creates an asynchronous schema client with its own transport executor.
+     * Requests are queued FIFO (at most {@code maxQueued} waiting) and executed one at a
+     * time on a dedicated thread that owns the transport. {@link AsyncSchemaClient#disconnect()}
+     * stops that thread.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The underlying NFC transport implementation
+     * @param responseHandler Handler for processing responses
+     * @param maxQueued Maximum number of requests waiting for the transport
+     * @return An asynchronous client for the schema
+     */
+    public static AsyncSchemaClient createAsyncClient(ApduSchema schema, NfcTransport transport,
+                                                      ClientResponseHandler responseHandler, int maxQueued) {
+        return new AsyncSchemaClientImpl(new GenericSchemaClientImpl(schema, transport, responseHandler),
+            new TransportExecutor(transport, maxQueued), true);
+    }
+    
+    /**
+     * Creates an asynchronous schema client on an existing transport executor.
+     * Use this to let several clients share one transport.
+     * 
+     * @param schema The APDU protocol schema
+     * @param executor The executor owning the transport
+     * @param responseHandler Handler for processing responses
+     * @return An asynchronous client for the schema
+     */
+    public static AsyncSchemaClient createAsyncClient(ApduSchema schema, TransportExecutor executor,
+                                                      ClientResponseHandler responseHandler) {
+        return new AsyncSchemaClientImpl(
+            new GenericSchemaClientImpl(schema, executor.getTransport(), responseHandler), executor, false);
+    }
+    
+    /**
+     * Creates a client on a buffer transport. The client builds every APDU into one reusable
+     * command buffer and receives every response into one reusable response buffer, so
+     * steady-state exchanges allocate nothing.
+     * 
+     * @param schema The APDU protocol schema
+     * @param transport The buffer-based NFC transport
+     * @param responseHandler Handler for processing responses in place
+     * @return A buffer-based client for the schema
+     */
+    public static BufferedSchemaClient createBufferedClient(ApduSchema schema, BufferTransport transport,
+                                                            BufferedResponseHandler responseHandler) {
+        return new BufferedSchemaClientImpl(schema, transport, responseHandler);
+    }
+    
+    /**
+     * Adapts an existing {@code byte[]} transport to the buffer contract. The adapter reuses
+     * its command arrays; the response array is still allocated by the wrapped transport.
+     * 
+     * @param transport The array-based NFC transport
+     * @return A buffer transport delegating to {@code transport}
+     */
+    public static BufferTransport asBufferTransport(NfcTransport transport) {
+        return new ByteArrayTransportAdapter(transport);
+    }
+    
+    /**
+     * Creates a pooled client for a terminal with several readers. Sessions are dispatched
+     * to a reader with a card present and run in parallel across readers, one at a time
+     * per reader.
+     *
+     * @param schema The APDU protocol schema
+     * @param transports One transport per reader
+     * @param responseHandler Handler for processing responses
+     * @param maxQueuedPerReader Maximum number of sessions waiting per reader
+     * @return A reader pool for the schema
+     */
+    public static ReaderPool createReaderPool(ApduSchema schema, List<? extends NfcTransport> transports,
+                                              ClientResponseHandler responseHandler, int maxQueuedPerReader) {
+        return new ReaderPool(schema, transports, responseHandler, maxQueuedPerReader);
+    }
+    
+    /**
+     * Starts a transaction script: a fixed sequence of commands, with branches on
+     * status word, compiled once into prebuilt APDUs.
+     * 
+     * @param schema The APDU protocol schema the commands come from
+     * @return A builder for the script
+     */
+    public static TransactionScript.Builder transactionScript(ApduSchema schema) {
+        return new TransactionScript.Builder(schema);
+    }
+    
+    /**
+     * Runs a compiled transaction script back-to-back on a transport.
+     * 
+     * @param script The compiled script
+     * @param transport The underlying NFC transport implementation
+     * @param parameters Data for steps added with {@code commandWithParameter}
+     * @return The aggregated result with per-step timing
+     */
+    public static TransactionResult runScript(TransactionScript script, NfcTransport transport, byte[]... parameters) {
+        return script.run(transport, parameters);
+    }
+    
+        /**
+     * Interface for handling client-side response processing.
+     * Developers implement this to define custom response parsing logic.
+     */
+    public interface ClientResponseHandler {
+        /**
+         * Process a response from the card with schema context.
+         * 
+         * @param commandSpec The command that was sent
+         * @param responseSpec The matched response specification (null if no match)
+         * @param rawResponse The raw response bytes from the card
+         * @return Processed response data for the application
+         */
+        <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec, byte[] rawResponse);
+    }
+    
+    /**
+     * Generic client interface that provides access to all commands in a schema.
+     */
+    public interface GenericSchemaClient {
+        ApduSchema getSchema();
+        <T> T sendCommand(String commandId, byte[] data) throws NfcCommunicationException;
+        <T> T sendCommand(ApduCommandSpec commandSpec, byte[] data) throws NfcCommunicationException;
+        boolean selectApplication(String aid) throws NfcCommunicationException;
+        void disconnect();
+        boolean isConnected();
+        
+        /**
+         * Starts a transaction: until {@link #endTransaction()}, the retries of all exchanges
+         * share one {@link RetryPolicy} budget, measured from this call. Outside a transaction
+         * each exchange gets the whole budget.
+         */
+        default void beginTransaction() {
+        }
+        
+        /**
+         * Ends the transaction started by {@link #beginTransaction()}.
+         */
+        default void endTransaction() {
+        }
+    }
+    
+    /**
+     * Asynchronous variant of {@link GenericSchemaClient}. Every call returns immediately;
+     * the exchange runs on the transport's {@link TransportExecutor} and completes the future.
+     */
+    public interface AsyncSchemaClient {
+        ApduSchema getSchema();
+        <T> CompletableFuture<T> sendCommand(String commandId, byte[] data);
+        <T> CompletableFuture<T> sendCommand(ApduCommandSpec commandSpec, byte[] data);
+        CompletableFuture<Boolean> selectApplication(String aid);
+        CompletableFuture<TransactionResult> runScript(TransactionScript script, byte[]... parameters);
+        
+        /**
+         * Fails all queued requests with an {@link NfcCommunicationException}.
+         * Call this when the card leaves the field.
+         * 
+         * @return The number of cancelled requests
+         */
+        int cancelPending();
+        
+        /**
+         * Fails all queued requests and disconnects the transport after the exchange in
+         * flight. A client created with its own executor also stops the transport thread,
+         * and later requests fail with a {@link java.util.concurrent.RejectedExecutionException}.
+         */
+        void disconnect();
+        
+        /**
+         * @return Whether the transport was connected after the last exchange. The transport
+         *         is only queried on its own thread, so this never blocks.
+         */
+        boolean isConnected();
+    }
+    
+    /**
+     * Low-level NFC transport interface for actual card communication.
+     * Implementations handle the platform-specific NFC communication.
+     */
+    public interface NfcTransport {
+        byte[] transmit(byte[] apdu) throws NfcCommunicationException;
+        boolean isConnected();
+        void disconnect();
+        
+        /**
+         * Identifies the card currently in the field, typically its UID. Clients only
+         * cache responses when the transport provides an identifier.
+         * 
+         * @return The card identifier, or null if unknown
+         */
+        default byte[] getCardIdentifier() {
+            return null;
+        }
+        
+        /**
+         * Re-establishes the link to the card after a transmission error, e.g. by
+         * reconnecting the platform tag object.
+         * 
+         * @return true if the card can be addressed again
+         */
+        default boolean reconnect() {
+            return isConnected();
+        }
+        
+        /**
+         * Counts the links established to cards, changing whenever the transport connects or
+         * reconnects. The card identifier survives a re-tap or field reset, this value does
+         * not, so session managers only skip a SELECT while it is unchanged.
+         * 
+         * @return The current link generation, or -1 if the transport does not count links
+         */
+        default long getLinkGeneration() {
+            return -1;
+        }
+    }
+    
+    /**
+     * NFC transport working on caller-owned buffers.
+     * 
+     * <p>{@link #transmit} sends the bytes between the command buffer's position and limit,
+     * then writes the response (data and status word) into the response buffer starting at
+     * its position, leaving the position after the last byte written. Neither buffer may be
+     * retained after the call returns.</p>
+     */
+    public interface BufferTransport {
+        void transmit(ByteBuffer command, ByteBuffer response) throws NfcCommunicationException;
+        boolean isConnected();
+        void disconnect();
+    }
+    
+    /**
+     * Response handler for {@link BufferedSchemaClient}. The response buffer holds the
+     * complete response, status word included, between position and limit; it is reused
+     * for the next exchange, so copy anything that must outlive the call.
+     */
+    public interface BufferedResponseHandler {
+        <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec, ByteBuffer response);
+    }
+    
+    /**
+     * Schema client on a {@link BufferTransport}. Command data is read between the data
+     * buffer's position and limit and the buffer is left unchanged. A client, like the
+     * transport it owns, is meant to be used by one thread at a time.
+     */
+    public interface BufferedSchemaClient {
+        ApduSchema getSchema();
+        <T> T sendCommand(String commandId, ByteBuffer data) throws NfcCommunicationException;
+        <T> T sendCommand(ApduCommandSpec commandSpec, ByteBuffer data) throws NfcCommunicationException;
+        boolean selectApplication(String aid) throws NfcCommunicationException;
+        void disconnect();
+        boolean isConnected();
+    }
+    
+    /**
+     * Exception for NFC communication errors
+     */
+    public static class NfcCommunicationException extends Exception {
+        public NfcCommunicationException(String message) { super(message); }
+        public NfcCommunicationException(String message, Throwable cause) { super(message, cause); }
+    }
+    
+    /**
+     * Implementation of GenericSchemaClient
+     */
+    /**
+     * Returns the command with Le set to {@code le}: a case 2 or 4 command has its
+     * trailing Le replaced, a case 1 or 3 command gets one appended.
+     */
+    static byte[] withLe(byte[] apdu, byte le) {
+        int leOffset;
+        if (apdu.length == 5) {
+            leOffset = 4; // CLA INS P1 P2 Le
+        } else if (apdu.length > 5 && apdu.length == 6 + (apdu[4] & 0xFF)) {
+            leOffset = apdu.length - 1; // CLA INS P1 P2 Lc data Le
+        } else {
+            leOffset = apdu.length;
+        }
+        byte[] resent = Arrays.copyOf(apdu, leOffset + 1);
+        resent[leOffset] = le;
+        return resent;
+    }
+    
+    private static class GenericSchemaClientImpl implements GenericSchemaClient {
+        private final ApduSchema schema;
+        private final NfcTransport transport;
+        private final ClientResponseHandler responseHandler;
+        private final String[] supportedAids;
+        private final byte[][] selectApdus;
+        private final ResponseCache responseCache;
+        private final ClientConfig config;
+        private final byte[] getResponseApdu = {0x00, (byte) 0xC0, 0x00, 0x00, 0x00};
+        private byte[] reassembly = new byte[512];
+        private String selectedAid;
+        private int selectedAidIndex = -1;
+        private boolean inTransaction;
+        private long transactionStart;
+        
+        // Per-exchange counters, reported to ClientMetrics
+        private long bytesSent;
+        private long bytesReceived;
+        private int chunks;
+        private boolean wrongLengthRetry;
+        
+        public GenericSchemaClientImpl(ApduSchema schema, NfcTransport transport, ClientResponseHandler responseHandler) {
+            this(schema, transport, responseHandler, ClientConfig.DEFAULT);
+        }
+        
+        public GenericSchemaClientImpl(ApduSchema schema, NfcTransport transport, ClientResponseHandler responseHandler,
+                                       ClientConfig config) {
+            this.schema = schema;
+            this.transport = transport;
+            this.responseHandler = responseHandler;
+            this.supportedAids = schema.getSupportedAids();
+            this.selectApdus = buildSelectApdus(supportedAids);
+            this.responseCache = config.getResponseCache();
+            this.config = config;
+        }
+        
+        @Override
+        public ApduSchema getSchema() {
+            return schema;
+        }
+        
+        @Override
+        public <T> T sendCommand(String commandId, byte[] data) throws NfcCommunicationException {
+            ApduCommandSpec commandSpec = schema.getCommand(commandId);
+            if (commandSpec == null) {
+                throw new NfcCommunicationException("Command not found in schema: " + commandId);
+            }
+            return sendCommand(commandSpec, data);
+        }
+        
+        @Override
+        public <T> T sendCommand(ApduCommandSpec commandSpec, byte[] data) throws NfcCommunicationException {
+            // Build APDU from command spec and data; payloads above one segment are chained
+            boolean chained = data != null && data.length > config.getCommandSegmentLength();
+            byte[] apdu = chained ? null : buildApdu(commandSpec, data);
+            
+            // Serve idempotent reads from the cache, drop entries this command makes stale
+            byte[] cardId = responseCache != null && selectedAid != null ? transport.getCardIdentifier() : null;
+            byte[] response = null;
+            if (cardId != null) {
+                if (!commandSpec.getInvalidates().isEmpty()) {
+                    responseCache.invalidate(cardId, selectedAid, commandSpec.getInvalidates());
+                }
+                if (commandSpec.isCacheable() && !chained) {
+                    response = responseCache.get(cardId, selectedAid, apdu);
+                }
+            }
+            
+            // Send command
+            ClientMetrics metrics = config.getMetrics();
+            if (response == null) {
+                response = measuredSend(commandSpec.getCommandId(), commandSpec, apdu, data);
+                if (cardId != null && commandSpec.isCacheable() && !chained && isSuccess(response)) {
+                    responseCache.put(cardId, selectedAid, apdu, commandSpec, response);
+                }
+            } else if (metrics != null) {
+                metrics.recordCacheHit(commandSpec.getCommandId());
+            }
+            
+            // Find matching response spec
+            ApduResponseSpec responseSpec = findMatchingResponse(commandSpec, response);
+            
+            // Let developer handle the response
+            if (metrics == null) {
+                return responseHandler.handleResponse(commandSpec, responseSpec, response);
+            }
+            long handlerStart = System.nanoTime();
+            T result = responseHandler.handleResponse(commandSpec, responseSpec, response);
+            metrics.recordHandler(commandSpec.getCommandId(), System.nanoTime() - handlerStart);
+            return result;
+        }
+        
+        @Override
+        public boolean selectApplication(String aid) throws NfcCommunicationException {
+            int aidIndex = indexOfAid(supportedAids, aid);
+            byte[] selectApdu = selectApdus[aidIndex];
+            
+            byte[] response = measuredSend(ClientMetrics.SELECT, null, selectApdu, null);
+            boolean success = isSuccess(response);
+            
+            if (success) {
+                selectedAid = supportedAids[aidIndex];
+                selectedAidIndex = aidIndex;
+            } else {
+                selectedAid = null;
+                selectedAidIndex = -1;
+            }
+            
+            return success;
+        }
+        
+        @Override
+        public void disconnect() {
+            transport.disconnect();
+            selectedAid = null;
+            selectedAidIndex = -1;
+            inTransaction = false;
+        }
+        
+        @Override
+        public boolean isConnected() {
+            return transport.isConnected();
+        }
+        
+        @Override
+        public void beginTransaction() {
+            inTransaction = true;
+            transactionStart = System.nanoTime();
+        }
+        
+        @Override
+        public void endTransaction() {
+            inTransaction = false;
+        }
+        
+        private byte[] measuredSend(String key, ApduCommandSpec commandSpec, byte[] apdu, byte[] data)
+                throws NfcCommunicationException {
+            ClientMetrics metrics = config.getMetrics();
+            if (metrics == null) {
+                return send(commandSpec, apdu, data);
+            }
+            bytesSent = 0;
+            bytesReceived = 0;
+            chunks = 1;
+            wrongLengthRetry = false;
+            long start = System.nanoTime();
+            byte[] response;
+            try {
+                response = send(commandSpec, apdu, data);
+            } catch (NfcCommunicationException e) {
+                metrics.recordError(key);
+                throw e;
+            }
+            int sw = response.length >= 2
+                ? ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF) : 0;
+            metrics.recordExchange(key, System.nanoTime() - start, bytesSent, bytesReceived, chunks, wrongLengthRetry, sw);
+            return response;
+        }
+        
+        /**
+         * Performs one logical exchange under the configured retry policy.
+         * 
+         * @param commandSpec The command, or null for a SELECT
+         * @param apdu The complete APDU, or null to send {@code data} as a command chain
+         * @param data The command data, used for chained commands
+         */
+        private byte[] send(ApduCommandSpec commandSpec, byte[] apdu, byte[] data) throws NfcCommunicationException {
+            RetryPolicy policy = config.getRetryPolicy();
+            RetryMetrics metrics = config.getRetryMetrics();
+            boolean idempotent = commandSpec == null || commandSpec.isIdempotent();
+            // Within a transaction all exchanges share its budget, otherwise each gets the whole budget
+            long start = inTransaction ? transactionStart : System.nanoTime();
+            
+            int attempt = 1;
+            long backoff = 0;
+            while (true) {
+                try {
+                    if (attempt > 1) {
+                        recover(backoff, commandSpec != null);
+                    }
+                    byte[] response = commandSpec == null ? transmit(apdu)
+                        : apdu == null ? sendChained(commandSpec, data) : exchange(commandSpec, apdu);
+                    if (attempt > 1 && metrics != null) {
+                        metrics.recordRecovered(transport.getCardIdentifier());
+                    }
+                    return response;
+                } catch (NfcCommunicationException e) {
+                    byte[] cardId = metrics != null ? transport.getCardIdentifier() : null;
+                    if (metrics != null) {
+                        metrics.recordFailure(cardId);
+                    }
+                    backoff = policy.backoffNanos(attempt);
+                    if (!idempotent || Thread.currentThread().isInterrupted()
+                            || !policy.allowsRetry(attempt, System.nanoTime() - start, backoff)) {
+                        if (metrics != null) {
+                            metrics.recordGaveUp(cardId, idempotent);
+                        }
+                        throw e;
+                    }
+                    if (metrics != null) {
+                        metrics.recordRetry(cardId);
+                    }
+                    attempt++;
+                }
+            }
+        }
+        
+        /**
+         * Waits out the backoff, reconnects and restores the selected application.
+         */
+        private void recover(long backoffNanos, boolean reselect) throws NfcCommunicationException {
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NfcCommunicationException("Interrupted while waiting to retry", e);
+            }
+            if (!transport.reconnect()) {
+                throw new NfcCommunicationException("Reconnect failed");
+            }
+            if (reselect && selectedAidIndex >= 0 && !isSuccess(transmit(selectApdus[selectedAidIndex]))) {
+                throw new NfcCommunicationException("Re-select failed for AID " + selectedAid);
+            }
+        }
+        
+        private byte[] buildApdu(ApduCommandSpec commandSpec, byte[] data) {
+            byte[] prefix = commandSpec.getCommandPrefix();
+            
+            if (data == null || data.length == 0) {
+                return prefix;
+            }
+            
+            byte[] apdu = new byte[prefix.length + 1 + data.length];
+            System.arraycopy(prefix, 0, apdu, 0, prefix.length);
+            apdu[prefix.length] = (byte) data.length; // LC
+            System.arraycopy(data, 0, apdu, prefix.length + 1, data.length);
+            
+            return apdu;
+        }
+        
+        /**
+         * Sends a command and follows 61xx (GET RESPONSE) and 6Cxx (repeat with Le = SW2)
+         * until the card returns a final status word.
+         */
+        private byte[] exchange(ApduCommandSpec commandSpec, byte[] apdu) throws NfcCommunicationException {
+            byte[] response = transmit(apdu);
+            chunks = 1;
+            wrongLengthRetry = false;
+            if (!config.isFollowResponseChaining()) {
+                return response;
+            }
+            
+            if (response.length == 2 && response[0] == 0x6C) {
+                response = transmit(withLe(apdu, response[1]));
+                wrongLengthRetry = true;
+            }
+            
+            int length = 0;
+            while (response.length >= 2 && response[response.length - 2] == 0x61) {
+                if (chunks == config.getMaxResponseChunks()) {
+                    throw new NfcCommunicationException("Response for " + commandSpec.getCommandId()
+                        + " exceeds " + chunks + " chunks");
+                }
+                length = append(response, response.length - 2, length);
+                getResponseApdu[0] = (byte) (apdu[0] & 0x03); // keep the logical channel
+                getResponseApdu[4] = response[response.length - 1];
+                response = transmit(getResponseApdu);
+                chunks++;
+            }
+            
+            if (chunks > 1) {
+                length = append(response, response.length, length);
+                response = Arrays.copyOf(reassembly, length);
+            }
+            return response;
+        }
+        
+        /**
+         * Sends {@code data} as an ISO 7816-4 command chain: every segment but the last has
+         * the chaining bit (0x10) set in CLA. A segment answered with anything but 9000
+         * ends the chain and that answer becomes the response.
+         */
+        private byte[] sendChained(ApduCommandSpec commandSpec, byte[] data) throws NfcCommunicationException {
+            byte[] prefix = commandSpec.getCommandPrefix();
+            int segmentLength = config.getCommandSegmentLength();
+            int offset = 0;
+            while (data.length - offset > segmentLength) {
+                byte[] response = transmit(segment(prefix, (byte) (prefix[0] | 0x10), data, offset, segmentLength));
+                if (!isSuccess(response)) {
+                    return response;
+                }
+                offset += segmentLength;
+            }
+            return exchange(commandSpec, segment(prefix, prefix[0], data, offset, data.length - offset));
+        }
+        
+        private byte[] segment(byte[] prefix, byte cla, byte[] data, int offset, int length) {
+            byte[] apdu = new byte[prefix.length + 1 + length];
+            System.arraycopy(prefix, 0, apdu, 0, prefix.length);
+            apdu[0] = cla;
+            apdu[prefix.length] = (byte) length; // LC
+            System.arraycopy(data, offset, apdu, prefix.length + 1, length);
+            return apdu;
+        }
+        
+        private byte[] transmit(byte[] apdu) throws NfcCommunicationException {
+            byte[] response = transport.transmit(apdu);
+            bytesSent += apdu.length;
+            bytesReceived += response.length;
+            return response;
+        }
+        
+        private int append(byte[] chunk, int count, int length) throws NfcCommunicationException {
+            int required = length + count;
+            if (required > config.getMaxResponseLength()) {
+                throw new NfcCommunicationException("Response exceeds " + config.getMaxResponseLength() + " bytes");
+            }
+            if (required > reassembly.length) {
+                reassembly = Arrays.copyOf(reassembly, Math.min(Math.max(required, reassembly.length * 2),
+                    config.getMaxResponseLength()));
+            }
+            System.arraycopy(chunk, 0, reassembly, length, count);
+            return required;
+        }
+        
+        private boolean isSuccess(byte[] response) {
+            return response.length >= 2 
+                && response[response.length - 2] == (byte) 0x90 
+                && response[response.length - 1] == 0x00;
+        }
+        
+        private ApduResponseSpec findMatchingResponse(ApduCommandSpec commandSpec, byte[] response) {
+            if (commandSpec.getPossibleResponses() == null) {
+                return null;
+            }
+            for (ApduResponseSpec responseSpec : commandSpec.getPossibleResponses()) {
+                if (responseSpec.matches(response)) {
+                    return responseSpec;
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Implementation of BufferedSchemaClient. Owns one command and one response buffer
+     * for its whole lifetime.
+     */
+    private static class BufferedSchemaClientImpl implements BufferedSchemaClient {
+        private static final int COMMAND_CAPACITY = 4 + 1 + 255 + 1;
+        private static final int RESPONSE_CAPACITY = 256 + 2;
+        
+        private final ApduSchema schema;
+        private final BufferTransport transport;
+        private final BufferedResponseHandler responseHandler;
+        private final String[] supportedAids;
+        private final byte[][] selectApdus;
+        private final Map<String, CommandValidator> validators = new HashMap<>();
+        private final ByteBuffer command = ByteBuffer.allocate(COMMAND_CAPACITY);
+        private final ByteBuffer response = ByteBuffer.allocate(RESPONSE_CAPACITY);
+        private String selectedAid;
+        
+        public BufferedSchemaClientImpl(ApduSchema schema, BufferTransport transport, BufferedResponseHandler responseHandler) {
+            this.schema = schema;
+            this.transport = transport;
+            this.responseHandler = responseHandler;
+            this.supportedAids = schema.getSupportedAids();
+            this.selectApdus = buildSelectApdus(supportedAids);
+            for (ApduCommandSpec spec : schema.getCommands()) {
+                validators.put(spec.getCommandId(), new CommandValidator(spec));
+            }
+        }
+        
+        @Override
+        public ApduSchema getSchema() {
+            return schema;
+        }
+        
+        @Override
+        public <T> T sendCommand(String commandId, ByteBuffer data) throws NfcCommunicationException {
+            CommandValidator validator = validators.get(commandId);
+            if (validator == null) {
+                throw new NfcCommunicationException("Command not found in schema: " + commandId);
+            }
+            return exchange(validator, data);
+        }
+        
+        @Override
+        public <T> T sendCommand(ApduCommandSpec commandSpec, ByteBuffer data) throws NfcCommunicationException {
+            CommandValidator validator = validators.get(commandSpec.getCommandId());
+            if (validator == null || validator.getSpec() != commandSpec) {
+                validator = new CommandValidator(commandSpec);
+            }
+            return exchange(validator, data);
+        }
+        
+        @Override
+        public boolean selectApplication(String aid) throws NfcCommunicationException {
+            int aidIndex = indexOfAid(supportedAids, aid);
+            byte[] selectApdu = selectApdus[aidIndex];
+            command.clear();
+            command.put(selectApdu).flip();
+            transmit();
+            boolean success = statusWord() == 0x9000;
+            if (success) {
+                selectedAid = supportedAids[aidIndex];
+            }
+            return success;
+        }
+        
+        @Override
+        public void disconnect() {
+            transport.disconnect();
+            selectedAid = null;
+        }
+        
+        @Override
+        public boolean isConnected() {
+            return transport.isConnected();
+        }
+        
+        private <T> T exchange(CommandValidator validator, ByteBuffer data) throws NfcCommunicationException {
+            ApduCommandSpec commandSpec = validator.getSpec();
+            command.clear();
+            command.put(commandSpec.getCommandPrefix());
+            if (data != null && data.hasRemaining()) {
+                if (data.remaining() > 255) {
+                    throw new NfcCommunicationException("Command data too long: " + data.remaining() + " bytes");
+                }
+                int position = data.position();
+                command.put((byte) data.remaining()); // LC
+                command.put(data);
+                data.position(position);
+            }
+            command.flip();
+            transmit();
+            
+            ApduResponseSpec responseSpec = null;
+            if (response.remaining() >= 2) {
+                int responseIndex = validator.findResponse(statusWord(), response.remaining() - 2);
+                if (responseIndex >= 0) {
+                    responseSpec = commandSpec.getPossibleResponses().get(responseIndex);
+                }
+            }
+            return responseHandler.handleResponse(commandSpec, responseSpec, response);
+        }
+        
+        private void transmit() throws NfcCommunicationException {
+            response.clear();
+            transport.transmit(command, response);
+            response.flip();
+        }
+        
+        private int statusWord() {
+            int limit = response.limit();
+            return limit >= 2 ? response.getShort(limit - 2) & 0xFFFF : 0;
+        }
+    }
+    
+    /**
+     * Buffer transport on top of an array-based transport. Command arrays are cached per
+     * length, so only the wrapped transport's response array is allocated per exchange.
+     */
+    private static class ByteArrayTransportAdapter implements BufferTransport {
+        private final NfcTransport transport;
+        private final byte[][] commandArrays = new byte[262][];
+        
+        public ByteArrayTransportAdapter(NfcTransport transport) {
+            this.transport = transport;
+        }
+        
+        @Override
+        public void transmit(ByteBuffer command, ByteBuffer response) throws NfcCommunicationException {
+            int length = command.remaining();
+            byte[] apdu;
+            if (length < commandArrays.length) {
+                apdu = commandArrays[length];
+                if (apdu == null) {
+                    apdu = commandArrays[length] = new byte[length];
+                }
+            } else {
+                apdu = new byte[length];
+            }
+            command.get(apdu);
+            byte[] result = transport.transmit(apdu);
+            if (result.length > response.remaining()) {
+                throw new NfcCommunicationException("Response too long for buffer: " + result.length + " bytes");
+            }
+            response.put(result);
+        }
+        
+        @Override
+        public boolean isConnected() {
+            return transport.isConnected();
+        }
+        
+        @Override
+        public void disconnect() {
+            transport.disconnect();
+        }
+    }
+    
+    private static byte[][] buildSelectApdus(String[] aids) {
+        byte[][] apdus = new byte[aids.length][];
+        for (int i = 0; i < aids.length; i++) {
+            byte[] aidBytes = hexStringToBytes(aids[i]);
+            byte[] selectApdu = new byte[4 + 1 + aidBytes.length];
+            selectApdu[0] = 0x00; // CLA
+            selectApdu[1] = (byte) 0xA4; // INS
+            selectApdu[2] = 0x04; // P1
+            selectApdu[3] = 0x00; // P2
+            selectApdu[4] = (byte) aidBytes.length; // LC
+            System.arraycopy(aidBytes, 0, selectApdu, 5, aidBytes.length);
+            apdus[i] = selectApdu;
+        }
+        return apdus;
+    }
+    
+    private static int indexOfAid(String[] aids, String aid) throws NfcCommunicationException {
+        for (int i = 0; i < aids.length; i++) {
+            if (aids[i].equalsIgnoreCase(aid)) {
+                return i;
+            }
+        }
+        throw new NfcCommunicationException("AID not supported by schema: " + aid);
+    }
+    
+    private static byte[] hexStringToBytes(String hex) {
+        int len = hex.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
+                                 + Character.digit(hex.charAt(i + 1), 16));
+        }
+        return data;
+    }
+    
+    /**
+     * Implementation of AsyncSchemaClient on top of a synchronous client that is only
+     * ever used from the transport thread.
+     */
+    private static class AsyncSchemaClientImpl implements AsyncSchemaClient {
+        private final GenericSchemaClient client;
+        private final TransportExecutor executor;
+        private final boolean ownsExecutor;
+        // Written on the transport thread after every task
+        private volatile boolean connected;
+        
+        public AsyncSchemaClientImpl(GenericSchemaClient client, TransportExecutor executor, boolean ownsExecutor) {
+            this.client = client;
+            this.executor = executor;
+            this.ownsExecutor = ownsExecutor;
+            // Reads the initial connection state on the transport thread
+            submit(new TransportExecutor.TransportTask<Void>() {
+                @Override
+                public Void run(NfcTransport transport) {
+                    return null;
+                }
+            });
+        }
+        
+        @Override
+        public ApduSchema getSchema() {
+            return client.getSchema();
+        }
+        
+        @Override
+        public <T> CompletableFuture<T> sendCommand(final String commandId, final byte[] data) {
+            return submit(new TransportExecutor.TransportTask<T>() {
+                @Override
+                public T run(NfcTransport transport) throws NfcCommunicationException {
+                    return client.sendCommand(commandId, data);
+                }
+            });
+        }
+        
+        @Override
+        public <T> CompletableFuture<T> sendCommand(final ApduCommandSpec commandSpec, final byte[] data) {
+            return submit(new TransportExecutor.TransportTask<T>() {
+                @Override
+                public T run(NfcTransport transport) throws NfcCommunicationException {
+                    return client.sendCommand(commandSpec, data);
+                }
+            });
+        }
+        
+        @Override
+        public CompletableFuture<Boolean> selectApplication(final String aid) {
+            return submit(new TransportExecutor.TransportTask<Boolean>() {
+                @Override
+                public Boolean run(NfcTransport transport) throws NfcCommunicationException {
+                    return client.selectApplication(aid);
+                }
+            });
+        }
+        
+        @Override
+        public CompletableFuture<TransactionResult> runScript(final TransactionScript script, final byte[]... parameters) {
+            return submit(new TransportExecutor.TransportTask<TransactionResult>() {
+                @Override
+                public TransactionResult run(NfcTransport transport) {
+                    return script.run(transport, parameters);
+                }
+            });
+        }
+        
+        @Override
+        public int cancelPending() {
+            return executor.cancelPending(new NfcCommunicationException("Card left the field"));
+        }
+        
+        @Override
+        public void disconnect() {
+            cancelPending();
+            submit(new TransportExecutor.TransportTask<Void>() {
+                @Override
+                public Void run(NfcTransport transport) {
+                    client.disconnect();
+                    if (ownsExecutor) {
+                        executor.shutdown();
+                    }
+                    return null;
+                }
+            });
+        }
+        
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+        
+        private <T> CompletableFuture<T> submit(final TransportExecutor.TransportTask<T> task) {
+            return executor.submit(new TransportExecutor.TransportTask<T>() {
+                @Override
+                public T run(NfcTransport transport) throws Exception {
+                    try {
+                        return task.run(transport);
+                    } finally {
+                        connected = client.isConnected();
+                    }
+                }
+            });
+        }
+    }
+    
+    /**
+     * Dynamic proxy handler for creating typed client interfaces
+     */
+    private static class ClientInvocationHandler implements InvocationHandler {
+        private final GenericSchemaClient genericClient;
+        private final Map<String, String> methodToCommandMapping;
+        
+        public ClientInvocationHandler(ApduSchema schema, NfcTransport transport, ClientResponseHandler responseHandler) {
+            this.genericClient = new GenericSchemaClientImpl(schema, transport, responseHandler);
+            this.methodToCommandMapping = buildMethodMapping(schema);
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            
+            // Delegate standard methods
+            if ("getSchema".equals(methodName)) return genericClient.getSchema();
+            if ("disconnect".equals(methodName)) { genericClient.disconnect(); return null; }
+            if ("isConnected".equals(methodName)) return genericClient.isConnected();
+            if ("selectApplication".equals(methodName)) return genericClient.selectApplication((String) args[0]);
+            
+            // Handle command methods
+            String commandId = methodToCommandMapping.get(methodName);
+            if (commandId != null) {
+                byte[] data = args.length > 0 ? (byte[]) args[0] : null;
+                return genericClient.sendCommand(commandId, data);
+            }
+            
+            throw new UnsupportedOperationException("Method not supported: " + methodName);
+        }
+        
+        private Map<String, String> buildMethodMapping(ApduSchema schema) {
+            Map<String, String> mapping = new HashMap<>();
+            for (ApduCommandSpec command : schema.getCommands()) {
+                // Convert command ID to method name (e.g., "GET_DATA" -> "getData")
+                String methodName = commandIdToMethodName(command.getCommandId());
+                mapping.put(methodName, command.getCommandId());
+            }
+            return mapping;
+        }
+        
+        private String commandIdToMethodName(String commandId) {
+            String[] parts = commandId.toLowerCase().split("_");
+            StringBuilder methodName = new StringBuilder(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                methodName.append(Character.toUpperCase(parts[i].charAt(0)))
+                         .append(parts[i].substring(1));
+            }
+            return methodName.toString();
+        }
+    }
+}
\ No newline at end of file
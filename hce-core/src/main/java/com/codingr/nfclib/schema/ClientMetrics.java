@@ -0,0 +1,254 @@
+package com.codingr.nfclib.schema;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free per-command instrumentation for clients: round-trip time histogram, bytes on
+ * air, status word distribution, response chunks and time spent in the response handler.
+ *
+ * <p>Commands are keyed by command id, SELECTs by {@link #SELECT}. Round-trip times cover
+ * the whole logical exchange (GET RESPONSE, chaining and retries included) and are counted
+ * in power-of-two nanosecond buckets. Recording only touches atomic counters, so one
+ * instance can be shared by every client of a terminal; {@link #snapshot()} copies the
+ * counters for export.</p>
+ */
+public final class ClientMetrics {
+
+    /** Key under which SELECT exchanges are recorded */
+    public static final String SELECT = "SELECT";
+
+    static final int BUCKETS = 64;
+
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    void recordExchange(String commandId, long rttNanos, long bytesSent, long bytesReceived,
+                        int chunks, boolean wrongLengthRetry, int statusWord) {
+        Counters c = counters(commandId);
+        c.exchanges.increment();
+        c.rttNanos.add(rttNanos);
+        c.rttBuckets.incrementAndGet(bucket(rttNanos));
+        c.bytesSent.add(bytesSent);
+        c.bytesReceived.add(bytesReceived);
+        c.chunks.add(chunks);
+        if (wrongLengthRetry) {
+            c.wrongLengthRetries.increment();
+        }
+        long max;
+        while (chunks > (max = c.maxChunks.get()) && !c.maxChunks.compareAndSet(max, chunks)) {
+            // retry until our value is stored or a larger one wins
+        }
+        LongAdder count = c.statusWords.get(statusWord);
+        if (count == null) {
+            LongAdder created = new LongAdder();
+            count = c.statusWords.putIfAbsent(statusWord, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.increment();
+    }
+
+    void recordHandler(String commandId, long nanos) {
+        counters(commandId).handlerNanos.add(nanos);
+    }
+
+    void recordCacheHit(String commandId) {
+        counters(commandId).cacheHits.increment();
+    }
+
+    void recordError(String commandId) {
+        counters(commandId).errors.increment();
+    }
+
+    /**
+     * @return A copy of all counters
+     */
+    public Snapshot snapshot() {
+        Map<String, CommandStats> commands = new HashMap<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            commands.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new Snapshot(commands);
+    }
+
+    static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private Counters counters(String commandId) {
+        Counters c = counters.get(commandId);
+        if (c == null) {
+            Counters created = new Counters();
+            c = counters.putIfAbsent(commandId, created);
+            if (c == null) {
+                c = created;
+            }
+        }
+        return c;
+    }
+
+    private static final class Counters {
+        final LongAdder exchanges = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rttNanos = new LongAdder();
+        final AtomicLongArray rttBuckets = new AtomicLongArray(BUCKETS);
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder chunks = new LongAdder();
+        final AtomicLong maxChunks = new AtomicLong();
+        final LongAdder wrongLengthRetries = new LongAdder();
+        final LongAdder handlerNanos = new LongAdder();
+        final ConcurrentHashMap<Integer, LongAdder> statusWords = new ConcurrentHashMap<>();
+
+        CommandStats snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = rttBuckets.get(i);
+            }
+            Map<Integer, Long> sw = new HashMap<>();
+            for (Map.Entry<Integer, LongAdder> entry : statusWords.entrySet()) {
+                sw.put(entry.getKey(), entry.getValue().sum());
+            }
+            return new CommandStats(exchanges.sum(), cacheHits.sum(), errors.sum(), rttNanos.sum(), buckets,
+                    bytesSent.sum(), bytesReceived.sum(), chunks.sum(), maxChunks.get(),
+                    wrongLengthRetries.sum(), handlerNanos.sum(), Collections.unmodifiableMap(sw));
+        }
+    }
+
+    /**
+     * Counters of all commands at one point in time.
+     */
+    public static final class Snapshot {
+        private final Map<String, CommandStats> commands;
+
+        Snapshot(Map<String, CommandStats> commands) {
+            this.commands = Collections.unmodifiableMap(commands);
+        }
+
+        public Map<String, CommandStats> getCommands() { return commands; }
+
+        /**
+         * @return The counters of one command, or null if it was never sent
+         */
+        public CommandStats getCommand(String commandId) { return commands.get(commandId); }
+
+        /**
+         * @return The sum of round-trip times over all commands
+         */
+        public long getTotalRttNanos() {
+            long total = 0;
+            for (CommandStats stats : commands.values()) {
+                total += stats.getTotalRttNanos();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Counters of one command.
+     */
+    public static final class CommandStats {
+        private final long exchanges;
+        private final long cacheHits;
+        private final long errors;
+        private final long totalRttNanos;
+        private final long[] rttHistogram;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long chunks;
+        private final long maxChunks;
+        private final long wrongLengthRetries;
+        private final long handlerNanos;
+        private final Map<Integer, Long> statusWords;
+
+        CommandStats(long exchanges, long cacheHits, long errors, long totalRttNanos, long[] rttHistogram,
+                     long bytesSent, long bytesReceived, long chunks, long maxChunks, long wrongLengthRetries,
+                     long handlerNanos, Map<Integer, Long> statusWords) {
+            this.exchanges = exchanges;
+            this.cacheHits = cacheHits;
+            this.errors = errors;
+            this.totalRttNanos = totalRttNanos;
+            this.rttHistogram = rttHistogram;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.chunks = chunks;
+            this.maxChunks = maxChunks;
+            this.wrongLengthRetries = wrongLengthRetries;
+            this.handlerNanos = handlerNanos;
+            this.statusWords = statusWords;
+        }
+
+        /**
+         * @return Completed exchanges with the card, not counting cache hits and errors
+         */
+        public long getExchanges() { return exchanges; }
+        public long getCacheHits() { return cacheHits; }
+
+        /**
+         * @return Exchanges that failed with a transport error
+         */
+        public long getErrors() { return errors; }
+        public long getTotalRttNanos() { return totalRttNanos; }
+
+        public long getAverageRttNanos() {
+            return exchanges == 0 ? 0 : totalRttNanos / exchanges;
+        }
+
+        /**
+         * @return Exchange counts per bucket; bucket {@code i} holds round trips of
+         *         {@code 2^i} to {@code 2^(i+1) - 1} nanoseconds
+         */
+        public long[] getRttHistogram() { return rttHistogram.clone(); }
+
+        /**
+         * @param percentile A value between 0 and 100
+         * @return The upper bound of the histogram bucket holding the percentile
+         */
+        public long getRttPercentileNanos(double percentile) {
+            long rank = (long) Math.ceil(exchanges * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < rttHistogram.length; i++) {
+                seen += rttHistogram[i];
+                if (seen >= rank && seen > 0) {
+                    return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        public long getBytesSent() { return bytesSent; }
+        public long getBytesReceived() { return bytesReceived; }
+
+        /**
+         * @return Response APDUs received, GET RESPONSE chunks included
+         */
+        public long getChunks() { return chunks; }
+        public long getMaxChunks() { return maxChunks; }
+
+        public double getAverageChunks() {
+            return exchanges == 0 ? 0 : (double) chunks / exchanges;
+        }
+
+        /**
+         * @return Exchanges the card asked to repeat with a corrected Le ({@code 6Cxx})
+         */
+        public long getWrongLengthRetries() { return wrongLengthRetries; }
+
+        /**
+         * @return Time spent in the client's response handler
+         */
+        public long getHandlerNanos() { return handlerNanos; }
+
+        /**
+         * @return Final status words and how often each was received
+         */
+        public Map<Integer, Long> getStatusWords() { return statusWords; }
+    }
+}
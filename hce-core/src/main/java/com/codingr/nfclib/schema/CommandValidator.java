@@ -0,0 +1,117 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.List;
+
+/**
+ * Validator compiled from the bounds of an {@link ApduCommandSpec}.
+ * All constraints are copied into primitive fields once, so checking an APDU or a
+ * response does not allocate or go through boxed values.
+ */
+public final class CommandValidator {
+
+    private static final int ANY = -1;
+
+    private final ApduCommandSpec spec;
+    private final byte cla;
+    private final byte ins;
+    private final int p1;
+    private final int p2;
+    private final int minDataLength;
+    private final int maxDataLength;
+    private final int[] responseStatusWords;
+    private final int[] responseMinLengths;
+    private final int[] responseMaxLengths;
+
+    public CommandValidator(ApduCommandSpec spec) {
+        this.spec = spec;
+        this.cla = spec.getCla();
+        this.ins = spec.getIns();
+        this.p1 = spec.getP1() != null ? spec.getP1() & 0xFF : ANY;
+        this.p2 = spec.getP2() != null ? spec.getP2() & 0xFF : ANY;
+        this.minDataLength = spec.getMinDataLength() != null ? spec.getMinDataLength() : 0;
+        this.maxDataLength = spec.getMaxDataLength() != null ? spec.getMaxDataLength() : Integer.MAX_VALUE;
+
+        List<ApduResponseSpec> responses = spec.getPossibleResponses();
+        int count = responses != null ? responses.size() : 0;
+        this.responseStatusWords = new int[count];
+        this.responseMinLengths = new int[count];
+        this.responseMaxLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            ApduResponseSpec response = responses.get(i);
+            byte[] sw = response.getStatusWord();
+            responseStatusWords[i] = ((sw[0] & 0xFF) << 8) | (sw[1] & 0xFF);
+            responseMinLengths[i] = response.getMinDataLength() != null ? response.getMinDataLength() : 0;
+            responseMaxLengths[i] = response.getMaxDataLength() != null ? response.getMaxDataLength() : Integer.MAX_VALUE;
+        }
+    }
+
+    public ApduCommandSpec getSpec() {
+        return spec;
+    }
+
+    public byte getCla() { return cla; }
+    public byte getIns() { return ins; }
+
+    /**
+     * @return true if CLA and INS of the APDU belong to this command
+     */
+    public boolean matchesHeader(byte[] apdu) {
+        return apdu[0] == cla && apdu[1] == ins;
+    }
+
+    /**
+     * @return true if P1 and P2 of the APDU are accepted by this command
+     */
+    public boolean matchesParameters(byte[] apdu) {
+        return (p1 == ANY || (apdu[2] & 0xFF) == p1) && (p2 == ANY || (apdu[3] & 0xFF) == p2);
+    }
+
+    /**
+     * @return true if the Lc of the APDU lies within the declared data length bounds
+     */
+    public boolean matchesLength(byte[] apdu, int length) {
+        int dataLength = ApduUtil.dataLength(apdu, length);
+        return dataLength >= minDataLength && dataLength <= maxDataLength;
+    }
+
+    /**
+     * @return true if the response fits one of the command's possible responses.
+     *         Commands without declared responses accept everything.
+     */
+    public boolean validateResponse(byte[] response, int length) {
+        if (length < 2) {
+            return false;
+        }
+        int sw = ((response[length - 2] & 0xFF) << 8) | (response[length - 1] & 0xFF);
+        return validateResponse(sw, length - 2);
+    }
+
+    /**
+     * @param statusWord The status word as an unsigned 16-bit value
+     * @param dataLength The response data length, without the status word
+     * @return true if the response fits one of the command's possible responses
+     */
+    public boolean validateResponse(int statusWord, int dataLength) {
+        return responseStatusWords.length == 0 || findResponse(statusWord, dataLength) >= 0;
+    }
+
+    /**
+     * Resolves a response against the command's possible responses.
+     *
+     * @param statusWord The status word as an unsigned 16-bit value
+     * @param dataLength The response data length, without the status word
+     * @return The index in {@link ApduCommandSpec#getPossibleResponses()}, or -1 if none matches
+     */
+    public int findResponse(int statusWord, int dataLength) {
+        for (int i = 0; i < responseStatusWords.length; i++) {
+            if (responseStatusWords[i] == statusWord
+                    && dataLength >= responseMinLengths[i]
+                    && dataLength <= responseMaxLengths[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,112 @@
+package com.codingr.nfclib.schema;
+
+import java.util.List;
+
+/**
+ * An {@link ApduSchema} compiled into a lookup table of {@link CommandValidator}s,
+ * indexed by INS byte. Resolving an APDU only scans the commands sharing its INS,
+ * instead of every command in the schema.
+ *
+ * <p>Instances are immutable and can be shared between sessions and threads.</p>
+ */
+public final class CompiledSchema {
+
+    /** No command with this CLA/INS exists in the schema */
+    public static final int NOT_IN_SCHEMA = -1;
+
+    /** CLA/INS belong to a schema command, but P1/P2 are not accepted (6A86) */
+    public static final int WRONG_P1P2 = -2;
+
+    /** The command was recognised, but its data length is out of bounds (6700) */
+    public static final int WRONG_LENGTH = -3;
+
+    private static final int[] NONE = new int[0];
+
+    private final ApduSchema schema;
+    private final CommandValidator[] validators;
+    private final int[][] validatorsByIns = new int[256][];
+
+    private CompiledSchema(ApduSchema schema) {
+        this.schema = schema;
+        List<ApduCommandSpec> commands = schema.getCommands();
+        this.validators = new CommandValidator[commands.size()];
+        int[] countByIns = new int[256];
+        for (int i = 0; i < validators.length; i++) {
+            validators[i] = new CommandValidator(commands.get(i));
+            countByIns[validators[i].getIns() & 0xFF]++;
+        }
+        for (int ins = 0; ins < 256; ins++) {
+            validatorsByIns[ins] = countByIns[ins] == 0 ? NONE : new int[countByIns[ins]];
+            countByIns[ins] = 0;
+        }
+        for (int i = 0; i < validators.length; i++) {
+            int ins = validators[i].getIns() & 0xFF;
+            validatorsByIns[ins][countByIns[ins]++] = i;
+        }
+    }
+
+    /**
+     * Compiles a schema. Compile once per schema and reuse the result.
+     *
+     * @param schema The schema to compile
+     * @return The compiled schema
+     */
+    public static CompiledSchema compile(ApduSchema schema) {
+        return new CompiledSchema(schema);
+    }
+
+    public ApduSchema getSchema() {
+        return schema;
+    }
+
+    public int size() {
+        return validators.length;
+    }
+
+    public CommandValidator getValidator(int index) {
+        return validators[index];
+    }
+
+    /**
+     * Resolves an APDU to a schema command and checks it against the command's bounds.
+     *
+     * @param apdu The APDU bytes
+     * @param length The number of valid bytes in {@code apdu}
+     * @return The index of the matching validator, or one of {@link #NOT_IN_SCHEMA},
+     *         {@link #WRONG_P1P2} or {@link #WRONG_LENGTH}
+     */
+    public int indexOf(byte[] apdu, int length) {
+        if (length < 4) {
+            return NOT_IN_SCHEMA;
+        }
+        int result = NOT_IN_SCHEMA;
+        for (int index : validatorsByIns[apdu[1] & 0xFF]) {
+            CommandValidator validator = validators[index];
+            if (apdu[0] != validator.getCla()) {
+                continue;
+            }
+            if (!validator.matchesParameters(apdu)) {
+                if (result == NOT_IN_SCHEMA) {
+                    result = WRONG_P1P2;
+                }
+                continue;
+            }
+            if (!validator.matchesLength(apdu, length)) {
+                result = WRONG_LENGTH;
+                continue;
+            }
+            return index;
+        }
+        return result;
+    }
+
+    /**
+     * Allocation-free equivalent of {@link ApduSchema#findCommandByApdu(byte[])}.
+     *
+     * @return The matching command specification or null if not found
+     */
+    public ApduCommandSpec findCommand(byte[] apdu, int length) {
+        int index = indexOf(apdu, length);
+        return index >= 0 ? validators[index].getSpec() : null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.hce.core.RouterSession;
+
+/**
+ * Transport that delivers APDUs straight to a {@link RouterEngine} in the same JVM.
+ *
+ * <p>Clients created by {@link ClientFactory} talk to the card-side controllers through
+ * the same SELECT handling, controller activation and dispatch as on a device, without
+ * NFC hardware or Android. Useful for integration tests, benchmarks and simulators.</p>
+ *
+ * <p>The transport emulates one card with one {@link RouterSession}. {@link #disconnect()}
+ * deactivates it as a lost link; {@link #reconnect()} brings the same card back, like
+ * re-tapping it, so controllers suspended for resumption can be resumed. Like a real
+ * card, a transport serves one exchange at a time.</p>
+ */
+public class LoopbackTransport implements ClientFactory.NfcTransport {
+
+    private final byte[] cardIdentifier;
+    private final RouterSession session;
+    private boolean connected = true;
+    private long linkGeneration;
+
+    public LoopbackTransport(RouterEngine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * @param cardIdentifier Identifier reported to clients, enables response caching; may be null
+     */
+    public LoopbackTransport(RouterEngine engine, byte[] cardIdentifier) {
+        this.cardIdentifier = cardIdentifier != null ? cardIdentifier.clone() : null;
+        this.session = engine.newSession();
+    }
+
+    @Override
+    public synchronized byte[] transmit(byte[] apdu) throws ClientFactory.NfcCommunicationException {
+        if (!connected) {
+            throw new ClientFactory.NfcCommunicationException("Loopback transport is disconnected");
+        }
+        return session.process(apdu);
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        if (connected) {
+            session.deactivate(RouterSession.DEACTIVATION_LINK_LOSS);
+            connected = false;
+        }
+    }
+
+    @Override
+    public synchronized boolean reconnect() {
+        disconnect();
+        connected = true;
+        linkGeneration++;
+        return true;
+    }
+
+    @Override
+    public synchronized long getLinkGeneration() {
+        return linkGeneration;
+    }
+
+    @Override
+    public byte[] getCardIdentifier() {
+        return cardIdentifier;
+    }
+
+    /**
+     * @return The router session of the current connection, or null when disconnected
+     */
+    public synchronized RouterSession getSession() {
+        return connected ? session : null;
+    }
+}
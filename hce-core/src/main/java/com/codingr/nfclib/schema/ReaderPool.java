@@ -0,0 +1,266 @@
+package com.codingr.nfclib.schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Pooled client for terminals with several readers.
+ *
+ * <p>Each reader gets its own {@link TransportExecutor} and schema client, so sessions on
+ * one reader are strictly serial while sessions on different readers run in parallel.
+ * A submitted session goes to the reader that has a card present, is healthy and has the
+ * fewest sessions in flight, breaking ties by its moving-average session latency.
+ * Readers that fail several sessions in a row are skipped for a cool-down period.</p>
+ *
+ * <p>Selection only reads per-reader counters; no lock is shared between readers. A
+ * transport is only touched by its own reader thread: whether a card is present is
+ * published by that thread after every session, and a reader skipped for having no card
+ * queues a check, so a card placed on an idle reader is found by a later submission.</p>
+ */
+public final class ReaderPool {
+
+    /**
+     * A card session: a sequence of exchanges run on one reader.
+     */
+    public interface CardSession<T> {
+        T run(ClientFactory.GenericSchemaClient client) throws Exception;
+    }
+
+    private static final int FAILURES_BEFORE_QUARANTINE = 3;
+    private static final long QUARANTINE_NANOS = 5_000_000_000L;
+
+    private final List<Reader> readers;
+
+    /**
+     * @param schema The APDU protocol schema
+     * @param transports One transport per reader
+     * @param responseHandler Handler for processing responses, shared by all readers
+     * @param maxQueuedPerReader Maximum sessions waiting per reader
+     */
+    public ReaderPool(ApduSchema schema, List<? extends ClientFactory.NfcTransport> transports,
+                      ClientFactory.ClientResponseHandler responseHandler, int maxQueuedPerReader) {
+        List<Reader> created = new ArrayList<>(transports.size());
+        for (int i = 0; i < transports.size(); i++) {
+            ClientFactory.NfcTransport transport = transports.get(i);
+            created.add(new Reader(i, new TransportExecutor(transport, maxQueuedPerReader),
+                    ClientFactory.createGenericClient(schema, transport, responseHandler)));
+        }
+        // The reader threads are idle, so the first presence checks return at once
+        for (Reader reader : created) {
+            reader.probe().join();
+        }
+        this.readers = Collections.unmodifiableList(created);
+    }
+
+    public int getReaderCount() {
+        return readers.size();
+    }
+
+    /**
+     * Runs a session on the best available reader.
+     *
+     * @return A future completed with the session's result, or failed with an
+     *         {@link ClientFactory.NfcCommunicationException} if no reader has a card present
+     */
+    public <T> CompletableFuture<T> submit(CardSession<T> session) {
+        Reader reader = selectReader();
+        if (reader == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ClientFactory.NfcCommunicationException("No reader has a card present"));
+            return failed;
+        }
+        return reader.submit(session);
+    }
+
+    /**
+     * Runs a session on a specific reader, e.g. the one that reported a card.
+     */
+    public <T> CompletableFuture<T> submitTo(int readerIndex, CardSession<T> session) {
+        return readers.get(readerIndex).submit(session);
+    }
+
+    /**
+     * @return A snapshot of every reader's health and latency
+     */
+    public List<ReaderStats> getReaderStats() {
+        List<ReaderStats> stats = new ArrayList<>(readers.size());
+        long now = System.nanoTime();
+        for (Reader reader : readers) {
+            stats.add(new ReaderStats(reader.index, reader.cardPresent, reader.isHealthy(now),
+                    reader.inFlight.get(), reader.completed.get(), reader.failed.get(), reader.averageNanos));
+        }
+        return stats;
+    }
+
+    /**
+     * Fails queued sessions and stops all reader threads.
+     */
+    public void shutdown() {
+        for (Reader reader : readers) {
+            reader.executor.shutdown();
+        }
+    }
+
+    private Reader selectReader() {
+        long now = System.nanoTime();
+        Reader best = null;
+        for (Reader reader : readers) {
+            if (!reader.cardPresent) {
+                reader.probe();
+                continue;
+            }
+            if (!reader.isHealthy(now)) {
+                continue;
+            }
+            if (best == null || reader.isBetterThan(best)) {
+                best = reader;
+            }
+        }
+        return best;
+    }
+
+    private static final class Reader {
+        final int index;
+        final TransportExecutor executor;
+        final ClientFactory.GenericSchemaClient client;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        // Written only by the reader's transport thread
+        volatile long averageNanos;
+        volatile int consecutiveFailures;
+        volatile long quarantinedUntil;
+        volatile boolean cardPresent;
+
+        Reader(int index, TransportExecutor executor, ClientFactory.GenericSchemaClient client) {
+            this.index = index;
+            this.executor = executor;
+            this.client = client;
+        }
+
+        /**
+         * Queues a card presence check on the transport thread, unless one is pending.
+         */
+        CompletableFuture<Void> probe() {
+            if (!probing.compareAndSet(false, true)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> probe = executor.submit(new TransportExecutor.TransportTask<Void>() {
+                @Override
+                public Void run(ClientFactory.NfcTransport transport) {
+                    probing.set(false);
+                    cardPresent = transport.isConnected();
+                    return null;
+                }
+            });
+            if (probe.isDone()) {
+                // Rejected by a full or stopped executor
+                probing.set(false);
+            }
+            return probe.exceptionally(new Function<Throwable, Void>() {
+                @Override
+                public Void apply(Throwable error) {
+                    return null;
+                }
+            });
+        }
+
+        boolean isHealthy(long now) {
+            return consecutiveFailures < FAILURES_BEFORE_QUARANTINE || now - quarantinedUntil >= 0;
+        }
+
+        boolean isBetterThan(Reader other) {
+            int load = inFlight.get();
+            int otherLoad = other.inFlight.get();
+            if (load != otherLoad) {
+                return load < otherLoad;
+            }
+            return averageNanos < other.averageNanos;
+        }
+
+        <T> CompletableFuture<T> submit(final CardSession<T> session) {
+            inFlight.incrementAndGet();
+            CompletableFuture<T> future = executor.submit(new TransportExecutor.TransportTask<T>() {
+                @Override
+                public T run(ClientFactory.NfcTransport transport) throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        T result = session.run(client);
+                        recordSuccess(System.nanoTime() - start);
+                        return result;
+                    } catch (Exception e) {
+                        recordFailure();
+                        throw e;
+                    } finally {
+                        cardPresent = transport.isConnected();
+                    }
+                }
+            });
+            future.whenComplete(new BiConsumer<T, Throwable>() {
+                @Override
+                public void accept(T result, Throwable error) {
+                    inFlight.decrementAndGet();
+                }
+            });
+            return future;
+        }
+
+        private void recordSuccess(long nanos) {
+            long average = averageNanos;
+            // Exponentially weighted moving average, weight 1/8 for the new sample
+            averageNanos = average == 0 ? nanos : average + ((nanos - average) >> 3);
+            consecutiveFailures = 0;
+            completed.incrementAndGet();
+        }
+
+        private void recordFailure() {
+            int failures = consecutiveFailures + 1;
+            consecutiveFailures = failures;
+            if (failures >= FAILURES_BEFORE_QUARANTINE) {
+                quarantinedUntil = System.nanoTime() + QUARANTINE_NANOS;
+            }
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Point-in-time view of one reader.
+     */
+    public static final class ReaderStats {
+        private final int index;
+        private final boolean cardPresent;
+        private final boolean healthy;
+        private final int inFlight;
+        private final long completedSessions;
+        private final long failedSessions;
+        private final long averageSessionNanos;
+
+        ReaderStats(int index, boolean cardPresent, boolean healthy, int inFlight,
+                    long completedSessions, long failedSessions, long averageSessionNanos) {
+            this.index = index;
+            this.cardPresent = cardPresent;
+            this.healthy = healthy;
+            this.inFlight = inFlight;
+            this.completedSessions = completedSessions;
+            this.failedSessions = failedSessions;
+            this.averageSessionNanos = averageSessionNanos;
+        }
+
+        public int getIndex() { return index; }
+        public boolean isCardPresent() { return cardPresent; }
+        public boolean isHealthy() { return healthy; }
+        public int getInFlight() { return inFlight; }
+        public long getCompletedSessions() { return completedSessions; }
+        public long getFailedSessions() { return failedSessions; }
+        public long getAverageSessionNanos() { return averageSessionNanos; }
+    }
+}
@@ -0,0 +1,155 @@
+package com.codingr.nfclib.schema;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side cache for responses of idempotent commands.
+ *
+ * <p>Entries are keyed by card identifier, selected AID and the exact command APDU, and
+ * only successful ({@code 9000}) responses of commands declared
+ * {@link ApduCommandSpec.Builder#cacheable cacheable} are stored. Entries expire after the
+ * command's TTL and the least recently used entry is evicted once {@code maxEntries} is
+ * reached. One cache can be shared by several clients, so a quick re-tap of the same card
+ * on any reader is served without an RF round trip.</p>
+ */
+public final class ResponseCache {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, CachedResponse> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries Maximum number of cached responses
+     */
+    public ResponseCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResponse> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return A copy of the cached response, or null if absent or expired
+     */
+    public synchronized byte[] get(byte[] cardId, String aid, byte[] apdu) {
+        Key key = new Key(cardId, aid, apdu);
+        CachedResponse entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.response.clone();
+    }
+
+    /**
+     * Stores a response for {@link ApduCommandSpec#getCacheTtlMillis()} milliseconds.
+     */
+    public synchronized void put(byte[] cardId, String aid, byte[] apdu, ApduCommandSpec commandSpec, byte[] response) {
+        long expiresAt = System.nanoTime() + commandSpec.getCacheTtlMillis() * 1_000_000L;
+        entries.put(new Key(cardId.clone(), aid, apdu.clone()),
+                new CachedResponse(commandSpec.getCommandId(), response.clone(), expiresAt));
+    }
+
+    /**
+     * Drops the cached responses of the given commands for one card and AID.
+     *
+     * @return The number of dropped entries
+     */
+    public synchronized int invalidate(byte[] cardId, String aid, Collection<String> commandIds) {
+        int removed = 0;
+        Iterator<Map.Entry<Key, CachedResponse>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, CachedResponse> mapping = iterator.next();
+            Key key = mapping.getKey();
+            if (key.aid.equals(aid) && Arrays.equals(key.cardId, cardId)
+                    && commandIds.contains(mapping.getValue().commandId)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drops every cached response of one card.
+     */
+    public synchronized void invalidateCard(byte[] cardId) {
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (Arrays.equals(iterator.next().cardId, cardId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Key {
+        final byte[] cardId;
+        final String aid;
+        final byte[] apdu;
+        final int hash;
+
+        Key(byte[] cardId, String aid, byte[] apdu) {
+            this.cardId = cardId;
+            this.aid = aid;
+            this.apdu = apdu;
+            this.hash = (Arrays.hashCode(cardId) * 31 + aid.hashCode()) * 31 + Arrays.hashCode(apdu);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && aid.equals(other.aid)
+                    && Arrays.equals(apdu, other.apdu) && Arrays.equals(cardId, other.cardId);
+        }
+    }
+
+    private static final class CachedResponse {
+        final String commandId;
+        final byte[] response;
+        final long expiresAt;
+
+        CachedResponse(String commandId, byte[] response, long expiresAt) {
+            this.commandId = commandId;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-card retry counters, keyed by the hex card identifier ("unknown" when the transport
+ * does not report one). Thread-safe; one instance can be shared by many clients.
+ */
+public final class RetryMetrics {
+
+    static final String UNKNOWN_CARD = "unknown";
+
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    void recordFailure(byte[] cardId) {
+        counters(cardId).failures.incrementAndGet();
+    }
+
+    void recordRetry(byte[] cardId) {
+        counters(cardId).retries.incrementAndGet();
+    }
+
+    void recordRecovered(byte[] cardId) {
+        counters(cardId).recovered.incrementAndGet();
+    }
+
+    void recordGaveUp(byte[] cardId, boolean idempotent) {
+        Counters c = counters(cardId);
+        if (idempotent) {
+            c.exhausted.incrementAndGet();
+        } else {
+            c.notRetried.incrementAndGet();
+        }
+    }
+
+    public Set<String> getCardIds() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    /**
+     * @return Transport errors seen, including those that were retried
+     */
+    public long getFailures(String cardId) {
+        Counters c = counters.get(cardId);
+        return c != null ? c.failures.get() : 0;
+    }
+
+    public long getRetries(String cardId) {
+        Counters c = counters.get(cardId);
+        return c != null ? c.retries.get() : 0;
+    }
+
+    /**
+     * @return Exchanges that succeeded after at least one retry
+     */
+    public long getRecovered(String cardId) {
+        Counters c = counters.get(cardId);
+        return c != null ? c.recovered.get() : 0;
+    }
+
+    /**
+     * @return Idempotent exchanges that failed after the attempts or the budget ran out
+     */
+    public long getExhausted(String cardId) {
+        Counters c = counters.get(cardId);
+        return c != null ? c.exhausted.get() : 0;
+    }
+
+    /**
+     * @return Failed exchanges that were not retried because the command is not idempotent
+     */
+    public long getNotRetried(String cardId) {
+        Counters c = counters.get(cardId);
+        return c != null ? c.notRetried.get() : 0;
+    }
+
+    private Counters counters(byte[] cardId) {
+        String key = cardId != null ? ApduUtil.bytesToHex(cardId) : UNKNOWN_CARD;
+        Counters c = counters.get(key);
+        if (c == null) {
+            Counters created = new Counters();
+            c = counters.putIfAbsent(key, created);
+            if (c == null) {
+                c = created;
+            }
+        }
+        return c;
+    }
+
+    private static final class Counters {
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong recovered = new AtomicLong();
+        final AtomicLong exhausted = new AtomicLong();
+        final AtomicLong notRetried = new AtomicLong();
+    }
+}
@@ -0,0 +1,94 @@
+package com.codingr.nfclib.schema;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a client retries exchanges that fail with a transport error, e.g. when a card
+ * slips partly out of the field.
+ *
+ * <p>Only idempotent commands (see {@link ApduCommandSpec#isIdempotent()}) and SELECTs are
+ * retried. Each retry waits a jittered backoff, reconnects the transport and re-selects
+ * the application. Retries stop after {@code maxAttempts} or when the next attempt would
+ * start after the transaction budget is spent. The budget is measured from
+ * {@link ClientFactory.GenericSchemaClient#beginTransaction()}, so the exchanges of one
+ * transaction share it; outside a transaction it is measured from the start of each exchange.</p>
+ */
+public class RetryPolicy {
+
+    /** Never retry */
+    public static final RetryPolicy NONE = new Builder().maxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long transactionBudgetNanos;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.transactionBudgetNanos = builder.transactionBudgetMillis * 1_000_000L;
+        this.initialBackoffNanos = builder.initialBackoffMillis * 1_000_000L;
+        this.maxBackoffNanos = builder.maxBackoffMillis * 1_000_000L;
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public long getTransactionBudgetNanos() { return transactionBudgetNanos; }
+
+    /**
+     * @param retry The retry number, starting at 1
+     * @return A random delay between half and all of the exponential backoff for this retry
+     */
+    public long backoffNanos(int retry) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(retry - 1, 20));
+        if (ceiling <= 1) {
+            return ceiling;
+        }
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /**
+     * @param attempt The number of attempts made so far
+     * @param elapsedNanos Time spent in the transaction so far
+     * @param backoffNanos The delay before the next attempt
+     * @return true if another attempt fits the policy
+     */
+    public boolean allowsRetry(int attempt, long elapsedNanos, long backoffNanos) {
+        return attempt < maxAttempts && elapsedNanos + backoffNanos < transactionBudgetNanos;
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long transactionBudgetMillis = 500;
+        private long initialBackoffMillis = 5;
+        private long maxBackoffMillis = 40;
+
+        /**
+         * Total attempts per exchange, including the first. Default 3.
+         */
+        public Builder maxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; return this; }
+
+        /**
+         * Time after a transaction starts within which retries may start. Default 500 ms,
+         * roughly how long a user keeps a card on the reader.
+         */
+        public Builder transactionBudgetMillis(long millis) { this.transactionBudgetMillis = millis; return this; }
+
+        /**
+         * Backoff before the first retry, doubled for each further retry up to
+         * {@code maxMillis}. Default 5 ms and 40 ms: a card that slipped usually comes
+         * back within a few field resets, so long waits only add latency.
+         */
+        public Builder backoffMillis(long initialMillis, long maxMillis) {
+            this.initialBackoffMillis = initialMillis;
+            this.maxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -11,11 +11,21 @@ import com.codingr.nfclib.hce.core.BaseApduController;
 public abstract class SchemaBasedController extends BaseApduController {
     
     private final ApduSchema schema;
+    private CompiledSchema compiledSchema;
     
     public SchemaBasedController(ApduSchema schema) {
         this.schema = schema;
     }
     
+    /**
+     * Creates a controller that shares an already compiled schema,
+     * e.g. one compiled once at registration time.
+     */
+    protected SchemaBasedController(ApduSchema schema, CompiledSchema compiledSchema) {
+        this.schema = schema;
+        this.compiledSchema = compiledSchema;
+    }
+    
     /**
      * @return The schema this controller implements
      */
@@ -23,6 +33,16 @@ public abstract class SchemaBasedController extends BaseApduController {
         return schema;
     }
     
+    /**
+     * @return The schema compiled for fast command lookup, compiled on first use
+     */
+    public CompiledSchema getCompiledSchema() {
+        if (compiledSchema == null) {
+            compiledSchema = CompiledSchema.compile(schema);
+        }
+        return compiledSchema;
+    }
+    
     /**
      * Handle a schema-defined command. Developers override this method
      * to implement their business logic while the schema provides structure.
@@ -34,25 +54,32 @@ public abstract class SchemaBasedController extends BaseApduController {
     public abstract ApduResponse handleSchemaCommand(ApduCommandSpec commandSpec, byte[] apduBytes);
     
     /**
-     * Validates a command against the schema before processing.
-     * Can be overridden for custom validation logic.
+     * Validates a command against the schema.
      * 
      * @param commandSpec The command specification
      * @param apduBytes The APDU bytes
      * @return true if valid, false otherwise
+     * @deprecated The router validates commands through the compiled schema before
+     *             dispatch and does not call this method; configure it with
+     *             {@link com.codingr.nfclib.hce.core.ValidationPolicy}. Checks beyond the
+     *             schema belong in {@link #handleSchemaCommand}.
      */
+    @Deprecated
     protected boolean validateCommand(ApduCommandSpec commandSpec, byte[] apduBytes) {
         return commandSpec.matches(apduBytes);
     }
     
     /**
-     * Validates a response against the schema after processing.
-     * Can be overridden for custom validation logic.
+     * Validates a response against the schema.
      * 
      * @param responseSpec The response specification
      * @param responseBytes The response bytes
      * @return true if valid, false otherwise
+     * @deprecated The router validates responses through the compiled schema, sampled or
+     *             always, as set by {@link com.codingr.nfclib.hce.core.ValidationPolicy},
+     *             and does not call this method.
      */
+    @Deprecated
     protected boolean validateResponse(ApduResponseSpec responseSpec, byte[] responseBytes) {
         return responseSpec.matches(responseBytes);
     }
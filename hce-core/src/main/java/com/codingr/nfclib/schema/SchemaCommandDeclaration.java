@@ -54,4 +54,22 @@ public @interface SchemaCommandDeclaration {
      * @return The maximum data length
      */
     int maxDataLength() default 255;
+    
+    /**
+     * How long clients may cache successful responses, 0 to never cache
+     * @return The cache time-to-live in milliseconds
+     */
+    long cacheTtlMillis() default 0;
+    
+    /**
+     * Commands whose cached responses become stale when this command is sent
+     * @return The invalidated command IDs
+     */
+    String[] invalidates() default {};
+    
+    /**
+     * Whether the command can safely be re-sent after a transport error
+     * @return true for idempotent commands
+     */
+    boolean idempotent() default false;
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.core.ApduResponse;
+import com.codingr.nfclib.hce.core.CardError;
+import com.codingr.nfclib.hce.core.ControllerFactory;
+import com.codingr.nfclib.hce.core.ControllerRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Factory for creating hosted card (server) implementations from schemas.
+ * Generates controllers that work with the existing ApduRouterService
+ * while providing schema-based structure and validation.
+ *
+ * <p>Controllers registered here are served by the router through the schema's
+ * compiled command index: the matched command goes straight to
+ * {@link SchemaBasedController#handleSchemaCommand}, with no proxy or reflection per APDU.</p>
+ */
+public class ServerFactory {
+    
+    /**
+     * Creates a hosted card controller from a schema and business logic handler.
+     * The controller can be registered with {@link #registerController(String, ControllerFactory)}
+     * or used directly.
+     * 
+     * @param schema The APDU protocol schema
+     * @param handler The business logic handler for processing commands
+     * @return A schema-based controller delegating to the handler
+     */
+    public static SchemaBasedController createServerController(ApduSchema schema, ServerCommandHandler handler) {
+        return new ConcreteSchemaController(schema, CompiledSchema.compile(schema), handler);
+    }
+    
+    /**
+     * Creates a concrete controller instance that extends SchemaBasedController.
+     * This approach allows for direct instantiation and more natural inheritance.
+     * 
+     * @param schema The APDU protocol schema
+     * @param handler The business logic handler
+     * @return A concrete controller instance
+     */
+    public static SchemaBasedController createConcreteController(ApduSchema schema, ServerCommandHandler handler) {
+        return createServerController(schema, handler);
+    }
+    
+    /**
+     * Registers a handler-backed card for every AID of the schema, served by one handler
+     * shared by all sessions. Use this only for handlers that keep no state between
+     * commands, such as a {@link #commandHandlers()} table of stateless handlers;
+     * otherwise use {@link #registerServer(ApduSchema, ServerCommandHandlerFactory)}.
+     * 
+     * @param schema The APDU protocol schema
+     * @param handler The business logic handler, shared by all sessions
+     */
+    public static void registerServer(ApduSchema schema, final ServerCommandHandler handler) {
+        registerServer(schema, new ServerCommandHandlerFactory() {
+            @Override
+            public ServerCommandHandler createHandler() {
+                return handler;
+            }
+        });
+    }
+    
+    /**
+     * Registers a handler-backed card for every AID of the schema. The schema is compiled
+     * once here; each session that selects one of the AIDs gets a fresh controller with
+     * its own handler, so state such as an authentication flag never leaks from one
+     * terminal or tap to the next.
+     * 
+     * @param schema The APDU protocol schema
+     * @param handlerFactory Creates the business logic handler of each session
+     */
+    public static void registerServer(final ApduSchema schema, final ServerCommandHandlerFactory handlerFactory) {
+        final CompiledSchema compiledSchema = CompiledSchema.compile(schema);
+        ControllerFactory factory = new ControllerFactory() {
+            @Override
+            public Object createController() {
+                return new ConcreteSchemaController(schema, compiledSchema, handlerFactory.createHandler());
+            }
+        };
+        for (String aid : schema.getSupportedAids()) {
+            ControllerRegistry.getDefault().register(aid, factory, compiledSchema);
+        }
+    }
+    
+    /**
+     * Registers a controller factory for an AID. Use this for SchemaBasedController
+     * subclasses that keep per-session state. The factory is called once here to compile
+     * the schema of its controllers, which every session then shares.
+     * 
+     * @param aid The AID as a hex string
+     * @param factory Creates one controller per session
+     * @throws IllegalArgumentException If the factory fails
+     */
+    public static void registerController(String aid, ControllerFactory factory) {
+        Object controller;
+        try {
+            controller = factory.createController();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Controller factory for AID " + aid + " failed", e);
+        }
+        CompiledSchema compiledSchema = controller instanceof SchemaBasedController
+                ? ((SchemaBasedController) controller).getCompiledSchema() : null;
+        ControllerRegistry.getDefault().register(aid, factory, compiledSchema);
+    }
+    
+    /**
+     * Registers a single controller instance for every AID of its schema.
+     * The same instance, and therefore the same state, serves every session.
+     * 
+     * @param controller The controller to register
+     */
+    public static void registerController(final SchemaBasedController controller) {
+        ControllerFactory factory = new ControllerFactory() {
+            @Override
+            public Object createController() {
+                return controller;
+            }
+        };
+        CompiledSchema compiledSchema = controller.getCompiledSchema();
+        for (String aid : controller.getSchema().getSupportedAids()) {
+            ControllerRegistry.getDefault().register(aid, factory, compiledSchema);
+        }
+    }
+    
+    /**
+     * Starts a handler that dispatches each command id to its own handler.
+     * 
+     * @return A builder for a per-command ServerCommandHandler
+     */
+    public static CommandHandlers.Builder commandHandlers() {
+        return new CommandHandlers.Builder();
+    }
+    
+    /**
+     * Interface for handling server-side command processing.
+     * Developers implement this to define their business logic.
+     */
+    public interface ServerCommandHandler {
+        /**
+         * Process a command with the given specification and raw bytes.
+         * 
+         * @param commandSpec The matched command specification from schema
+         * @param apduBytes The raw APDU command bytes
+         * @return The response data (status word will be added based on schema)
+         */
+        ServerResponse handleCommand(ApduCommandSpec commandSpec, byte[] apduBytes);
+    }
+    
+    /**
+     * Creates the handler of one session, see
+     * {@link #registerServer(ApduSchema, ServerCommandHandlerFactory)}.
+     */
+    public interface ServerCommandHandlerFactory {
+        ServerCommandHandler createHandler();
+    }
+    
+    /**
+     * Response from server command handler containing data and response specification.
+     */
+    public static class ServerResponse {
+        private final String responseId;
+        private final byte[] data;
+        private final ApduResponseSpec responseSpec;
+        
+        public ServerResponse(String responseId, byte[] data, ApduResponseSpec responseSpec) {
+            this.responseId = responseId;
+            this.data = data;
+            this.responseSpec = responseSpec;
+        }
+        
+        public String getResponseId() { return responseId; }
+        public byte[] getData() { return data; }
+        public ApduResponseSpec getResponseSpec() { return responseSpec; }
+    }
+    
+    /**
+     * Marker interface for generated server controllers
+     */
+    public interface ServerController {
+        ApduSchema getSchema();
+    }
+    
+    /**
+     * ServerCommandHandler that routes each command id to a dedicated handler.
+     * The routing table is built once; a lookup is a single hash map access.
+     */
+    public static class CommandHandlers implements ServerCommandHandler {
+        private final Map<String, ServerCommandHandler> handlers;
+        private final ServerCommandHandler fallback;
+        
+        private CommandHandlers(Builder builder) {
+            this.handlers = new HashMap<>(builder.handlers);
+            this.fallback = builder.fallback;
+        }
+        
+        @Override
+        public ServerResponse handleCommand(ApduCommandSpec commandSpec, byte[] apduBytes) {
+            ServerCommandHandler handler = handlers.get(commandSpec.getCommandId());
+            if (handler == null) {
+                handler = fallback;
+            }
+            return handler != null ? handler.handleCommand(commandSpec, apduBytes) : null;
+        }
+        
+        public static class Builder {
+            private final Map<String, ServerCommandHandler> handlers = new HashMap<>();
+            private ServerCommandHandler fallback;
+            
+            public Builder on(String commandId, ServerCommandHandler handler) {
+                handlers.put(commandId, handler);
+                return this;
+            }
+            
+            public Builder otherwise(ServerCommandHandler handler) {
+                this.fallback = handler;
+                return this;
+            }
+            
+            public CommandHandlers build() {
+                return new CommandHandlers(this);
+            }
+        }
+    }
+    
+    /**
+     * Concrete implementation of SchemaBasedController for direct use
+     */
+    private static class ConcreteSchemaController extends SchemaBasedController implements ServerController {
+        private final ServerCommandHandler handler;
+        
+        public ConcreteSchemaController(ApduSchema schema, CompiledSchema compiledSchema, ServerCommandHandler handler) {
+            super(schema, compiledSchema);
+            this.handler = handler;
+        }
+        
+        @Override
+        public ApduResponse handleSchemaCommand(ApduCommandSpec commandSpec, byte[] apduBytes) {
+            ServerResponse response = handler.handleCommand(commandSpec, apduBytes);
+            if (response == null) {
+                return error(CardError.INS_NOT_SUPPORTED);
+            }
+            return createSchemaResponse(response.getResponseSpec(), response.getData());
+        }
+    }
+}
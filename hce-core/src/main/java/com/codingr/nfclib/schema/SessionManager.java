@@ -0,0 +1,293 @@
+package com.codingr.nfclib.schema;
+
+import java.util.Arrays;
+
+/**
+ * Session layer over a {@link ClientFactory.GenericSchemaClient}.
+ *
+ * <p>The manager remembers which application is selected on which card. A SELECT for the
+ * application that is already selected on the same card is answered without a round trip,
+ * so multi-step and multi-AID flows only pay for real application switches. Cards are told
+ * apart by {@link ClientFactory.NfcTransport#getCardIdentifier()}; on transports that cannot
+ * identify cards every SELECT is sent. A card keeps its identifier across a re-tap, so the
+ * selection is also forgotten when {@link ClientFactory.NfcTransport#getLinkGeneration()}
+ * changes or the transport reports it is disconnected; the next command then re-selects
+ * the application first. After a transport error the session is marked
+ * broken; the next call reconnects the transport and re-selects the application before it
+ * proceeds. The failed call itself is not repeated, since its effect on the card is
+ * unknown.</p>
+ *
+ * <p>Like the client it wraps, a session manager is meant to be used by one thread at a time.</p>
+ */
+public final class SessionManager implements ClientFactory.GenericSchemaClient {
+
+    private final ClientFactory.NfcTransport transport;
+    private final ClientFactory.GenericSchemaClient client;
+
+    private String selectedAid;
+    private byte[] cardId;
+    private long linkGeneration = -1;
+    private boolean broken;
+    private String reselectAid;
+    private long sessionStart;
+
+    private long sessions;
+    private long selectsSent;
+    private long selectsSkipped;
+    private long reconnects;
+    private long failedReconnects;
+    private long commands;
+    private long commandNanos;
+    private long lastSessionNanos;
+
+    /**
+     * @param transport The transport used by {@code client}
+     * @param client The client performing the exchanges
+     */
+    public SessionManager(ClientFactory.NfcTransport transport, ClientFactory.GenericSchemaClient client) {
+        this.transport = transport;
+        this.client = client;
+    }
+
+    @Override
+    public ApduSchema getSchema() {
+        return client.getSchema();
+    }
+
+    @Override
+    public <T> T sendCommand(String commandId, byte[] data) throws ClientFactory.NfcCommunicationException {
+        restoreSession();
+        long start = System.nanoTime();
+        try {
+            return client.sendCommand(commandId, data);
+        } catch (ClientFactory.NfcCommunicationException e) {
+            markBroken();
+            throw e;
+        } finally {
+            commands++;
+            commandNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public <T> T sendCommand(ApduCommandSpec commandSpec, byte[] data) throws ClientFactory.NfcCommunicationException {
+        restoreSession();
+        long start = System.nanoTime();
+        try {
+            return client.sendCommand(commandSpec, data);
+        } catch (ClientFactory.NfcCommunicationException e) {
+            markBroken();
+            throw e;
+        } finally {
+            commands++;
+            commandNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Selects an application, skipping the SELECT if it is already selected on the card
+     * in the field and the transport identifies that card.
+     */
+    @Override
+    public boolean selectApplication(String aid) throws ClientFactory.NfcCommunicationException {
+        if (broken) {
+            reconnect();
+        }
+
+        byte[] currentCard = transport.getCardIdentifier();
+        if (sessionStart == 0 || !Arrays.equals(currentCard, cardId)) {
+            startSession(currentCard);
+        }
+        checkLink();
+        // Without an identifier another card looks the same
+        if (cardId != null && selectedAid != null && selectedAid.equalsIgnoreCase(aid)) {
+            selectsSkipped++;
+            return true;
+        }
+
+        boolean selected;
+        try {
+            selected = client.selectApplication(aid);
+        } catch (ClientFactory.NfcCommunicationException e) {
+            markBroken();
+            throw e;
+        }
+        selectsSent++;
+        selectedAid = selected ? aid : null;
+        linkGeneration = transport.getLinkGeneration();
+        return selected;
+    }
+
+    /**
+     * Forgets the selected application, so the next SELECT is sent even for the same AID.
+     */
+    public void invalidateSelection() {
+        selectedAid = null;
+    }
+
+    /**
+     * @return The AID selected in the current session, or null
+     */
+    public String getSelectedAid() {
+        return selectedAid;
+    }
+
+    @Override
+    public void disconnect() {
+        endSession();
+        broken = false;
+        reselectAid = null;
+        client.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    @Override
+    public void beginTransaction() {
+        client.beginTransaction();
+    }
+
+    @Override
+    public void endTransaction() {
+        client.endTransaction();
+    }
+
+    public SessionStats getStats() {
+        long current = sessionStart != 0 ? System.nanoTime() - sessionStart : 0;
+        return new SessionStats(sessions, selectsSent, selectsSkipped, reconnects, failedReconnects,
+                commands, commandNanos, current, lastSessionNanos);
+    }
+
+    private void restoreSession() throws ClientFactory.NfcCommunicationException {
+        String aid;
+        if (broken) {
+            aid = reselectAid;
+            reconnect();
+        } else {
+            aid = selectedAid;
+            checkLink();
+            if (aid == null || selectedAid != null) {
+                return;
+            }
+        }
+        if (aid != null) {
+            boolean selected;
+            try {
+                selected = client.selectApplication(aid);
+            } catch (ClientFactory.NfcCommunicationException e) {
+                reselectAid = aid;
+                broken = true;
+                throw e;
+            }
+            selectsSent++;
+            if (!selected) {
+                throw new ClientFactory.NfcCommunicationException("Re-select failed for AID " + aid);
+            }
+            selectedAid = aid;
+            linkGeneration = transport.getLinkGeneration();
+        }
+    }
+
+    /**
+     * Forgets the selected application if the link to the card went down or was
+     * re-established since the SELECT: a card keeps its identifier across a re-tap or
+     * field reset, but not its selection.
+     */
+    private void checkLink() {
+        long generation = transport.getLinkGeneration();
+        if (generation != linkGeneration || !transport.isConnected()) {
+            selectedAid = null;
+            linkGeneration = generation;
+        }
+    }
+
+    /**
+     * Called on a transport error: the card's state is unknown until the next call
+     * reconnects and re-selects.
+     */
+    private void markBroken() {
+        if (selectedAid != null) {
+            reselectAid = selectedAid;
+        }
+        selectedAid = null;
+        broken = true;
+    }
+
+    private void reconnect() throws ClientFactory.NfcCommunicationException {
+        reconnects++;
+        selectedAid = null;
+        reselectAid = null;
+        if (!transport.reconnect()) {
+            failedReconnects++;
+            endSession();
+            throw new ClientFactory.NfcCommunicationException("Reconnect failed");
+        }
+        broken = false;
+        linkGeneration = transport.getLinkGeneration();
+        byte[] currentCard = transport.getCardIdentifier();
+        if (!Arrays.equals(currentCard, cardId)) {
+            startSession(currentCard);
+        }
+    }
+
+    private void startSession(byte[] currentCard) {
+        endSession();
+        cardId = currentCard;
+        sessionStart = System.nanoTime();
+        sessions++;
+    }
+
+    private void endSession() {
+        if (sessionStart != 0) {
+            lastSessionNanos = System.nanoTime() - sessionStart;
+            sessionStart = 0;
+        }
+        selectedAid = null;
+        cardId = null;
+    }
+
+    /**
+     * Point-in-time view of a session manager's counters.
+     */
+    public static final class SessionStats {
+        private final long sessions;
+        private final long selectsSent;
+        private final long selectsSkipped;
+        private final long reconnects;
+        private final long failedReconnects;
+        private final long commands;
+        private final long commandNanos;
+        private final long currentSessionNanos;
+        private final long lastSessionNanos;
+
+        SessionStats(long sessions, long selectsSent, long selectsSkipped, long reconnects, long failedReconnects,
+                     long commands, long commandNanos, long currentSessionNanos, long lastSessionNanos) {
+            this.sessions = sessions;
+            this.selectsSent = selectsSent;
+            this.selectsSkipped = selectsSkipped;
+            this.reconnects = reconnects;
+            this.failedReconnects = failedReconnects;
+            this.commands = commands;
+            this.commandNanos = commandNanos;
+            this.currentSessionNanos = currentSessionNanos;
+            this.lastSessionNanos = lastSessionNanos;
+        }
+
+        public long getSessions() { return sessions; }
+        public long getSelectsSent() { return selectsSent; }
+        public long getSelectsSkipped() { return selectsSkipped; }
+        public long getReconnects() { return reconnects; }
+        public long getFailedReconnects() { return failedReconnects; }
+        public long getCommands() { return commands; }
+        public long getCommandNanos() { return commandNanos; }
+
+        /**
+         * @return Time since the current session started, 0 if none is active
+         */
+        public long getCurrentSessionNanos() { return currentSessionNanos; }
+        public long getLastSessionNanos() { return lastSessionNanos; }
+    }
+}
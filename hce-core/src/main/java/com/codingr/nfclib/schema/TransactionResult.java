@@ -0,0 +1,95 @@
+package com.codingr.nfclib.schema;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregated outcome of a {@link TransactionScript} run: every executed step with its
+ * raw response, resolved response specification and round-trip time.
+ */
+public final class TransactionResult {
+
+    private final boolean completed;
+    private final List<StepResult> steps;
+    private final long totalNanos;
+    private final ClientFactory.NfcCommunicationException error;
+
+    TransactionResult(boolean completed, List<StepResult> steps, long totalNanos,
+                      ClientFactory.NfcCommunicationException error) {
+        this.completed = completed;
+        this.steps = Collections.unmodifiableList(steps);
+        this.totalNanos = totalNanos;
+        this.error = error;
+    }
+
+    /**
+     * @return true if the script reached its end, false if it aborted or failed
+     */
+    public boolean isCompleted() { return completed; }
+    public List<StepResult> getSteps() { return steps; }
+    public long getTotalNanos() { return totalNanos; }
+
+    /**
+     * @return The transport error that stopped the transaction, or null
+     */
+    public ClientFactory.NfcCommunicationException getError() { return error; }
+
+    /**
+     * @return The last executed step, or null if none was executed
+     */
+    public StepResult getLastStep() {
+        return steps.isEmpty() ? null : steps.get(steps.size() - 1);
+    }
+
+    /**
+     * @return The result of the last execution of a command, or null if it did not run
+     */
+    public StepResult getStep(String commandId) {
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            if (steps.get(i).getName().equals(commandId)) {
+                return steps.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Outcome of one executed step.
+     */
+    public static final class StepResult {
+        private final String name;
+        private final ApduCommandSpec commandSpec;
+        private final ApduResponseSpec responseSpec;
+        private final byte[] response;
+        private final int statusWord;
+        private final long nanos;
+
+        StepResult(String name, ApduCommandSpec commandSpec, ApduResponseSpec responseSpec,
+                   byte[] response, int statusWord, long nanos) {
+            this.name = name;
+            this.commandSpec = commandSpec;
+            this.responseSpec = responseSpec;
+            this.response = response;
+            this.statusWord = statusWord;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The command id, or "SELECT &lt;aid&gt;" for SELECT steps
+         */
+        public String getName() { return name; }
+
+        /**
+         * @return The command specification, null for SELECT steps
+         */
+        public ApduCommandSpec getCommandSpec() { return commandSpec; }
+
+        /**
+         * @return The matched response specification, null if none matched
+         */
+        public ApduResponseSpec getResponseSpec() { return responseSpec; }
+        public byte[] getResponse() { return response; }
+        public int getStatusWord() { return statusWord; }
+        public long getNanos() { return nanos; }
+    }
+}
@@ -0,0 +1,402 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fixed terminal transaction (e.g. SELECT, AUTHENTICATE, GET_DATA, UPDATE_RECORD)
+ * compiled once into prebuilt APDUs and a branch table.
+ *
+ * <p>Running a script performs no schema lookups and builds no APDUs: each step sends
+ * its template, resolves the response through a precompiled {@link CommandValidator}
+ * and picks the next step from the status word. Scripts are immutable and can be run
+ * concurrently on different transports.</p>
+ *
+ * <pre>
+ * TransactionScript script = ClientFactory.transactionScript(schema)
+ *     .select("F0010203040506")
+ *     .command(SampleCardSchema.AUTHENTICATE, pin).onStatus(0x6A80, TransactionScript.ABORT)
+ *     .command(SampleCardSchema.GET_DATA)
+ *     .build();
+ * TransactionResult result = ClientFactory.runScript(script, transport);
+ * </pre>
+ *
+ * <p>Like a client, a step follows {@code 61xx} with GET RESPONSE and repeats its command
+ * with the card's Le on {@code 6Cxx}; the step's response is the complete data with the
+ * final status word. By default a step continues with the next one on {@code 9000} and
+ * aborts the transaction on any other status word; {@link Builder#onStatus} and
+ * {@link Builder#otherwise} override this per step.</p>
+ */
+public final class TransactionScript {
+
+    /** Branch target that ends the transaction successfully */
+    public static final String END = "$end";
+
+    /** Branch target that ends the transaction as failed */
+    public static final String ABORT = "$abort";
+
+    static final int END_INDEX = -1;
+    static final int ABORT_INDEX = -2;
+
+    private static final byte[] SELECT_HEADER = {(byte) 0x00, (byte) 0xA4, (byte) 0x04, (byte) 0x00};
+    private static final int MAX_RESPONSE_CHUNKS = 64;
+    private static final int MAX_RESPONSE_LENGTH = 65536;
+
+    private final ApduSchema schema;
+    private final Step[] steps;
+    private final int maxExecutedSteps;
+
+    private TransactionScript(ApduSchema schema, Step[] steps, int maxExecutedSteps) {
+        this.schema = schema;
+        this.steps = steps;
+        this.maxExecutedSteps = maxExecutedSteps;
+    }
+
+    public ApduSchema getSchema() {
+        return schema;
+    }
+
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    Step getStep(int index) {
+        return steps[index];
+    }
+
+    int getMaxExecutedSteps() {
+        return maxExecutedSteps;
+    }
+
+    /**
+     * Runs the script on a transport.
+     *
+     * @param transport The transport to the card
+     * @param parameters Values for parameterised steps, by parameter index
+     * @return The aggregated result of the executed steps
+     * @throws IllegalArgumentException If a parameter does not fit its command's data length
+     */
+    public TransactionResult run(ClientFactory.NfcTransport transport, byte[]... parameters) {
+        List<TransactionResult.StepResult> results = new ArrayList<>(steps.length);
+        long start = System.nanoTime();
+        int index = 0;
+        int executed = 0;
+        while (index >= 0) {
+            if (executed++ == maxExecutedSteps) {
+                return new TransactionResult(false, results, System.nanoTime() - start,
+                        new ClientFactory.NfcCommunicationException("Transaction exceeded " + maxExecutedSteps + " steps"));
+            }
+            Step step = steps[index];
+            byte[] apdu = step.apduFor(parameters);
+            byte[] response;
+            long stepStart = System.nanoTime();
+            try {
+                response = exchange(transport, apdu);
+            } catch (ClientFactory.NfcCommunicationException e) {
+                return new TransactionResult(false, results, System.nanoTime() - start, e);
+            }
+            long stepNanos = System.nanoTime() - stepStart;
+
+            int sw = response.length >= 2
+                    ? ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF)
+                    : 0;
+            ApduResponseSpec responseSpec = step.resolveResponse(sw, response.length - 2);
+            results.add(new TransactionResult.StepResult(step.name, step.commandSpec, responseSpec, response, sw, stepNanos));
+            index = step.next(sw, index);
+        }
+        return new TransactionResult(index == END_INDEX, results, System.nanoTime() - start, null);
+    }
+
+    /**
+     * Sends an APDU and follows 6Cxx and 61xx until the card returns a final status word.
+     *
+     * @return The complete response data and the final status word
+     */
+    private static byte[] exchange(ClientFactory.NfcTransport transport, byte[] apdu)
+            throws ClientFactory.NfcCommunicationException {
+        byte[] response = transport.transmit(apdu);
+        if (response.length == 2 && response[0] == 0x6C) {
+            response = transport.transmit(ClientFactory.withLe(apdu, response[1]));
+        }
+        if (response.length < 2 || response[response.length - 2] != 0x61) {
+            return response;
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int chunks = 1;
+        while (response.length >= 2 && response[response.length - 2] == 0x61) {
+            if (chunks++ == MAX_RESPONSE_CHUNKS) {
+                throw new ClientFactory.NfcCommunicationException("Response exceeds " + MAX_RESPONSE_CHUNKS + " chunks");
+            }
+            data.write(response, 0, response.length - 2);
+            if (data.size() > MAX_RESPONSE_LENGTH) {
+                throw new ClientFactory.NfcCommunicationException("Response exceeds " + MAX_RESPONSE_LENGTH + " bytes");
+            }
+            // GET RESPONSE on the command's logical channel
+            response = transport.transmit(new byte[]{(byte) (apdu[0] & 0x03), (byte) 0xC0, 0x00, 0x00,
+                    response[response.length - 1]});
+        }
+        data.write(response, 0, response.length);
+        return data.toByteArray();
+    }
+
+    /**
+     * Encodes a command without Le: a case 1 command without data, a case 3 command with
+     * a short Lc otherwise.
+     *
+     * @throws IllegalArgumentException If the data length is outside the command's limits
+     */
+    static byte[] encode(ApduCommandSpec spec, byte[] data) {
+        int length = data != null ? data.length : 0;
+        Integer min = spec.getMinDataLength();
+        Integer max = spec.getMaxDataLength();
+        if ((min != null && length < min) || (max != null && length > max) || length > 0xFF) {
+            throw new IllegalArgumentException(spec.getCommandId() + " takes " + (min != null ? min : 0) + " to "
+                    + Math.min(max != null ? max : 0xFF, 0xFF) + " bytes of data, got " + length);
+        }
+        byte[] prefix = spec.getCommandPrefix();
+        if (length == 0) {
+            return prefix;
+        }
+        byte[] apdu = new byte[prefix.length + 1 + length];
+        System.arraycopy(prefix, 0, apdu, 0, prefix.length);
+        apdu[prefix.length] = (byte) length;
+        System.arraycopy(data, 0, apdu, prefix.length + 1, length);
+        return apdu;
+    }
+
+    /**
+     * A compiled step: the APDU template and its branch table.
+     */
+    static final class Step {
+        final String name;
+        final ApduCommandSpec commandSpec;
+        final CommandValidator validator;
+        final byte[] apdu;
+        final int parameterIndex;
+        final int[] branchStatusWords;
+        final int[] branchTargets;
+        final int otherwiseTarget;
+        final int successTarget;
+
+        Step(String name, ApduCommandSpec commandSpec, byte[] apdu, int parameterIndex,
+             int[] branchStatusWords, int[] branchTargets, int otherwiseTarget, int successTarget) {
+            this.name = name;
+            this.commandSpec = commandSpec;
+            this.validator = commandSpec != null ? new CommandValidator(commandSpec) : null;
+            this.apdu = apdu;
+            this.parameterIndex = parameterIndex;
+            this.branchStatusWords = branchStatusWords;
+            this.branchTargets = branchTargets;
+            this.otherwiseTarget = otherwiseTarget;
+            this.successTarget = successTarget;
+        }
+
+        byte[] apduFor(byte[][] parameters) {
+            if (parameterIndex < 0) {
+                return apdu;
+            }
+            return encode(commandSpec, parameters[parameterIndex]);
+        }
+
+        ApduResponseSpec resolveResponse(int sw, int dataLength) {
+            if (validator == null || dataLength < 0) {
+                return null;
+            }
+            int responseIndex = validator.findResponse(sw, dataLength);
+            return responseIndex >= 0 ? commandSpec.getPossibleResponses().get(responseIndex) : null;
+        }
+
+        int next(int sw, int current) {
+            for (int i = 0; i < branchStatusWords.length; i++) {
+                if (branchStatusWords[i] == sw) {
+                    return branchTargets[i];
+                }
+            }
+            if (sw == 0x9000) {
+                return successTarget;
+            }
+            return otherwiseTarget;
+        }
+    }
+
+    /**
+     * Builder that records steps and compiles them on {@link #build()}.
+     */
+    public static class Builder {
+        private final ApduSchema schema;
+        private final List<PendingStep> steps = new ArrayList<>();
+        private final Map<String, Integer> labels = new HashMap<>();
+        private int maxExecutedSteps = 64;
+
+        public Builder(ApduSchema schema) {
+            this.schema = schema;
+        }
+
+        /**
+         * Names the next step so branches can jump to it.
+         */
+        public Builder label(String label) {
+            if (labels.put(label, steps.size()) != null) {
+                throw new IllegalArgumentException("Duplicate label: " + label);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a SELECT by AID. The AID must be supported by the schema.
+         */
+        public Builder select(String aid) {
+            boolean supported = false;
+            for (String supportedAid : schema.getSupportedAids()) {
+                if (supportedAid.equalsIgnoreCase(aid)) {
+                    supported = true;
+                    break;
+                }
+            }
+            if (!supported) {
+                throw new IllegalArgumentException("AID not supported by schema: " + aid);
+            }
+            byte[] aidBytes = ApduUtil.hexStringToByteArray(aid);
+            byte[] apdu = new byte[5 + aidBytes.length];
+            System.arraycopy(SELECT_HEADER, 0, apdu, 0, 4);
+            apdu[4] = (byte) aidBytes.length;
+            System.arraycopy(aidBytes, 0, apdu, 5, aidBytes.length);
+            steps.add(new PendingStep("SELECT " + aid, null, apdu, -1));
+            return this;
+        }
+
+        /**
+         * Adds a command without data.
+         */
+        public Builder command(String commandId) {
+            return command(commandId, null);
+        }
+
+        /**
+         * Adds a command with fixed data, encoded once into the step's APDU.
+         *
+         * @throws IllegalArgumentException If the data length is outside the command's limits
+         */
+        public Builder command(String commandId, byte[] data) {
+            ApduCommandSpec spec = requireCommand(commandId);
+            steps.add(new PendingStep(commandId, spec, encode(spec, data), -1));
+            return this;
+        }
+
+        /**
+         * Adds a command whose data is supplied per run, as
+         * {@code parameters[parameterIndex]} of {@link TransactionScript#run}.
+         */
+        public Builder commandWithParameter(String commandId, int parameterIndex) {
+            ApduCommandSpec spec = requireCommand(commandId);
+            steps.add(new PendingStep(commandId, spec, spec.getCommandPrefix(), parameterIndex));
+            return this;
+        }
+
+        /**
+         * Jumps to {@code target} when the last added step answers with {@code statusWord}.
+         *
+         * @param statusWord The status word, e.g. 0x6982
+         * @param target A label, {@link #END} or {@link #ABORT}
+         */
+        public Builder onStatus(int statusWord, String target) {
+            lastStep().branches.put(statusWord, target);
+            return this;
+        }
+
+        /**
+         * Jumps to {@code target} when the last added step answers with an error status
+         * not covered by {@link #onStatus}. The default is {@link #ABORT}.
+         */
+        public Builder otherwise(String target) {
+            lastStep().otherwise = target;
+            return this;
+        }
+
+        /**
+         * Jumps to {@code target} when the last added step succeeds, instead of continuing
+         * with the next step.
+         */
+        public Builder onSuccess(String target) {
+            lastStep().success = target;
+            return this;
+        }
+
+        /**
+         * Bounds the number of executed steps, protecting against branch loops. Default 64.
+         */
+        public Builder maxExecutedSteps(int maxExecutedSteps) {
+            this.maxExecutedSteps = maxExecutedSteps;
+            return this;
+        }
+
+        public TransactionScript build() {
+            if (steps.isEmpty()) {
+                throw new IllegalStateException("Transaction script has no steps");
+            }
+            Step[] compiled = new Step[steps.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                PendingStep pending = steps.get(i);
+                int[] statusWords = new int[pending.branches.size()];
+                int[] targets = new int[statusWords.length];
+                int b = 0;
+                for (Map.Entry<Integer, String> branch : pending.branches.entrySet()) {
+                    statusWords[b] = branch.getKey();
+                    targets[b++] = resolve(branch.getValue());
+                }
+                int success = pending.success != null ? resolve(pending.success)
+                        : (i + 1 < compiled.length ? i + 1 : END_INDEX);
+                compiled[i] = new Step(pending.name, pending.spec, pending.apdu, pending.parameterIndex,
+                        statusWords, targets, resolve(pending.otherwise), success);
+            }
+            return new TransactionScript(schema, compiled, maxExecutedSteps);
+        }
+
+        private int resolve(String target) {
+            if (END.equals(target)) return END_INDEX;
+            if (ABORT.equals(target)) return ABORT_INDEX;
+            Integer index = labels.get(target);
+            if (index == null || index >= steps.size()) {
+                throw new IllegalStateException("Unknown branch target: " + target);
+            }
+            return index;
+        }
+
+        private ApduCommandSpec requireCommand(String commandId) {
+            ApduCommandSpec spec = schema.getCommand(commandId);
+            if (spec == null) {
+                throw new IllegalArgumentException("Command not found in schema: " + commandId);
+            }
+            return spec;
+        }
+
+        private PendingStep lastStep() {
+            if (steps.isEmpty()) {
+                throw new IllegalStateException("No step to attach the branch to");
+            }
+            return steps.get(steps.size() - 1);
+        }
+    }
+
+    private static final class PendingStep {
+        final String name;
+        final ApduCommandSpec spec;
+        final byte[] apdu;
+        final int parameterIndex;
+        final Map<Integer, String> branches = new HashMap<>();
+        String otherwise = ABORT;
+        String success;
+
+        PendingStep(String name, ApduCommandSpec spec, byte[] apdu, int parameterIndex) {
+            this.name = name;
+            this.spec = spec;
+            this.apdu = apdu;
+            this.parameterIndex = parameterIndex;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.codingr.nfclib.schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-owner executor for an {@link ClientFactory.NfcTransport}.
+ *
+ * <p>One dedicated thread owns the transport and runs exchanges strictly in FIFO order,
+ * so callers on UI or network threads never block on the RF round trip and never contend
+ * for the transport. The queue is bounded: once full, new requests fail immediately with
+ * a {@link RejectedExecutionException} instead of piling up behind a slow card.</p>
+ *
+ * <p>Create one executor per transport and share it between all async clients of
+ * that transport.</p>
+ */
+public final class TransportExecutor {
+
+    /**
+     * Work executed on the transport thread.
+     */
+    public interface TransportTask<T> {
+        T run(ClientFactory.NfcTransport transport) throws Exception;
+    }
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ClientFactory.NfcTransport transport;
+    private final BlockingQueue<Pending<?>> queue;
+    private final Thread worker;
+    private volatile boolean shutdown;
+
+    /**
+     * @param transport The transport this executor owns
+     * @param maxQueued Maximum number of requests waiting behind the one in flight
+     */
+    public TransportExecutor(ClientFactory.NfcTransport transport, int maxQueued) {
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "nfc-transport-" + THREAD_COUNT.incrementAndGet());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public ClientFactory.NfcTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return The number of requests waiting to be executed
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Queues a task. Cancelling the returned future before the task starts removes
+     * it from the line; a running exchange is always completed.
+     *
+     * @param task The work to run on the transport thread
+     * @return A future completed with the task's result or failure
+     */
+    public <T> CompletableFuture<T> submit(TransportTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (shutdown) {
+            future.completeExceptionally(new RejectedExecutionException("Transport executor is shut down"));
+        } else if (!queue.offer(new Pending<>(task, future))) {
+            future.completeExceptionally(new RejectedExecutionException(
+                    "Transport queue is full (" + (queue.size() + queue.remainingCapacity()) + " requests)"));
+        }
+        return future;
+    }
+
+    /**
+     * Fails every queued request, e.g. when the card leaves the field.
+     * The exchange currently in flight, if any, is not affected.
+     *
+     * @param cause The failure reported to the cancelled requests
+     * @return The number of cancelled requests
+     */
+    public int cancelPending(Throwable cause) {
+        List<Pending<?>> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        int cancelled = 0;
+        for (Pending<?> pending : drained) {
+            if (pending.future.completeExceptionally(cause)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Stops the transport thread after failing all queued requests.
+     */
+    public void shutdown() {
+        shutdown = true;
+        cancelPending(new RejectedExecutionException("Transport executor is shut down"));
+        worker.interrupt();
+    }
+
+    private void runLoop() {
+        while (!shutdown) {
+            Pending<?> pending;
+            try {
+                pending = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.execute(transport);
+        }
+    }
+
+    private static final class Pending<T> {
+        final TransportTask<T> task;
+        final CompletableFuture<T> future;
+
+        Pending(TransportTask<T> task, CompletableFuture<T> future) {
+            this.task = task;
+            this.future = future;
+        }
+
+        void execute(ClientFactory.NfcTransport transport) {
+            if (future.isDone()) {
+                return; // cancelled while queued
+            }
+            try {
+                future.complete(task.run(transport));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.codingr.nfclib.schema.examples;
 
 import com.codingr.nfclib.schema.*;
+import com.codingr.nfclib.schema.layout.FieldType;
+import com.codingr.nfclib.schema.layout.PayloadField;
+import com.codingr.nfclib.schema.layout.PayloadLayout;
 import com.codingr.nfclib.hce.annotations.ApduController;
 import com.codingr.nfclib.hce.util.ApduUtil;
 
@@ -18,6 +21,11 @@ public class SampleCardSchema extends BaseApduSchema<SampleCardSchema.Commands>
     public static final String SCHEMA_NAME = "SampleCard";
     public static final String SCHEMA_VERSION = "1.0";
     
+    // Command IDs
+    public static final String GET_DATA = "GET_DATA";
+    public static final String AUTHENTICATE = "AUTHENTICATE";
+    public static final String UPDATE_RECORD = "UPDATE_RECORD";
+    
     // Response IDs
     public static final String SUCCESS = "SUCCESS";
     public static final String AUTH_REQUIRED = "AUTH_REQUIRED";
@@ -64,8 +72,12 @@ public class SampleCardSchema extends BaseApduSchema<SampleCardSchema.Commands>
         p1 = 0x00,
         p2 = 0x00,
         minDataLength = 0,
-        maxDataLength = 0
+        maxDataLength = 0,
+        cacheTtlMillis = 30000
     )
+    @PayloadLayout(response = {
+        @PayloadField(name = "data", type = FieldType.BYTES)
+    })
     public List<ApduResponseSpec> createGetDataCommand() {
         return Arrays.asList(
             new ApduResponseSpec.Builder(SUCCESS, ApduUtil.SW_OK)
@@ -90,6 +102,9 @@ public class SampleCardSchema extends BaseApduSchema<SampleCardSchema.Commands>
         minDataLength = 4,
         maxDataLength = 16
     )
+    @PayloadLayout(command = {
+        @PayloadField(name = "pin", type = FieldType.BYTES)
+    })
     public List<ApduResponseSpec> createAuthenticateCommand() {
         return Arrays.asList(
             new ApduResponseSpec.Builder(SUCCESS, ApduUtil.SW_OK)
@@ -111,8 +126,12 @@ public class SampleCardSchema extends BaseApduSchema<SampleCardSchema.Commands>
         description = "Updates a record on the card",
         p1 = 0x00,
         minDataLength = 1,
-        maxDataLength = 255
+        maxDataLength = 255,
+        invalidates = {"GET_DATA"}
     )
+    @PayloadLayout(command = {
+        @PayloadField(name = "record", type = FieldType.BYTES)
+    })
     public List<ApduResponseSpec> createUpdateRecordCommand() {
         return Arrays.asList(
             new ApduResponseSpec.Builder(SUCCESS, ApduUtil.SW_OK)
@@ -3,6 +3,8 @@ package com.codingr.nfclib.schema.examples;
 import com.codingr.nfclib.schema.ApduCommandSpec;
 import com.codingr.nfclib.schema.ApduResponseSpec;
 import com.codingr.nfclib.schema.ClientFactory;
+import com.codingr.nfclib.schema.TransactionResult;
+import com.codingr.nfclib.schema.TransactionScript;
 
 /**
  * Example showing how to create NFC terminal client implementations
@@ -245,6 +247,17 @@ public class SampleClientUsage {
             GetDataResponse typedDataResult = typedClient.getData();
             UpdateResponse typedUpdateResult = typedClient.updateRecord("Updated data".getBytes());
             
+            // Approach 3: Transaction script compiled once, run per tap
+            TransactionScript script = ClientFactory.transactionScript(schema)
+                .select("F0010203040506")
+                .commandWithParameter(SampleCardSchema.AUTHENTICATE, 0)
+                .onStatus(0x6A80, TransactionScript.ABORT)
+                .command(SampleCardSchema.GET_DATA)
+                .build();
+            TransactionResult result = ClientFactory.runScript(script, transport, "1234".getBytes());
+            System.out.println("Transaction completed: " + result.isCompleted()
+                + " in " + result.getTotalNanos() / 1000 + " us");
+            
             // Clean up
             genericClient.disconnect();
             typedClient.disconnect();
@@ -4,6 +4,7 @@ import com.codingr.nfclib.hce.annotations.ApduController;
 import com.codingr.nfclib.hce.annotations.ApduMapping;
 import com.codingr.nfclib.hce.core.ApduResponse;
 import com.codingr.nfclib.schema.ApduCommandSpec;
+import com.codingr.nfclib.schema.ApduResponseSpec;
 import com.codingr.nfclib.schema.SchemaBasedController;
 import com.codingr.nfclib.schema.ServerFactory;
 
@@ -77,7 +78,7 @@ public class SampleServerUsage {
         private ApduResponse handleGetData(ApduCommandSpec commandSpec, byte[] apduBytes) {
             if (!isAuthenticated) {
                 // Find the "NOT_AUTHENTICATED" response spec from the command
-                var responseSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec responseSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.NOT_AUTHENTICATED))
                     .findFirst().orElse(null);
                 
@@ -85,7 +86,7 @@ public class SampleServerUsage {
             }
             
             // Return user data
-            var successSpec = commandSpec.getPossibleResponses().stream()
+            ApduResponseSpec successSpec = commandSpec.getPossibleResponses().stream()
                 .filter(r -> r.getResponseId().equals(SampleCardSchema.SUCCESS))
                 .findFirst().orElse(null);
             
@@ -95,7 +96,7 @@ public class SampleServerUsage {
         private ApduResponse handleAuthenticate(ApduCommandSpec commandSpec, byte[] apduBytes) {
             // Extract PIN from APDU (skip header: CLA INS P1 P2 LC)
             if (apduBytes.length < 6) {
-                var errorSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec errorSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.INVALID_DATA))
                     .findFirst().orElse(null);
                 return createSchemaResponse(errorSpec, null);
@@ -109,12 +110,12 @@ public class SampleServerUsage {
             String pinString = new String(pin);
             if ("1234".equals(pinString)) {
                 isAuthenticated = true;
-                var successSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec successSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.SUCCESS))
                     .findFirst().orElse(null);
                 return createSchemaResponse(successSpec, null);
             } else {
-                var errorSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec errorSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.INVALID_DATA))
                     .findFirst().orElse(null);
                 return createSchemaResponse(errorSpec, null);
@@ -123,7 +124,7 @@ public class SampleServerUsage {
         
         private ApduResponse handleUpdateRecord(ApduCommandSpec commandSpec, byte[] apduBytes) {
             if (!isAuthenticated) {
-                var errorSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec errorSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.NOT_AUTHENTICATED))
                     .findFirst().orElse(null);
                 return createSchemaResponse(errorSpec, null);
@@ -131,7 +132,7 @@ public class SampleServerUsage {
             
             // Extract new data from APDU
             if (apduBytes.length < 6) {
-                var errorSpec = commandSpec.getPossibleResponses().stream()
+                ApduResponseSpec errorSpec = commandSpec.getPossibleResponses().stream()
                     .filter(r -> r.getResponseId().equals(SampleCardSchema.INVALID_DATA))
                     .findFirst().orElse(null);
                 return createSchemaResponse(errorSpec, null);
@@ -144,7 +145,7 @@ public class SampleServerUsage {
             // Update the user data
             userData = new String(newData);
             
-            var successSpec = commandSpec.getPossibleResponses().stream()
+            ApduResponseSpec successSpec = commandSpec.getPossibleResponses().stream()
                 .filter(r -> r.getResponseId().equals(SampleCardSchema.SUCCESS))
                 .findFirst().orElse(null);
             return createSchemaResponse(successSpec, null);
@@ -154,6 +155,7 @@ public class SampleServerUsage {
     /**
      * Example 2: Using ServerFactory with handler pattern
      * This approach uses a factory to generate the controller with a handler.
+     * The handler keeps per-session state, so each session needs its own instance.
      */
     public static class SampleServerHandler implements ServerFactory.ServerCommandHandler {
         
@@ -181,18 +183,18 @@ public class SampleServerUsage {
         
         private ServerFactory.ServerResponse handleGetData(ApduCommandSpec commandSpec, byte[] apduBytes) {
             if (!isAuthenticated) {
-                var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.NOT_AUTHENTICATED);
+                ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.NOT_AUTHENTICATED);
                 return new ServerFactory.ServerResponse(SampleCardSchema.NOT_AUTHENTICATED, null, responseSpec);
             }
             
-            var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
+            ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
             return new ServerFactory.ServerResponse(SampleCardSchema.SUCCESS, userData.getBytes(), responseSpec);
         }
         
         private ServerFactory.ServerResponse handleAuthenticate(ApduCommandSpec commandSpec, byte[] apduBytes) {
             // Extract and validate PIN
             if (apduBytes.length < 6) {
-                var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.INVALID_DATA);
+                ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.INVALID_DATA);
                 return new ServerFactory.ServerResponse(SampleCardSchema.INVALID_DATA, null, responseSpec);
             }
             
@@ -202,17 +204,17 @@ public class SampleServerUsage {
             
             if ("1234".equals(new String(pin))) {
                 isAuthenticated = true;
-                var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
+                ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
                 return new ServerFactory.ServerResponse(SampleCardSchema.SUCCESS, null, responseSpec);
             } else {
-                var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.INVALID_DATA);
+                ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.INVALID_DATA);
                 return new ServerFactory.ServerResponse(SampleCardSchema.INVALID_DATA, null, responseSpec);
             }
         }
         
         private ServerFactory.ServerResponse handleUpdateRecord(ApduCommandSpec commandSpec, byte[] apduBytes) {
             if (!isAuthenticated) {
-                var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.NOT_AUTHENTICATED);
+                ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.NOT_AUTHENTICATED);
                 return new ServerFactory.ServerResponse(SampleCardSchema.NOT_AUTHENTICATED, null, responseSpec);
             }
             
@@ -222,11 +224,11 @@ public class SampleServerUsage {
             System.arraycopy(apduBytes, 5, newData, 0, dataLength);
             userData = new String(newData);
             
-            var responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
+            ApduResponseSpec responseSpec = findResponseSpec(commandSpec, SampleCardSchema.SUCCESS);
             return new ServerFactory.ServerResponse(SampleCardSchema.SUCCESS, null, responseSpec);
         }
         
-        private com.codingr.nfclib.schema.ApduResponseSpec findResponseSpec(ApduCommandSpec commandSpec, String responseId) {
+        private ApduResponseSpec findResponseSpec(ApduCommandSpec commandSpec, String responseId) {
             return commandSpec.getPossibleResponses().stream()
                 .filter(r -> r.getResponseId().equals(responseId))
                 .findFirst()
@@ -250,4 +252,15 @@ public class SampleServerUsage {
         // The schema provides structure and validation while developers retain full control
         // over business logic implementation
     }
+    
+    /**
+     * How to serve the factory-based card from ApduRouterService.
+     * Call once at application start-up, e.g. from Application.onCreate().
+     */
+    public static void registerWithRouter() {
+        // SampleServerHandler remembers whether the terminal authenticated, so every
+        // session gets its own handler. A table of stateless handlers built with
+        // ServerFactory.commandHandlers() could be shared instead.
+        ServerFactory.registerServer(new SampleCardSchema(), SampleServerHandler::new);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.codingr.nfclib.schema.layout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runtime description of a payload field, attached to command specifications.
+ * Built from {@link PayloadField} annotations or directly for hand-written schemas.
+ */
+public class FieldSpec {
+
+    private final String name;
+    private final FieldType type;
+    private final int length;
+    private final int tag;
+
+    public FieldSpec(String name, FieldType type, int length, int tag) {
+        this.name = name;
+        this.type = type;
+        this.length = length;
+        this.tag = tag;
+    }
+
+    public static FieldSpec uint8(String name) { return new FieldSpec(name, FieldType.UINT8, 1, 0); }
+    public static FieldSpec uint16(String name) { return new FieldSpec(name, FieldType.UINT16, 2, 0); }
+    public static FieldSpec uint32(String name) { return new FieldSpec(name, FieldType.UINT32, 4, 0); }
+    public static FieldSpec bcd(String name, int length) { return new FieldSpec(name, FieldType.BCD, length, 0); }
+    public static FieldSpec bytes(String name, int length) { return new FieldSpec(name, FieldType.BYTES, length, 0); }
+    public static FieldSpec remainder(String name) { return new FieldSpec(name, FieldType.BYTES, 0, 0); }
+    public static FieldSpec lv(String name) { return new FieldSpec(name, FieldType.LV, 0, 0); }
+    public static FieldSpec tlv(String name, int tag) { return new FieldSpec(name, FieldType.TLV, 0, tag); }
+
+    public String getName() { return name; }
+    public FieldType getType() { return type; }
+    public int getLength() { return length; }
+    public int getTag() { return tag; }
+
+    /**
+     * @return The encoded size in bytes, or -1 if it is only known from the payload
+     */
+    public int getFixedSize() {
+        if (type.getSize() > 0) return type.getSize();
+        if (type.isSelfDelimited() || length == 0) return -1;
+        return length;
+    }
+
+    /**
+     * Converts annotation fields into runtime field specifications.
+     *
+     * @param fields The annotated fields
+     * @return The field specifications, in declaration order
+     */
+    public static List<FieldSpec> fromAnnotations(PayloadField[] fields) {
+        if (fields.length == 0) {
+            return Collections.emptyList();
+        }
+        List<FieldSpec> specs = new ArrayList<>(fields.length);
+        for (PayloadField field : fields) {
+            specs.add(new FieldSpec(field.name(), field.type(), field.length(), field.tag()));
+        }
+        return Collections.unmodifiableList(specs);
+    }
+}
@@ -0,0 +1,50 @@
+package com.codingr.nfclib.schema.layout;
+
+/**
+ * Encoding of a single field inside a command or response payload.
+ * Fixed-size types occupy a known number of bytes; LV and TLV fields carry
+ * their own length in the payload.
+ */
+public enum FieldType {
+
+    /** Unsigned 8-bit integer */
+    UINT8(1),
+
+    /** Unsigned 16-bit big-endian integer */
+    UINT16(2),
+
+    /** Unsigned 32-bit big-endian integer */
+    UINT32(4),
+
+    /** Packed BCD number, two digits per byte. Requires a length. */
+    BCD(-1),
+
+    /** Raw bytes. With a length it is fixed; with length 0 it takes the rest of the payload. */
+    BYTES(-1),
+
+    /** One length byte followed by that many value bytes */
+    LV(-1),
+
+    /** A BER-TLV object (tag, length, value), possibly constructed */
+    TLV(-1);
+
+    private final int size;
+
+    FieldType(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return The encoded size of integer types, or -1 when the size depends on the field
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return true if the encoded size of this type is read from the payload itself
+     */
+    public boolean isSelfDelimited() {
+        return this == LV || this == TLV;
+    }
+}
@@ -0,0 +1,216 @@
+package com.codingr.nfclib.schema.layout;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+/**
+ * Base class for generated payload accessors. A flyweight is a reusable view over a
+ * region of a byte array: wrapping it does not copy or allocate, and each accessor
+ * reads or writes the field directly at its offset.
+ *
+ * <p>Every accessor checks that its field lies inside the wrapped region and throws
+ * {@link IndexOutOfBoundsException} otherwise; a TLV field declared with a tag throws
+ * {@link IllegalStateException} when the payload holds another one. Call
+ * {@link #isComplete()} first to reject a short or malformed payload up front.</p>
+ *
+ * <p>Instances are not thread-safe. Keep one per handler or per session and re-wrap
+ * it for every APDU.</p>
+ */
+public abstract class Flyweight {
+
+    protected byte[] buffer;
+    protected int offset;
+    protected int length;
+
+    /**
+     * Wraps a payload region for reading or writing.
+     *
+     * @param buffer The backing bytes
+     * @param offset The offset of the first payload byte
+     * @param length The payload length (for writing, the available capacity)
+     */
+    protected void bind(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Binds to the command data of a complete APDU, skipping header and Lc.
+     */
+    protected void bindApdu(byte[] apdu, int apduLength) {
+        bind(apdu, ApduUtil.dataOffset(apdu, apduLength), ApduUtil.dataLength(apdu, apduLength));
+    }
+
+    /**
+     * Binds to the data of a complete response, excluding the status word.
+     */
+    protected void bindResponse(byte[] response, int responseLength) {
+        bind(response, 0, Math.max(0, responseLength - 2));
+    }
+
+    public byte[] buffer() { return buffer; }
+    public int offset() { return offset; }
+    public int length() { return length; }
+
+    /**
+     * @return The number of payload bytes covered by the declared fields
+     * @throws IndexOutOfBoundsException if a length read from the payload runs past its end
+     */
+    public abstract int encodedLength();
+
+    /**
+     * Walks the declared fields without reading past the wrapped region.
+     * @return The payload length the layout requires, or -1 if a field's length or
+     *         header runs past the region or a TLV field has another tag than declared
+     */
+    protected abstract int requiredLength();
+
+    /**
+     * Checks that every declared field fits inside the wrapped region.
+     * @return true if the payload can be read without running past its end
+     */
+    public boolean isComplete() {
+        int required = requiredLength();
+        return required >= 0 && required <= length;
+    }
+
+    protected void checkBounds(int fieldOffset, int fieldLength) {
+        if (fieldLength < 0 || fieldOffset + fieldLength > offset + length) {
+            throw new IndexOutOfBoundsException("Field at " + (fieldOffset - offset)
+                    + " of length " + fieldLength + " exceeds payload length " + length);
+        }
+    }
+
+    /**
+     * @return The end of the LV field at {@code start}, or -1 if it runs past the region
+     */
+    protected int lvEnd(int start) {
+        int limit = offset + length;
+        if (start >= limit) {
+            return -1;
+        }
+        int end = start + 1 + (buffer[start] & 0xFF);
+        return end <= limit ? end : -1;
+    }
+
+    /**
+     * @param expectedTag The declared tag, 0 to accept any tag
+     * @return The end of the TLV field at {@code start}, or -1 if it runs past the
+     *         region or has another tag
+     */
+    protected int tlvEnd(int start, int expectedTag) {
+        int limit = offset + length;
+        int headerLength = start < limit ? TlvView.headerLength(buffer, start, limit) : -1;
+        if (headerLength < 0) {
+            return -1;
+        }
+        int valueLength = TlvView.valueLength(buffer, start);
+        if (valueLength > limit - start - headerLength) {
+            return -1;
+        }
+        if (expectedTag != 0 && TlvView.readTag(buffer, start) != expectedTag) {
+            return -1;
+        }
+        return start + headerLength + valueLength;
+    }
+
+    /**
+     * @return The encoded size of the LV field at {@code start}
+     * @throws IndexOutOfBoundsException if it runs past the region
+     */
+    protected int lvFieldSize(int start) {
+        int end = lvEnd(start);
+        if (end < 0) {
+            throw new IndexOutOfBoundsException("LV field at " + (start - offset)
+                    + " exceeds payload length " + length);
+        }
+        return end - start;
+    }
+
+    /**
+     * @return The encoded size of the TLV field at {@code start}
+     * @throws IndexOutOfBoundsException if it runs past the region
+     * @throws IllegalStateException if it has another tag than {@code expectedTag}
+     */
+    protected int tlvFieldSize(int start, int expectedTag) {
+        int end = tlvEnd(start, 0);
+        if (end < 0) {
+            throw new IndexOutOfBoundsException("TLV field at " + (start - offset)
+                    + " exceeds payload length " + length);
+        }
+        if (expectedTag != 0 && TlvView.readTag(buffer, start) != expectedTag) {
+            throw new IllegalStateException("Expected tag " + Integer.toHexString(expectedTag).toUpperCase()
+                    + " at " + (start - offset) + ", found "
+                    + Integer.toHexString(TlvView.readTag(buffer, start)).toUpperCase());
+        }
+        return end - start;
+    }
+
+    // Encoding helpers shared by the generated classes
+
+    public static int getUint8(byte[] b, int i) {
+        return b[i] & 0xFF;
+    }
+
+    public static int getUint16(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF);
+    }
+
+    public static long getUint32(byte[] b, int i) {
+        return ((long) (b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16)
+                | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    public static void putUint8(byte[] b, int i, int value) {
+        b[i] = (byte) value;
+    }
+
+    public static void putUint16(byte[] b, int i, int value) {
+        b[i] = (byte) (value >>> 8);
+        b[i + 1] = (byte) value;
+    }
+
+    public static void putUint32(byte[] b, int i, long value) {
+        b[i] = (byte) (value >>> 24);
+        b[i + 1] = (byte) (value >>> 16);
+        b[i + 2] = (byte) (value >>> 8);
+        b[i + 3] = (byte) value;
+    }
+
+    /**
+     * Decodes packed BCD. A trailing 0xF nibble is treated as padding.
+     */
+    public static long getBcd(byte[] b, int i, int len) {
+        long value = 0;
+        for (int n = 0; n < len; n++) {
+            int hi = (b[i + n] >> 4) & 0x0F;
+            int lo = b[i + n] & 0x0F;
+            if (hi == 0x0F) break;
+            value = value * 10 + hi;
+            if (lo == 0x0F) break;
+            value = value * 10 + lo;
+        }
+        return value;
+    }
+
+    /**
+     * Encodes a number as right-aligned packed BCD, zero-padded on the left.
+     */
+    public static void putBcd(byte[] b, int i, int len, long value) {
+        for (int n = len - 1; n >= 0; n--) {
+            int lo = (int) (value % 10);
+            value /= 10;
+            int hi = (int) (value % 10);
+            value /= 10;
+            b[i + n] = (byte) ((hi << 4) | lo);
+        }
+    }
+
+    /**
+     * @return The total encoded size (tag, length and value) of the TLV object at {@code i}
+     */
+    public static int tlvSize(byte[] b, int i) {
+        int headerLength = TlvView.headerLength(b, i);
+        return headerLength + TlvView.valueLength(b, i);
+    }
+}
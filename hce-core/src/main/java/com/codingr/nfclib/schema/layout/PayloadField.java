@@ -0,0 +1,37 @@
+package com.codingr.nfclib.schema.layout;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes one field of a payload layout. Only used inside {@link PayloadLayout}.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PayloadField {
+    /**
+     * The field name, used for the generated accessors (e.g. "recordNumber")
+     * @return The field name
+     */
+    String name();
+
+    /**
+     * How the field is encoded
+     * @return The field type
+     */
+    FieldType type();
+
+    /**
+     * Byte length for BCD and fixed BYTES fields. A BYTES field with length 0
+     * takes the remaining payload and must be the last field.
+     * @return The field length in bytes
+     */
+    int length() default 0;
+
+    /**
+     * Expected tag for TLV fields, 0 to accept any tag
+     * @return The TLV tag
+     */
+    int tag() default 0;
+}
@@ -0,0 +1,31 @@
+package com.codingr.nfclib.schema.layout;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the field layout of a command's data and of its response data.
+ * Placed next to {@code @SchemaCommandDeclaration} on a schema method.
+ *
+ * <p>The annotation processor generates a {@code <Schema>Layouts} class holding one
+ * flyweight per layout ({@code <Command>Command} and {@code <Command>Response}).
+ * A flyweight wraps the APDU or response bytes in place and reads or writes fields
+ * at their offsets, so neither side has to copy or slice the payload by hand.</p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PayloadLayout {
+    /**
+     * Fields of the command data, in order
+     * @return The command fields
+     */
+    PayloadField[] command() default {};
+
+    /**
+     * Fields of the response data (without the status word), in order
+     * @return The response fields
+     */
+    PayloadField[] response() default {};
+}
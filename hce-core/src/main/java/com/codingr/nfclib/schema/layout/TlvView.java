@@ -0,0 +1,194 @@
+package com.codingr.nfclib.schema.layout;
+
+/**
+ * Cursor over a sequence of BER-TLV objects inside a byte array.
+ * Like the generated flyweights it never copies: {@link #next()} moves over the
+ * objects in place and {@link #enter(TlvView)} opens a constructed object's value.
+ *
+ * <pre>
+ * TlvView tlv = new TlvView().wrap(data, 0, data.length);
+ * if (tlv.find(0x5A)) {
+ *     int panOffset = tlv.valueOffset();
+ *     int panLength = tlv.valueLength();
+ * }
+ * </pre>
+ */
+public final class TlvView {
+
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private int position;
+    private int tag;
+    private int valueOffset;
+    private int valueLength;
+
+    /**
+     * Wraps a region that contains zero or more TLV objects and rewinds the cursor.
+     */
+    public TlvView wrap(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.start = offset;
+        this.end = offset + length;
+        rewind();
+        return this;
+    }
+
+    public void rewind() {
+        position = start;
+        tag = 0;
+        valueOffset = 0;
+        valueLength = 0;
+    }
+
+    /**
+     * Advances to the next object.
+     * @return false when no complete object is left in the region
+     */
+    public boolean next() {
+        if (position >= end) {
+            return false;
+        }
+        int headerLength = headerLength(buffer, position, end);
+        if (headerLength < 0) {
+            position = end;
+            return false;
+        }
+        int len = valueLength(buffer, position);
+        if (len > end - position - headerLength) {
+            position = end;
+            return false;
+        }
+        tag = readTag(buffer, position);
+        valueOffset = position + headerLength;
+        valueLength = len;
+        position = valueOffset + len;
+        return true;
+    }
+
+    /**
+     * Advances until an object with the given tag is found.
+     * @return true if the cursor now points at that object
+     */
+    public boolean find(int wantedTag) {
+        while (next()) {
+            if (tag == wantedTag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps {@code child} around the value of the current (constructed) object.
+     */
+    public TlvView enter(TlvView child) {
+        return child.wrap(buffer, valueOffset, valueLength);
+    }
+
+    public int tag() { return tag; }
+    public int valueOffset() { return valueOffset; }
+    public int valueLength() { return valueLength; }
+    public byte[] buffer() { return buffer; }
+
+    public boolean isConstructed() {
+        int firstByte = tag;
+        while (firstByte > 0xFF) {
+            firstByte >>>= 8;
+        }
+        return (firstByte & 0x20) != 0;
+    }
+
+    // Static encoding helpers
+
+    static int tagLength(byte[] b, int i) {
+        if ((b[i] & 0x1F) != 0x1F) {
+            return 1;
+        }
+        int n = 1;
+        while ((b[i + n] & 0x80) != 0) {
+            n++;
+        }
+        return n + 1;
+    }
+
+    /**
+     * @return The tag and length size of the object at {@code i}, or -1 if they run past {@code limit}
+     */
+    static int headerLength(byte[] b, int i, int limit) {
+        int t = 1;
+        if ((b[i] & 0x1F) == 0x1F) {
+            while (i + t < limit && (b[i + t] & 0x80) != 0) {
+                t++;
+            }
+            t++;
+        }
+        if (i + t >= limit) {
+            return -1;
+        }
+        int first = b[i + t] & 0xFF;
+        int lengthBytes = first < 0x80 ? 0 : first & 0x7F;
+        if (lengthBytes > 3 || i + t + lengthBytes >= limit) {
+            return -1;
+        }
+        return t + 1 + lengthBytes;
+    }
+
+    static int readTag(byte[] b, int i) {
+        int n = tagLength(b, i);
+        int value = 0;
+        for (int k = 0; k < n; k++) {
+            value = (value << 8) | (b[i + k] & 0xFF);
+        }
+        return value;
+    }
+
+    static int headerLength(byte[] b, int i) {
+        int t = tagLength(b, i);
+        int first = b[i + t] & 0xFF;
+        return t + (first < 0x80 ? 1 : 1 + (first & 0x7F));
+    }
+
+    static int valueLength(byte[] b, int i) {
+        int p = i + tagLength(b, i);
+        int first = b[p] & 0xFF;
+        if (first < 0x80) {
+            return first;
+        }
+        int value = 0;
+        for (int k = 1; k <= (first & 0x7F); k++) {
+            value = (value << 8) | (b[p + k] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return The number of bytes {@link #putHeader} writes for this tag and length
+     */
+    public static int headerSize(int tag, int length) {
+        int tagSize = tag > 0xFFFF ? 3 : tag > 0xFF ? 2 : 1;
+        return tagSize + (length < 0x80 ? 1 : length <= 0xFF ? 2 : 3);
+    }
+
+    /**
+     * Writes a TLV header (tag and length) and returns the number of bytes written.
+     * The value is written by the caller right after it.
+     */
+    public static int putHeader(byte[] b, int i, int tag, int length) {
+        int p = i;
+        if (tag > 0xFFFF) b[p++] = (byte) (tag >>> 16);
+        if (tag > 0xFF) b[p++] = (byte) (tag >>> 8);
+        b[p++] = (byte) tag;
+        if (length < 0x80) {
+            b[p++] = (byte) length;
+        } else if (length <= 0xFF) {
+            b[p++] = (byte) 0x81;
+            b[p++] = (byte) length;
+        } else {
+            b[p++] = (byte) 0x82;
+            b[p++] = (byte) (length >>> 8);
+            b[p++] = (byte) length;
+        }
+        return p - i;
+    }
+}
@@ -0,0 +1,97 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.annotations.ApduController;
+import com.codingr.nfclib.hce.annotations.ApduMapping;
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CardFarmTest {
+
+    private static final byte[] SELECT = ApduUtil.hexStringToByteArray("00A4040003F0AB02");
+    private static final byte[] PING = ApduUtil.hexStringToByteArray("80100000");
+
+    @ApduController(aids = {"F0AB02"})
+    public static class PingController {
+
+        @ApduMapping(command = {(byte) 0x80, 0x10})
+        public ApduResponse ping(byte[] apdu) {
+            return new ApduResponse(null, ApduUtil.SW_OK);
+        }
+    }
+
+    private static CardFarm farm(int workers) {
+        RouterEngine engine = new RouterEngine.Builder()
+                .registry(new ControllerRegistry())
+                .controllerClasses(PingController.class)
+                .build();
+        return new CardFarm.Builder(engine).workers(workers).build();
+    }
+
+    @Test
+    public void cardsHaveIndependentSessions() throws Exception {
+        CardFarm farm = farm(2);
+        CardFarm.VirtualCard selected = farm.createCard();
+        CardFarm.VirtualCard other = farm.createCard();
+
+        assertArrayEquals(ApduUtil.SW_OK, selected.transmit(SELECT).get(1, TimeUnit.SECONDS));
+        assertArrayEquals(ApduUtil.SW_OK, selected.transmit(PING).get(1, TimeUnit.SECONDS));
+        assertArrayEquals(ApduUtil.SW_CONDITIONS_NOT_SATISFIED, other.transmit(PING).get(1, TimeUnit.SECONDS));
+        assertEquals(3, farm.getCommands());
+        farm.close();
+    }
+
+    @Test
+    public void requestAfterCloseIsRejected() throws Exception {
+        CardFarm farm = farm(1);
+        CardFarm.VirtualCard card = farm.createCard();
+        farm.close();
+
+        try {
+            card.transmit(PING).get(1, TimeUnit.SECONDS);
+            fail("Expected the request to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void requestsRacingCloseAlwaysComplete() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            CardFarm farm = farm(1);
+            final CardFarm.VirtualCard card = farm.createCard();
+            final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            Thread submitter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        futures.add(card.transmit(PING));
+                    }
+                }
+            });
+            submitter.start();
+            farm.close();
+            submitter.join();
+
+            for (CompletableFuture<byte[]> future : futures) {
+                try {
+                    future.get(1, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+        }
+    }
+}
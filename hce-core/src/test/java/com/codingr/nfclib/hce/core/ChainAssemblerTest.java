@@ -0,0 +1,151 @@
+package com.codingr.nfclib.hce.core;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChainAssemblerTest {
+
+    private static byte[] apdu(String hex) {
+        return ApduUtil.hexStringToByteArray(hex);
+    }
+
+    @Test
+    public void plainCommandIsNotChained() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assertEquals(ChainAssembler.NOT_CHAINED, assembler.offer(apdu("80200000020102")));
+        assertFalse(assembler.isInProgress());
+    }
+
+    @Test
+    public void segmentsAreJoinedIntoOneCommand() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assertEquals(ChainAssembler.SEGMENT_STORED, assembler.offer(apdu("90200000020102")));
+        assertEquals(ChainAssembler.SEGMENT_STORED, assembler.offer(apdu("902000000103")));
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(apdu("80200000020405")));
+        assertArrayEquals(apdu("80200000050102030405"), assembler.takeCommand());
+        assertFalse(assembler.isInProgress());
+    }
+
+    @Test
+    public void lastSegmentKeepsItsLe() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assembler.offer(apdu("9020000001AA"));
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(apdu("8020000001BB00")));
+        assertArrayEquals(apdu("8020000002AABB00"), assembler.takeCommand());
+    }
+
+    @Test
+    public void longChainUsesExtendedLength() {
+        ChainAssembler assembler = new ChainAssembler(1024);
+        byte[] segment = new byte[5 + 200];
+        segment[0] = (byte) 0x90;
+        segment[1] = 0x20;
+        segment[4] = (byte) 200;
+        assembler.offer(segment);
+        segment[0] = (byte) 0x80;
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(segment));
+        byte[] command = assembler.takeCommand();
+        assertEquals(7 + 400, command.length);
+        assertEquals(0, command[4]);
+        assertEquals(400, ((command[5] & 0xFF) << 8) | (command[6] & 0xFF));
+    }
+
+    @Test
+    public void extendedLeOfTheLastSegmentIsKept() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assembler.offer(apdu("9020000001AA"));
+        // Extended Lc 0001, data BB, extended Le 0200
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(apdu("80200000000001BB0200")));
+        assertArrayEquals(apdu("80200000000002AABB0200"), assembler.takeCommand());
+    }
+
+    @Test
+    public void extendedLeWithoutDataIsKept() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assembler.offer(apdu("9020000001AA"));
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(apdu("80200000000000")));
+        // Le 0000 asks for up to 65536 bytes
+        assertArrayEquals(apdu("80200000000001AA0000"), assembler.takeCommand());
+    }
+
+    @Test
+    public void shortLeOfALongChainIsWidened() {
+        ChainAssembler assembler = new ChainAssembler(1024);
+        byte[] segment = new byte[5 + 200];
+        segment[0] = (byte) 0x90;
+        segment[1] = 0x20;
+        segment[4] = (byte) 200;
+        assembler.offer(segment);
+        byte[] last = new byte[5 + 200 + 1];
+        System.arraycopy(segment, 0, last, 0, segment.length);
+        last[0] = (byte) 0x80;
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(last));
+        byte[] command = assembler.takeCommand();
+        assertEquals(7 + 400 + 2, command.length);
+        // Short Le 00 means 256
+        assertEquals(1, command[command.length - 2]);
+        assertEquals(0, command[command.length - 1]);
+    }
+
+    @Test
+    public void bufferGrowsUpToCapacity() {
+        ChainAssembler assembler = new ChainAssembler(4096);
+        byte[] segment = new byte[5 + 255];
+        segment[0] = (byte) 0x90;
+        segment[1] = 0x20;
+        segment[4] = (byte) 255;
+        for (int i = 0; i < 7; i++) {
+            segment[5] = (byte) i;
+            assertEquals(ChainAssembler.SEGMENT_STORED, assembler.offer(segment));
+        }
+        segment[0] = (byte) 0x80;
+        segment[5] = 7;
+        assertEquals(ChainAssembler.COMPLETE, assembler.offer(segment));
+        byte[] command = assembler.takeCommand();
+        assertEquals(7 + 8 * 255, command.length);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, command[7 + i * 255]);
+        }
+    }
+
+    @Test
+    public void chainOverCapacityIsRejected() {
+        ChainAssembler assembler = new ChainAssembler(4);
+        assertEquals(ChainAssembler.SEGMENT_STORED, assembler.offer(apdu("902000000301020304")));
+        assertEquals(ChainAssembler.TOO_LONG, assembler.offer(apdu("80200000020405")));
+        assertFalse(assembler.isInProgress());
+    }
+
+    @Test
+    public void segmentOfAnotherCommandIsUnexpected() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assembler.offer(apdu("90200000020102"));
+        assertEquals(ChainAssembler.UNEXPECTED_SEGMENT, assembler.offer(apdu("90300000020102")));
+        assertFalse(assembler.isInProgress());
+    }
+
+    @Test
+    public void plainCommandOfAnotherKindAbandonsTheChain() {
+        ChainAssembler assembler = new ChainAssembler(64);
+        assembler.offer(apdu("90200000020102"));
+        assertEquals(ChainAssembler.NOT_CHAINED, assembler.offer(apdu("80CA9F1700")));
+        assertFalse(assembler.isInProgress());
+    }
+
+    @Test
+    public void truncatedApduAbandonsTheChain() {
+        for (String truncated : new String[] {"80", "8020", "802000"}) {
+            ChainAssembler assembler = new ChainAssembler(64);
+            assembler.offer(apdu("90200000020102"));
+            assertTrue(assembler.isInProgress());
+            assertEquals(ChainAssembler.NOT_CHAINED, assembler.offer(apdu(truncated)));
+            assertFalse(assembler.isInProgress());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.codingr.nfclib.relay;
+
+import com.codingr.nfclib.hce.annotations.ApduController;
+import com.codingr.nfclib.hce.annotations.ApduMapping;
+import com.codingr.nfclib.hce.core.ApduResponse;
+import com.codingr.nfclib.hce.core.ControllerRegistry;
+import com.codingr.nfclib.hce.core.RouterEngine;
+import com.codingr.nfclib.hce.core.RouterListener;
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.ClientFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RelayServerTest {
+
+    private static final byte[] SELECT = ApduUtil.hexStringToByteArray("00A4040003F0AB01");
+    private static final byte[] ECHO = ApduUtil.hexStringToByteArray("8010000002CAFE");
+    private static final byte[] HUGE = ApduUtil.hexStringToByteArray("80200000");
+    private static final byte[] LARGE = ApduUtil.hexStringToByteArray("80300000");
+    private static final byte[] POISON = ApduUtil.hexStringToByteArray("80EE0000");
+
+    @ApduController(aids = {"F0AB01"})
+    public static class EchoController {
+
+        @ApduMapping(command = {(byte) 0x80, 0x10})
+        public ApduResponse echo(byte[] apdu) {
+            byte[] data = new byte[ApduUtil.dataLength(apdu, apdu.length)];
+            System.arraycopy(apdu, ApduUtil.dataOffset(apdu, apdu.length), data, 0, data.length);
+            return new ApduResponse(data, ApduUtil.SW_OK);
+        }
+
+        @ApduMapping(command = {(byte) 0x80, 0x20})
+        public ApduResponse huge(byte[] apdu) {
+            return new ApduResponse(new byte[70000], ApduUtil.SW_OK);
+        }
+
+        @ApduMapping(command = {(byte) 0x80, 0x30})
+        public ApduResponse large(byte[] apdu) {
+            return new ApduResponse(new byte[1000], ApduUtil.SW_OK);
+        }
+
+        @ApduMapping(command = {(byte) 0x80, (byte) 0xEE})
+        public ApduResponse poison(byte[] apdu) {
+            return new ApduResponse(null, ApduUtil.SW_OK);
+        }
+    }
+
+    /**
+     * Fails outside the handler, where the router does not catch it.
+     */
+    private static final RouterListener FAILING_LISTENER = new RouterListener() {
+        @Override
+        public void onCommand(byte[] command, byte[] response, long nanos) {
+            if (command[1] == (byte) 0xEE) {
+                throw new IllegalStateException("listener failure");
+            }
+        }
+    };
+
+    private RelayServer server;
+
+    private RelayServer start(RouterListener listener) throws IOException {
+        RouterEngine engine = new RouterEngine.Builder()
+                .registry(new ControllerRegistry())
+                .controllerClasses(EchoController.class)
+                .listener(listener)
+                .build();
+        // One loop, so every connection shares it
+        server = new RelayServer.Builder(engine).ioThreads(1).build().start();
+        return server;
+    }
+
+    private TcpNfcTransport connect() throws IOException {
+        return new TcpNfcTransport(new InetSocketAddress("127.0.0.1", server.getPort()), null, 2000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void exchangesApdusOverTcp() throws Exception {
+        start(RouterListener.NONE);
+        TcpNfcTransport transport = connect();
+        assertArrayEquals(ApduUtil.SW_OK, transport.transmit(SELECT));
+        assertArrayEquals(ApduUtil.hexStringToByteArray("CAFE9000"), transport.transmit(ECHO));
+        assertEquals(2, server.getCommands());
+        transport.disconnect();
+    }
+
+    @Test
+    public void resetStartsAFreshSessionOnTheSameConnection() throws Exception {
+        start(RouterListener.NONE);
+        TcpNfcTransport transport = connect();
+        transport.transmit(SELECT);
+        assertEquals(true, transport.reconnect());
+        assertArrayEquals(ApduUtil.SW_CONDITIONS_NOT_SATISFIED, transport.transmit(ECHO));
+        assertEquals(1, server.getAcceptedConnections());
+        transport.disconnect();
+    }
+
+    @Test
+    public void failingSessionOnlyClosesItsOwnConnection() throws Exception {
+        start(FAILING_LISTENER);
+        TcpNfcTransport failing = connect();
+        TcpNfcTransport healthy = connect();
+        failing.transmit(SELECT);
+        healthy.transmit(SELECT);
+
+        expectClosed(failing, POISON);
+        assertArrayEquals(ApduUtil.hexStringToByteArray("CAFE9000"), healthy.transmit(ECHO));
+
+        TcpNfcTransport late = connect();
+        assertArrayEquals(ApduUtil.SW_OK, late.transmit(SELECT));
+        awaitActiveConnections(2);
+        healthy.disconnect();
+        late.disconnect();
+    }
+
+    @Test
+    public void responseTooLongForAFrameClosesTheConnection() throws Exception {
+        start(RouterListener.NONE);
+        TcpNfcTransport transport = connect();
+        TcpNfcTransport other = connect();
+        transport.transmit(SELECT);
+        other.transmit(SELECT);
+
+        expectClosed(transport, HUGE);
+        assertArrayEquals(ApduUtil.hexStringToByteArray("CAFE9000"), other.transmit(ECHO));
+        awaitActiveConnections(1);
+        other.disconnect();
+    }
+
+    @Test
+    public void terminalNotReadingResponsesIsThrottled() throws Exception {
+        start(RouterListener.NONE);
+        int frames = 20000;
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        writeFrame(out, SELECT);
+        for (int i = 0; i < frames; i++) {
+            writeFrame(out, LARGE);
+        }
+        out.flush();
+
+        // 20 MB of responses nobody reads: the relay must stop taking commands once the socket is full
+        long processed = -1;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (server.getCommands() != processed && System.currentTimeMillis() < deadline) {
+            processed = server.getCommands();
+            Thread.sleep(200);
+        }
+        assertTrue(processed < frames);
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] header = new byte[RelayProtocol.HEADER_LENGTH];
+        for (int i = 0; i <= frames; i++) {
+            in.readFully(header);
+            int length = ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+            in.readFully(new byte[length]);
+            assertEquals(i == 0 ? 2 : 1002, length);
+        }
+        assertEquals(frames + 1, server.getCommands());
+        socket.close();
+    }
+
+    private static void writeFrame(OutputStream out, byte[] apdu) throws IOException {
+        out.write(RelayProtocol.TYPE_APDU);
+        out.write(apdu.length >> 8);
+        out.write(apdu.length);
+        out.write(apdu);
+    }
+
+    private static void expectClosed(TcpNfcTransport transport, byte[] apdu) {
+        try {
+            transport.transmit(apdu);
+            fail("Expected the relay to close the connection");
+        } catch (ClientFactory.NfcCommunicationException e) {
+            assertEquals(false, transport.isConnected());
+        }
+    }
+
+    private void awaitActiveConnections(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getActiveConnections() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, server.getActiveConnections());
+    }
+}
@@ -0,0 +1,102 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport emulating a card that answers the sample schema: SELECT and UPDATE_RECORD
+ * with 9000, GET_DATA with two data bytes. Records every APDU and can fail the next
+ * exchanges of one instruction with a transport error.
+ */
+class FakeCardTransport implements ClientFactory.NfcTransport {
+
+    static final byte SELECT = (byte) 0xA4;
+    static final byte GET_DATA = 0x10;
+    static final byte UPDATE_RECORD = 0x30;
+
+    static final byte[] DATA_RESPONSE = ApduUtil.hexStringToByteArray("01029000");
+
+    /** Returns the raw response, status word included */
+    static final ClientFactory.ClientResponseHandler RAW = new ClientFactory.ClientResponseHandler() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T handleResponse(ApduCommandSpec commandSpec, ApduResponseSpec responseSpec, byte[] rawResponse) {
+            return (T) rawResponse;
+        }
+    };
+
+    final List<byte[]> transmitted = new ArrayList<>();
+    byte[] cardIdentifier;
+    int reconnects;
+    long linkGeneration;
+    private byte failingIns;
+    private int failures;
+
+    FakeCardTransport(byte[] cardIdentifier) {
+        this.cardIdentifier = cardIdentifier;
+    }
+
+    /**
+     * Makes the next {@code count} exchanges of instruction {@code ins} throw.
+     */
+    void failNext(byte ins, int count) {
+        this.failingIns = ins;
+        this.failures = count;
+    }
+
+    int count(byte ins) {
+        int count = 0;
+        for (byte[] apdu : transmitted) {
+            if (apdu[1] == ins) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public byte[] transmit(byte[] apdu) throws ClientFactory.NfcCommunicationException {
+        transmitted.add(apdu.clone());
+        if (failures > 0 && apdu[1] == failingIns) {
+            failures--;
+            throw new ClientFactory.NfcCommunicationException("Tag was lost");
+        }
+        switch (apdu[1]) {
+            case SELECT:
+            case UPDATE_RECORD:
+                return ApduUtil.SW_OK.clone();
+            case GET_DATA:
+                return DATA_RESPONSE.clone();
+            default:
+                return ApduUtil.SW_INS_NOT_SUPPORTED.clone();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public byte[] getCardIdentifier() {
+        return cardIdentifier;
+    }
+
+    @Override
+    public boolean reconnect() {
+        reconnects++;
+        linkGeneration++;
+        return true;
+    }
+
+    @Override
+    public long getLinkGeneration() {
+        return linkGeneration;
+    }
+}
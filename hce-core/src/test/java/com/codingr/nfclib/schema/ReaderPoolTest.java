@@ -0,0 +1,88 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReaderPoolTest {
+
+    private static final byte[] CARD = {0x04, 0x11, 0x22, 0x33};
+
+    /**
+     * Card transport whose presence can be switched, remembering which threads asked for it.
+     */
+    private static final class ReaderTransport extends FakeCardTransport {
+        final Set<Thread> presenceCallers = ConcurrentHashMap.newKeySet();
+        volatile boolean present;
+
+        ReaderTransport(boolean present) {
+            super(CARD);
+            this.present = present;
+        }
+
+        @Override
+        public boolean isConnected() {
+            presenceCallers.add(Thread.currentThread());
+            return present;
+        }
+    }
+
+    private static final ReaderPool.CardSession<byte[]> GET_DATA = new ReaderPool.CardSession<byte[]>() {
+        @Override
+        public byte[] run(ClientFactory.GenericSchemaClient client) throws Exception {
+            return client.sendCommand(SampleCardSchema.GET_DATA, null);
+        }
+    };
+
+    @Test
+    public void cardPresenceIsOnlyCheckedOnTheReaderThreads() throws Exception {
+        ReaderTransport empty = new ReaderTransport(false);
+        ReaderTransport loaded = new ReaderTransport(true);
+        ReaderPool pool = new ReaderPool(new SampleCardSchema(), Arrays.asList(empty, loaded), FakeCardTransport.RAW, 8);
+
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(FakeCardTransport.DATA_RESPONSE, pool.submit(GET_DATA).get(1, TimeUnit.SECONDS));
+        }
+        assertFalse(pool.getReaderStats().get(0).isCardPresent());
+        assertTrue(pool.getReaderStats().get(1).isCardPresent());
+        assertEquals(5, loaded.count(FakeCardTransport.GET_DATA));
+        pool.shutdown();
+
+        assertFalse(empty.presenceCallers.contains(Thread.currentThread()));
+        assertFalse(loaded.presenceCallers.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void cardPlacedOnAnIdleReaderIsFound() throws Exception {
+        ReaderTransport transport = new ReaderTransport(false);
+        ReaderPool pool = new ReaderPool(new SampleCardSchema(), Arrays.asList(transport), FakeCardTransport.RAW, 8);
+
+        transport.present = true;
+        try {
+            pool.submit(GET_DATA).get(1, TimeUnit.SECONDS);
+            fail("Expected no reader with a card");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ClientFactory.NfcCommunicationException);
+        }
+
+        // The skipped reader checked again on its own thread
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!pool.getReaderStats().get(0).isCardPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, pool.submit(GET_DATA).get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,145 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheTest {
+
+    private static final byte[] CARD = {0x04, 0x11, 0x22, 0x33};
+    private static final byte[] OTHER_CARD = {0x04, 0x44, 0x55, 0x66};
+    private static final String AID = "F0010203040506";
+    private static final byte[] READ = ApduUtil.hexStringToByteArray("80B00000");
+    private static final byte[] RESPONSE = ApduUtil.hexStringToByteArray("CAFE9000");
+
+    private static ApduCommandSpec read(String commandId, long ttlMillis) {
+        return new ApduCommandSpec.Builder(commandId, (byte) 0x80, (byte) 0xB0).cacheable(ttlMillis).build();
+    }
+
+    @Test
+    public void returnsACopyOfTheStoredResponse() {
+        ResponseCache cache = new ResponseCache(8);
+        byte[] response = RESPONSE.clone();
+        cache.put(CARD, AID, READ, read("READ", 10000), response);
+        response[0] = 0;
+
+        byte[] cached = cache.get(CARD, AID, READ);
+        assertArrayEquals(RESPONSE, cached);
+        cached[0] = 0;
+        assertArrayEquals(RESPONSE, cache.get(CARD, AID, READ));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void entriesAreKeyedByCardAndAid() {
+        ResponseCache cache = new ResponseCache(8);
+        cache.put(CARD, AID, READ, read("READ", 10000), RESPONSE);
+
+        assertNull(cache.get(OTHER_CARD, AID, READ));
+        assertNull(cache.get(CARD, "A000000001020304", READ));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void entriesExpireAfterTheirTtl() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(8);
+        cache.put(CARD, AID, READ, read("READ", 1), RESPONSE);
+        Thread.sleep(5);
+
+        assertNull(cache.get(CARD, AID, READ));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateDropsOnlyTheGivenCommands() {
+        ResponseCache cache = new ResponseCache(8);
+        byte[] readOther = ApduUtil.hexStringToByteArray("80B00100");
+        cache.put(CARD, AID, READ, read("READ", 10000), RESPONSE);
+        cache.put(CARD, AID, readOther, read("READ_OTHER", 10000), RESPONSE);
+        cache.put(OTHER_CARD, AID, READ, read("READ", 10000), RESPONSE);
+
+        assertEquals(1, cache.invalidate(CARD, AID, Collections.singleton("READ")));
+        assertNull(cache.get(CARD, AID, READ));
+        assertArrayEquals(RESPONSE, cache.get(CARD, AID, readOther));
+        assertArrayEquals(RESPONSE, cache.get(OTHER_CARD, AID, READ));
+    }
+
+    @Test
+    public void invalidateCardDropsEveryEntryOfThatCard() {
+        ResponseCache cache = new ResponseCache(8);
+        cache.put(CARD, AID, READ, read("READ", 10000), RESPONSE);
+        cache.put(CARD, "A000000001020304", READ, read("READ", 10000), RESPONSE);
+        cache.put(OTHER_CARD, AID, READ, read("READ", 10000), RESPONSE);
+
+        cache.invalidateCard(CARD);
+        assertEquals(1, cache.size());
+        assertArrayEquals(RESPONSE, cache.get(OTHER_CARD, AID, READ));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ResponseCache cache = new ResponseCache(2);
+        byte[] second = ApduUtil.hexStringToByteArray("80B00100");
+        byte[] third = ApduUtil.hexStringToByteArray("80B00200");
+        cache.put(CARD, AID, READ, read("READ", 10000), RESPONSE);
+        cache.put(CARD, AID, second, read("READ", 10000), RESPONSE);
+        cache.get(CARD, AID, READ);
+        cache.put(CARD, AID, third, read("READ", 10000), RESPONSE);
+
+        assertEquals(2, cache.size());
+        assertArrayEquals(RESPONSE, cache.get(CARD, AID, READ));
+        assertNull(cache.get(CARD, AID, second));
+    }
+
+    @Test
+    public void clientServesCacheableCommandsFromTheCache() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ResponseCache cache = new ResponseCache(8);
+        ClientFactory.GenericSchemaClient client = client(transport, cache);
+        client.selectApplication(AID);
+
+        byte[] first = client.sendCommand(SampleCardSchema.GET_DATA, null);
+        byte[] second = client.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, first);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, second);
+        assertEquals(1, transport.count(FakeCardTransport.GET_DATA));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void clientWriteInvalidatesCachedReads() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, new ResponseCache(8));
+        client.selectApplication(AID);
+
+        client.sendCommand(SampleCardSchema.GET_DATA, null);
+        client.sendCommand(SampleCardSchema.UPDATE_RECORD, new byte[]{0x01});
+        client.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertEquals(2, transport.count(FakeCardTransport.GET_DATA));
+    }
+
+    @Test
+    public void clientDoesNotCacheWithoutACardIdentifier() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(null);
+        ResponseCache cache = new ResponseCache(8);
+        ClientFactory.GenericSchemaClient client = client(transport, cache);
+        client.selectApplication(AID);
+
+        client.sendCommand(SampleCardSchema.GET_DATA, null);
+        client.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertEquals(2, transport.count(FakeCardTransport.GET_DATA));
+        assertEquals(0, cache.size());
+    }
+
+    private static ClientFactory.GenericSchemaClient client(FakeCardTransport transport, ResponseCache cache) {
+        ClientConfig config = new ClientConfig.Builder().responseCache(cache).build();
+        return ClientFactory.createGenericClient(new SampleCardSchema(), transport, FakeCardTransport.RAW, config);
+    }
+}
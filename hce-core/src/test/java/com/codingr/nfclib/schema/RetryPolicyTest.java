@@ -0,0 +1,149 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+    private static final byte[] CARD = {0x04, 0x11, 0x22, 0x33};
+    private static final String CARD_HEX = "04112233";
+    private static final String AID = "F0010203040506";
+
+    private final RetryMetrics metrics = new RetryMetrics();
+
+    private ClientFactory.GenericSchemaClient client(FakeCardTransport transport, long budgetMillis) {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .maxAttempts(3)
+                .transactionBudgetMillis(budgetMillis)
+                .backoffMillis(0, 0)
+                .build();
+        ClientConfig config = new ClientConfig.Builder().retryPolicy(policy).retryMetrics(metrics).build();
+        return ClientFactory.createGenericClient(new SampleCardSchema(), transport, FakeCardTransport.RAW, config);
+    }
+
+    @Test
+    public void retryIsAllowedWithinAttemptsAndBudget() {
+        RetryPolicy policy = new RetryPolicy.Builder().maxAttempts(3).transactionBudgetMillis(100).build();
+        assertTrue(policy.allowsRetry(1, 0, 0));
+        assertFalse(policy.allowsRetry(3, 0, 0));
+        assertFalse(policy.allowsRetry(1, 90_000_000L, 20_000_000L));
+        assertFalse(RetryPolicy.NONE.allowsRetry(1, 0, 0));
+    }
+
+    @Test
+    public void idempotentCommandIsRetriedAfterReconnectAndReselect() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, 500);
+        client.selectApplication(AID);
+
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        byte[] response = client.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, response);
+        assertEquals(1, transport.reconnects);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(1, metrics.getRetries(CARD_HEX));
+        assertEquals(1, metrics.getRecovered(CARD_HEX));
+    }
+
+    @Test
+    public void nonIdempotentCommandIsNotRetried() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, 500);
+        client.selectApplication(AID);
+
+        transport.failNext(FakeCardTransport.UPDATE_RECORD, 1);
+        try {
+            client.sendCommand(SampleCardSchema.UPDATE_RECORD, new byte[]{0x01});
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // Its effect on the card is unknown
+        }
+        assertEquals(1, transport.count(FakeCardTransport.UPDATE_RECORD));
+        assertEquals(0, transport.reconnects);
+        assertEquals(1, metrics.getNotRetried(CARD_HEX));
+    }
+
+    @Test
+    public void retriesStopAfterMaxAttempts() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, 500);
+        client.selectApplication(AID);
+
+        transport.failNext(FakeCardTransport.GET_DATA, 5);
+        try {
+            client.sendCommand(SampleCardSchema.GET_DATA, null);
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // Three attempts, all failed
+        }
+        assertEquals(3, transport.count(FakeCardTransport.GET_DATA));
+        assertEquals(1, metrics.getExhausted(CARD_HEX));
+    }
+
+    @Test
+    public void budgetIsMeasuredFromTheStartOfEachExchangeOutsideATransaction() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, 50);
+        client.selectApplication(AID);
+
+        // Longer than the budget: a budget counted from the SELECT would be spent
+        Thread.sleep(100);
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        byte[] response = client.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, response);
+        assertEquals(1, metrics.getRecovered(CARD_HEX));
+    }
+
+    @Test
+    public void exchangesOfATransactionShareItsBudget() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        ClientFactory.GenericSchemaClient client = client(transport, 50);
+        client.beginTransaction();
+        client.selectApplication(AID);
+        client.sendCommand(SampleCardSchema.GET_DATA, null);
+
+        Thread.sleep(100);
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        try {
+            client.sendCommand(SampleCardSchema.GET_DATA, null);
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // The transaction's budget is spent
+        }
+        assertEquals(0, transport.reconnects);
+        assertEquals(1, metrics.getExhausted(CARD_HEX));
+
+        client.endTransaction();
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, client.sendCommand(SampleCardSchema.GET_DATA, null));
+        assertEquals(1, metrics.getRecovered(CARD_HEX));
+    }
+
+    @Test
+    public void budgetAppliesWhenTheSelectWasSkipped() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .maxAttempts(3)
+                .transactionBudgetMillis(50)
+                .backoffMillis(0, 0)
+                .build();
+        ClientConfig config = new ClientConfig.Builder().retryPolicy(policy).build();
+        SessionManager session = ClientFactory.createSessionManager(new SampleCardSchema(), transport,
+                FakeCardTransport.RAW, config);
+        session.selectApplication(AID);
+
+        Thread.sleep(100);
+        assertTrue(session.selectApplication(AID));
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, session.sendCommand(SampleCardSchema.GET_DATA, null));
+        assertEquals(1, session.getStats().getSelectsSkipped());
+        assertEquals(1, transport.reconnects);
+    }
+}
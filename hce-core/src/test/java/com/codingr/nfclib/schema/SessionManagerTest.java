@@ -0,0 +1,180 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionManagerTest {
+
+    private static final byte[] CARD = {0x04, 0x11, 0x22, 0x33};
+    private static final byte[] OTHER_CARD = {0x04, 0x44, 0x55, 0x66};
+    private static final String AID = "F0010203040506";
+    private static final String OTHER_AID = "A000000001020304";
+
+    private static SessionManager sessionManager(FakeCardTransport transport) {
+        ClientConfig config = new ClientConfig.Builder().retryPolicy(RetryPolicy.NONE).build();
+        return ClientFactory.createSessionManager(new SampleCardSchema(), transport, FakeCardTransport.RAW, config);
+    }
+
+    @Test
+    public void repeatedSelectOnTheSameCardIsSkipped() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        assertTrue(session.selectApplication(AID));
+        assertTrue(session.selectApplication(AID.toLowerCase()));
+        assertEquals(1, transport.count(FakeCardTransport.SELECT));
+        assertEquals(1, session.getStats().getSelectsSkipped());
+    }
+
+    @Test
+    public void switchingApplicationsSendsTheSelect() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        session.selectApplication(OTHER_AID);
+        session.selectApplication(AID);
+        assertEquals(3, transport.count(FakeCardTransport.SELECT));
+        assertEquals(AID, session.getSelectedAid());
+    }
+
+    @Test
+    public void anotherCardStartsANewSession() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        transport.cardIdentifier = OTHER_CARD;
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(2, session.getStats().getSessions());
+    }
+
+    @Test
+    public void everySelectIsSentWithoutACardIdentifier() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(null);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(0, session.getStats().getSelectsSkipped());
+    }
+
+    @Test
+    public void reTapOfTheSameCardSendsTheSelect() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        // Same UID, new link: the card has lost its selection
+        transport.linkGeneration++;
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(0, session.getStats().getSelectsSkipped());
+    }
+
+    @Test
+    public void commandAfterAReTapReselectsTheApplicationFirst() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+        session.selectApplication(AID);
+
+        transport.linkGeneration++;
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, session.sendCommand(SampleCardSchema.GET_DATA, null));
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(AID, session.getSelectedAid());
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+    }
+
+    @Test
+    public void transportErrorForgetsTheSelection() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+        session.selectApplication(AID);
+
+        transport.failNext(FakeCardTransport.GET_DATA, 1);
+        try {
+            session.sendCommand(SampleCardSchema.GET_DATA, null);
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // Marks the session broken
+        }
+        assertNull(session.getSelectedAid());
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(1, transport.reconnects);
+    }
+
+    @Test
+    public void disconnectForgetsTheSelection() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        session.disconnect();
+        assertNull(session.getSelectedAid());
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+    }
+
+    @Test
+    public void invalidatedSelectionIsSentAgain() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        session.selectApplication(AID);
+        session.invalidateSelection();
+        session.selectApplication(AID);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+    }
+
+    @Test
+    public void transportErrorReconnectsAndReselectsBeforeTheNextCommand() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+        session.selectApplication(AID);
+
+        transport.failNext(FakeCardTransport.UPDATE_RECORD, 1);
+        try {
+            session.sendCommand(SampleCardSchema.UPDATE_RECORD, new byte[]{0x01});
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // The failed command is not repeated
+        }
+        assertEquals(1, transport.count(FakeCardTransport.UPDATE_RECORD));
+
+        byte[] response = session.sendCommand(SampleCardSchema.GET_DATA, null);
+        assertArrayEquals(FakeCardTransport.DATA_RESPONSE, response);
+        assertEquals(1, transport.reconnects);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+        assertEquals(1, session.getStats().getReconnects());
+        assertEquals(AID, session.getSelectedAid());
+    }
+
+    @Test
+    public void failedSelectLeavesNothingSelected() throws Exception {
+        FakeCardTransport transport = new FakeCardTransport(CARD);
+        SessionManager session = sessionManager(transport);
+
+        transport.failNext(FakeCardTransport.SELECT, 1);
+        try {
+            session.selectApplication(AID);
+            fail("Expected the transport error");
+        } catch (ClientFactory.NfcCommunicationException expected) {
+            // Marks the session broken
+        }
+        assertNull(session.getSelectedAid());
+        assertTrue(session.selectApplication(AID));
+        assertEquals(1, transport.reconnects);
+        assertEquals(2, transport.count(FakeCardTransport.SELECT));
+    }
+}
@@ -0,0 +1,117 @@
+package com.codingr.nfclib.schema;
+
+import com.codingr.nfclib.hce.util.ApduUtil;
+import com.codingr.nfclib.schema.examples.SampleCardSchema;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionScriptTest {
+
+    private static final String AID = "F0010203040506";
+
+    /**
+     * Answers with queued responses, 9000 once they run out.
+     */
+    private static final class ScriptedTransport implements ClientFactory.NfcTransport {
+        final Deque<byte[]> responses = new ArrayDeque<>();
+        final List<byte[]> transmitted = new ArrayList<>();
+
+        ScriptedTransport respond(String... hex) {
+            for (String response : hex) {
+                responses.add(ApduUtil.hexStringToByteArray(response));
+            }
+            return this;
+        }
+
+        @Override
+        public byte[] transmit(byte[] apdu) {
+            transmitted.add(apdu);
+            return responses.isEmpty() ? ApduUtil.SW_OK.clone() : responses.poll();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    private static TransactionScript.Builder script() {
+        return ClientFactory.transactionScript(new SampleCardSchema()).select(AID);
+    }
+
+    @Test
+    public void responseChainIsFollowedWithGetResponse() {
+        ScriptedTransport transport = new ScriptedTransport().respond("9000", "01026102", "03049000");
+        TransactionResult result = script().command(SampleCardSchema.GET_DATA).build().run(transport);
+
+        assertTrue(result.isCompleted());
+        assertArrayEquals(ApduUtil.hexStringToByteArray("010203049000"),
+                result.getStep(SampleCardSchema.GET_DATA).getResponse());
+        assertArrayEquals(ApduUtil.hexStringToByteArray("00C0000002"), transport.transmitted.get(2));
+    }
+
+    @Test
+    public void wrongLengthIsRepeatedWithTheCardsLe() {
+        ScriptedTransport transport = new ScriptedTransport().respond("9000", "6C02", "01029000");
+        TransactionResult result = script().command(SampleCardSchema.GET_DATA).build().run(transport);
+
+        assertTrue(result.isCompleted());
+        assertArrayEquals(ApduUtil.hexStringToByteArray("8010000002"), transport.transmitted.get(2));
+        assertEquals(0x9000, result.getLastStep().getStatusWord());
+    }
+
+    @Test
+    public void emptyDataIsSentWithoutLc() {
+        ScriptedTransport transport = new ScriptedTransport();
+        script().command(SampleCardSchema.GET_DATA, new byte[0]).build().run(transport);
+
+        assertArrayEquals(ApduUtil.hexStringToByteArray("80100000"), transport.transmitted.get(1));
+    }
+
+    @Test
+    public void fixedDataOutsideTheCommandLimitsIsRejected() {
+        try {
+            script().command(SampleCardSchema.UPDATE_RECORD, new byte[256]);
+            fail("Expected data over 255 bytes to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Lc is one byte
+        }
+        try {
+            script().command(SampleCardSchema.AUTHENTICATE, new byte[3]);
+            fail("Expected data under the minimum to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // AUTHENTICATE takes 4 to 16 bytes
+        }
+    }
+
+    @Test
+    public void parameterOutsideTheCommandLimitsIsRejected() {
+        TransactionScript script = script().commandWithParameter(SampleCardSchema.AUTHENTICATE, 0).build();
+        ScriptedTransport transport = new ScriptedTransport();
+        try {
+            script.run(transport, new byte[17]);
+            fail("Expected the parameter to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // AUTHENTICATE takes 4 to 16 bytes
+        }
+
+        TransactionResult result = script.run(transport, "1234".getBytes());
+        assertTrue(result.isCompleted());
+        assertArrayEquals(ApduUtil.hexStringToByteArray("802000010431323334"),
+                transport.transmitted.get(transport.transmitted.size() - 1));
+    }
+}
@@ -0,0 +1,109 @@
+package com.codingr.nfclib.schema.layout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlyweightTest {
+
+    /**
+     * Written like the processor's output for UINT8 record, LV name, TLV fci (tag 6F).
+     */
+    private static final class RecordCommand extends Flyweight {
+
+        RecordCommand wrap(byte[] buffer, int offset, int length) {
+            bind(buffer, offset, length);
+            return this;
+        }
+
+        int getRecord() {
+            int start = offset;
+            checkBounds(start, 1);
+            return getUint8(buffer, start);
+        }
+
+        int nameLength() {
+            return lvFieldSize(offset + 1) - 1;
+        }
+
+        int fciLength() {
+            return tlvFieldSize(offset + 1 + lvFieldSize(offset + 1), 0x6F);
+        }
+
+        @Override
+        public int encodedLength() {
+            return 1 + lvFieldSize(offset + 1) + fciLength();
+        }
+
+        @Override
+        protected int requiredLength() {
+            int p = offset + 1;
+            p = lvEnd(p);
+            if (p < 0) {
+                return -1;
+            }
+            p = tlvEnd(p, 0x6F);
+            if (p < 0) {
+                return -1;
+            }
+            return p - offset;
+        }
+    }
+
+    private static final byte[] PAYLOAD = {0x07, 0x02, 'h', 'i', 0x6F, 0x02, (byte) 0x84, 0x00};
+
+    @Test
+    public void completePayloadIsReadable() {
+        RecordCommand command = new RecordCommand().wrap(PAYLOAD, 0, PAYLOAD.length);
+
+        assertTrue(command.isComplete());
+        assertEquals(7, command.getRecord());
+        assertEquals(2, command.nameLength());
+        assertEquals(4, command.fciLength());
+        assertEquals(PAYLOAD.length, command.encodedLength());
+    }
+
+    @Test
+    public void everyTruncationIsIncomplete() {
+        RecordCommand command = new RecordCommand();
+        for (int length = 0; length < PAYLOAD.length; length++) {
+            assertFalse("length " + length, command.wrap(PAYLOAD, 0, length).isComplete());
+        }
+    }
+
+    @Test
+    public void readingPastTheRegionThrowsIndexOutOfBounds() {
+        RecordCommand command = new RecordCommand().wrap(PAYLOAD, 0, 3);
+        try {
+            command.nameLength();
+            fail("Expected the LV field to be rejected");
+        } catch (IndexOutOfBoundsException expected) {
+            // The value runs one byte past the region
+        }
+        try {
+            command.wrap(PAYLOAD, 0, 0).getRecord();
+            fail("Expected the empty payload to be rejected");
+        } catch (IndexOutOfBoundsException expected) {
+            // Not an ArrayIndexOutOfBoundsException from the backing array
+            assertFalse(expected instanceof ArrayIndexOutOfBoundsException);
+        }
+    }
+
+    @Test
+    public void unexpectedTagIsRejected() {
+        byte[] payload = PAYLOAD.clone();
+        payload[4] = 0x70;
+        RecordCommand command = new RecordCommand().wrap(payload, 0, payload.length);
+
+        assertFalse(command.isComplete());
+        try {
+            command.fciLength();
+            fail("Expected the tag to be checked");
+        } catch (IllegalStateException expected) {
+            // Declared as 6F
+        }
+    }
+}
@@ -7,26 +7,24 @@ import android.os.Bundle;
 import android.util.Log;
 
 import com.codingr.nfclib.hce.annotations.ApduController;
-import com.codingr.nfclib.hce.annotations.ApduMapping;
 import com.codingr.nfclib.hce.util.ApduUtil;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import dalvik.system.DexFile;
 
+/**
+ * Android entry point for card emulation. Routing is done by a {@link RouterEngine};
+ * this service feeds it the APDUs delivered by the platform and logs its decisions.
+ */
 public class ApduRouterService extends HostApduService {
 
     private static final String TAG = "ApduRouterService";
-    private static final byte[] SELECT_APDU_HEADER = {(byte) 0x00, (byte) 0xA4, (byte) 0x04, (byte) 0x00};
+    private static final int DEFAULT_MAX_CHAINED_COMMAND_LENGTH = 16384;
 
-    private Object activeController;
-    private Map<byte[], Method> apduHandlers = new HashMap<>();
+    private RouterSession session;
 
     @Override
     public void onCreate() {
@@ -34,135 +32,229 @@ public class ApduRouterService extends HostApduService {
         Log.i(TAG, "HCE Service created.");
     }
 
-    @Override
-    public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
-        Log.d(TAG, "Received APDU: " + ApduUtil.bytesToHex(commandApdu));
+    /**
+     * Returns how schema-backed controllers are validated. Override to enable
+     * response validation or to turn command validation off.
+     */
+    protected ValidationPolicy getValidationPolicy() {
+        return ValidationPolicy.DEFAULT;
+    }
 
-        if (isSelectApdu(commandApdu)) {
-            return handleSelectApdu(commandApdu);
-        }
+    /**
+     * Returns the registry consulted on SELECT before scanning for
+     * {@code @ApduController} classes.
+     */
+    protected ControllerRegistry getControllerRegistry() {
+        return ControllerRegistry.getDefault();
+    }
 
-        if (activeController == null) {
-            Log.e(TAG, "No active controller. Have you sent a SELECT APDU first?");
-            return ApduUtil.SW_CONDITIONS_NOT_SATISFIED;
-        }
+    /**
+     * Returns the maximum command data length accepted through command chaining.
+     * The reassembly buffer is created by the first chained command and grows up to this size.
+     */
+    protected int getMaxChainedCommandLength() {
+        return DEFAULT_MAX_CHAINED_COMMAND_LENGTH;
+    }
 
-        Method bestMatch = findBestMatch(commandApdu);
+    /**
+     * Returns how long a controller implementing {@link SessionResumable} is kept after the
+     * link to the reader is lost, so a quick re-tap resumes it instead of starting over.
+     * 0, the default, disables resumption.
+     */
+    protected long getResumptionWindowMillis() {
+        return 0;
+    }
 
-        if (bestMatch != null) {
-            try {
-                ApduResponse response = (ApduResponse) bestMatch.invoke(activeController, commandApdu);
-                Log.d(TAG, "Responding with: " + ApduUtil.bytesToHex(response.toBytes()));
-                return response.toBytes();
-            } catch (Exception e) {
-                Log.e(TAG, "Error invoking APDU handler", e);
-                return ApduUtil.SW_CONDITIONS_NOT_SATISFIED;
-            }
-        } else {
-            Log.w(TAG, "No handler found for APDU: " + ApduUtil.bytesToHex(commandApdu));
-            return ApduUtil.SW_INS_NOT_SUPPORTED;
-        }
+    /**
+     * Returns a listener notified of routing events in addition to the service's log,
+     * for example a {@link RouterMetrics}.
+     */
+    protected RouterListener getRouterListener() {
+        return RouterListener.NONE;
     }
 
-    @Override
-    public void onDeactivated(int reason) {
-        Log.i(TAG, "Service deactivated. Reason: " + reason);
-        activeController = null;
-        apduHandlers.clear();
+    /**
+     * Returns whether a successful SELECT is answered with the application's FCI template
+     * instead of a bare 9000. Off by default.
+     */
+    protected boolean isFciEnabled() {
+        return false;
     }
 
-    private boolean isSelectApdu(byte[] commandApdu) {
-        return commandApdu.length > 4 && Arrays.equals(Arrays.copyOfRange(commandApdu, 0, 4), SELECT_APDU_HEADER);
+    /**
+     * Returns whether SELECT 2PAY.SYS.DDF01 is answered with a directory of the hosted
+     * AIDs. Off by default; the PPSE AID must also be listed in {@code @HceService}.
+     */
+    protected boolean isPpseDirectoryEnabled() {
+        return false;
     }
 
-    private byte[] handleSelectApdu(byte[] selectApdu) {
-        int aidLength = selectApdu[4];
-        byte[] aid = Arrays.copyOfRange(selectApdu, 5, 5 + aidLength);
-        String aidHex = ApduUtil.bytesToHex(aid);
-        Log.i(TAG, "SELECT APDU received for AID: " + aidHex);
-
-        try {
-            Class<?> controllerClass = findControllerForAid(aidHex);
-            if (controllerClass != null) {
-                activeController = controllerClass.getDeclaredConstructor().newInstance();
-                loadHandlers(controllerClass);
-                Log.i(TAG, "Activated controller: " + controllerClass.getName());
-                return ApduUtil.SW_OK;
-            } else {
-                Log.w(TAG, "No controller found for AID: " + aidHex);
-                return ApduUtil.SW_FILE_NOT_FOUND;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error activating controller for AID: " + aidHex, e);
-            return ApduUtil.SW_CONDITIONS_NOT_SATISFIED;
+    /**
+     * Returns the engine used by this service, built from the hooks above. Override
+     * to share an engine, for example with a loopback transport used in tests.
+     */
+    protected RouterEngine createRouterEngine() {
+        return new RouterEngine.Builder()
+                .registry(getControllerRegistry())
+                .locator(new DexControllerLocator())
+                .validationPolicy(getValidationPolicy())
+                .maxChainedCommandLength(getMaxChainedCommandLength())
+                .resumptionWindowMillis(getResumptionWindowMillis())
+                .listener(new LogListener(getRouterListener()))
+                .fciResponses(isFciEnabled())
+                .ppseDirectory(isPpseDirectoryEnabled())
+                .build();
+    }
+
+    @Override
+    public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
+        if (session == null) {
+            session = createRouterEngine().newSession();
         }
+        return session.process(commandApdu);
     }
 
-    private Class<?> findControllerForAid(String aid) throws IOException, PackageManager.NameNotFoundException {
-        for (String className : getAllClasses()) {
-            try {
-                Class<?> clazz = Class.forName(className);
-                if (clazz.isAnnotationPresent(ApduController.class)) {
-                    ApduController controllerAnnotation = clazz.getAnnotation(ApduController.class);
-                    for (String supportedAid : controllerAnnotation.aids()) {
-                        if (supportedAid.equalsIgnoreCase(aid)) {
-                            return clazz;
+    @Override
+    public void onDeactivated(int reason) {
+        if (session != null) {
+            session.deactivate(reason);
+        } else {
+            Log.i(TAG, "Service deactivated. Reason: " + reason);
+        }
+    }
+
+    /**
+     * Locates controllers by scanning the application's dex file.
+     */
+    private class DexControllerLocator implements ControllerLocator {
+
+        @Override
+        public Class<?> findController(String aid) throws IOException, PackageManager.NameNotFoundException {
+            for (String className : getAllClasses()) {
+                try {
+                    Class<?> clazz = Class.forName(className);
+                    if (clazz.isAnnotationPresent(ApduController.class)) {
+                        ApduController controllerAnnotation = clazz.getAnnotation(ApduController.class);
+                        for (String supportedAid : controllerAnnotation.aids()) {
+                            if (supportedAid.equalsIgnoreCase(aid)) {
+                                return clazz;
+                            }
                         }
                     }
+                } catch (ClassNotFoundException e) {
+                    // Ignore
                 }
-            } catch (ClassNotFoundException e) {
-                // Ignore
             }
+            return null;
         }
-        return null;
-    }
 
-    private void loadHandlers(Class<?> controllerClass) {
-        apduHandlers.clear();
-        for (Method method : controllerClass.getMethods()) {
-            if (method.isAnnotationPresent(ApduMapping.class)) {
-                ApduMapping mapping = method.getAnnotation(ApduMapping.class);
-                apduHandlers.put(mapping.command(), method);
-                Log.i(TAG, "Mapped command " + ApduUtil.bytesToHex(mapping.command()) + " to " + method.getName());
+        @Override
+        public List<Class<?>> getControllerClasses() throws IOException, PackageManager.NameNotFoundException {
+            List<Class<?>> controllers = new ArrayList<>();
+            for (String className : getAllClasses()) {
+                try {
+                    Class<?> clazz = Class.forName(className);
+                    if (clazz.isAnnotationPresent(ApduController.class)) {
+                        controllers.add(clazz);
+                    }
+                } catch (ClassNotFoundException e) {
+                    // Ignore
+                }
             }
+            return controllers;
         }
-    }
 
-    private List<String> getAllClasses() throws PackageManager.NameNotFoundException, IOException {
-        List<String> classNames = new ArrayList<>();
-        ApplicationInfo appInfo = getPackageManager().getApplicationInfo(getPackageName(), 0);
-        String path = appInfo.sourceDir;
-        DexFile dexfile = null;
-        try {
-            dexfile = new DexFile(path);
-            java.util.Enumeration<String> entries = dexfile.entries();
-            while (entries.hasMoreElements()) {
-                String entry = entries.nextElement();
-                if (entry.startsWith(getPackageName())) {
-                    classNames.add(entry);
+        private List<String> getAllClasses() throws PackageManager.NameNotFoundException, IOException {
+            List<String> classNames = new ArrayList<>();
+            ApplicationInfo appInfo = getPackageManager().getApplicationInfo(getPackageName(), 0);
+            String path = appInfo.sourceDir;
+            DexFile dexfile = null;
+            try {
+                dexfile = new DexFile(path);
+                java.util.Enumeration<String> entries = dexfile.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement();
+                    if (entry.startsWith(getPackageName())) {
+                        classNames.add(entry);
+                    }
+                }
+            } finally {
+                if (dexfile != null) {
+                    dexfile.close();
                 }
             }
-        } finally {
-            if (dexfile != null) {
-                dexfile.close();
-            }
+            return classNames;
         }
-        return classNames;
     }
 
-    private Method findBestMatch(byte[] commandApdu) {
-        Method bestMatch = null;
-        int longestMatch = 0;
+    /**
+     * Logs routing decisions; per-APDU hex dumps only when debug logging is enabled for the tag.
+     */
+    private static class LogListener implements RouterListener {
 
-        for (Map.Entry<byte[], Method> entry : apduHandlers.entrySet()) {
-            byte[] prefix = entry.getKey();
-            if (commandApdu.length >= prefix.length && Arrays.equals(Arrays.copyOfRange(commandApdu, 0, prefix.length), prefix)) {
-                if (prefix.length > longestMatch) {
-                    longestMatch = prefix.length;
-                    bestMatch = entry.getValue();
-                }
+        private final RouterListener delegate;
+
+        LogListener(RouterListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onActivated(String aid, Object controller, boolean registered) {
+            Log.i(TAG, "Activated " + (registered ? "registered controller: " : "controller: ")
+                    + controller.getClass().getName() + " for AID: " + aid);
+            delegate.onActivated(aid, controller, registered);
+        }
+
+        @Override
+        public void onResumed(String aid, Object controller) {
+            Log.i(TAG, "Resumed controller: " + controller.getClass().getName() + " for AID: " + aid);
+            delegate.onResumed(aid, controller);
+        }
+
+        @Override
+        public void onAidNotFound(String aid) {
+            Log.w(TAG, "No controller found for AID: " + aid);
+            delegate.onAidNotFound(aid);
+        }
+
+        @Override
+        public void onActivationError(String aid, Exception error) {
+            Log.e(TAG, "Error activating controller for AID: " + aid, error);
+            delegate.onActivationError(aid, error);
+        }
+
+        @Override
+        public void onRejected(byte[] command, byte[] statusWord, String reason) {
+            Log.w(TAG, reason + " for APDU: " + ApduUtil.bytesToHex(command));
+            delegate.onRejected(command, statusWord, reason);
+        }
+
+        @Override
+        public void onResponseMismatch(String commandId, ApduResponse response) {
+            Log.w(TAG, "Response " + ApduUtil.bytesToHex(response.toBytes()) + " does not match schema for command "
+                    + commandId);
+            delegate.onResponseMismatch(commandId, response);
+        }
+
+        @Override
+        public void onHandlerError(byte[] command, Exception error) {
+            Log.e(TAG, "Error invoking APDU handler", error);
+            delegate.onHandlerError(command, error);
+        }
+
+        @Override
+        public void onCommand(byte[] command, byte[] response, long nanos) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "APDU " + ApduUtil.bytesToHex(command) + " -> " + ApduUtil.bytesToHex(response)
+                        + " in " + (nanos / 1000) + " us");
             }
+            delegate.onCommand(command, response, nanos);
+        }
+
+        @Override
+        public void onDeactivated(int reason) {
+            Log.i(TAG, "Service deactivated. Reason: " + reason);
+            delegate.onDeactivated(reason);
         }
-        return bestMatch;
     }
 }
@@ -2,13 +2,19 @@ package com.codingr.nfclib.hce.processor;
 
 import com.codingr.nfclib.hce.annotations.ApduController;
 import com.codingr.nfclib.hce.annotations.HceService;
+import com.codingr.nfclib.schema.SchemaCommandDeclaration;
+import com.codingr.nfclib.schema.layout.FieldType;
+import com.codingr.nfclib.schema.layout.PayloadField;
+import com.codingr.nfclib.schema.layout.PayloadLayout;
 import com.google.auto.service.AutoService;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
@@ -18,6 +24,7 @@ import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
@@ -26,7 +33,8 @@ import javax.tools.StandardLocation;
 @AutoService(Processor.class)
 @SupportedAnnotationTypes({
     "com.codingr.nfclib.hce.annotations.HceService",
-    "com.codingr.nfclib.hce.annotations.ApduController"
+    "com.codingr.nfclib.hce.annotations.ApduController",
+    "com.codingr.nfclib.schema.layout.PayloadLayout"
 })
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
 public class HceServiceProcessor extends AbstractProcessor {
@@ -58,6 +66,29 @@ public class HceServiceProcessor extends AbstractProcessor {
                 for (String aid : controller.aids()) {
                     allAids.add(aid);
                 }
+                checkSelectMetadata(controller, typeElement);
+            }
+        }
+        
+        // Process @PayloadLayout annotations, grouped by the schema class declaring them
+        Map<TypeElement, List<ExecutableElement>> layoutsBySchema = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(PayloadLayout.class)) {
+            if (element instanceof ExecutableElement) {
+                TypeElement schemaType = (TypeElement) element.getEnclosingElement();
+                List<ExecutableElement> methods = layoutsBySchema.get(schemaType);
+                if (methods == null) {
+                    methods = new ArrayList<>();
+                    layoutsBySchema.put(schemaType, methods);
+                }
+                methods.add((ExecutableElement) element);
+            }
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : layoutsBySchema.entrySet()) {
+            try {
+                generateLayouts(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not generate payload layouts: " + e.getMessage(), entry.getKey());
             }
         }
         
@@ -75,6 +106,21 @@ public class HceServiceProcessor extends AbstractProcessor {
         return true;
     }
 
+    /**
+     * The label and priority end up in FCI and PPSE responses; reject values readers cannot handle.
+     */
+    private void checkSelectMetadata(ApduController controller, TypeElement element) {
+        String label = controller.label();
+        if (label.length() > 16 || !label.matches("[\\x20-\\x7E]*")) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "@ApduController label must be at most 16 printable ASCII characters", element);
+        }
+        if (controller.priority() < 0 || controller.priority() > 15) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "@ApduController priority must be between 0 (none) and 15", element);
+        }
+    }
+
     private void generateAidListXml(String[] aids) throws IOException {
         FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "res/xml/aid_list.xml");
         try (Writer writer = file.openWriter()) {
@@ -125,4 +171,344 @@ public class HceServiceProcessor extends AbstractProcessor {
             writer.write("</manifest>\n");
         }
     }
+    /**
+     * Generates {@code <Schema>Layouts}, holding one flyweight class per declared
+     * command or response layout of the schema.
+     */
+    private void generateLayouts(TypeElement schemaType, List<ExecutableElement> methods) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(schemaType).getQualifiedName().toString();
+        String className = schemaType.getSimpleName() + "Layouts";
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        StringBuilder body = new StringBuilder();
+        for (ExecutableElement method : methods) {
+            PayloadLayout layout = method.getAnnotation(PayloadLayout.class);
+            SchemaCommandDeclaration declaration = method.getAnnotation(SchemaCommandDeclaration.class);
+            String commandId = declaration != null ? declaration.commandId() : method.getSimpleName().toString();
+            String baseName = toTypeName(commandId);
+
+            if (layout.command().length > 0 && validateLayout(method, layout.command())) {
+                appendFlyweight(body, baseName + "Command", commandId, "command data", layout.command(), true);
+            }
+            if (layout.response().length > 0 && validateLayout(method, layout.response())) {
+                appendFlyweight(body, baseName + "Response", commandId, "response data", layout.response(), false);
+            }
+        }
+
+        FileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, schemaType);
+        try (Writer writer = file.openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("import com.codingr.nfclib.schema.layout.Flyweight;\n");
+            writer.write("import com.codingr.nfclib.schema.layout.TlvView;\n\n");
+            writer.write("/**\n");
+            writer.write(" * Payload flyweights for {@link " + schemaType.getSimpleName() + "}.\n");
+            writer.write(" * Generated by the HCE annotation processor from @PayloadLayout - do not edit.\n");
+            writer.write(" */\n");
+            writer.write("public final class " + className + " {\n\n");
+            writer.write("    private " + className + "() {\n    }\n");
+            writer.write(body.toString());
+            writer.write("}\n");
+        }
+    }
+
+    private boolean validateLayout(ExecutableElement method, PayloadField[] fields) {
+        boolean valid = true;
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < fields.length; i++) {
+            PayloadField field = fields[i];
+            if (!names.add(field.name())) {
+                error(method, "Duplicate payload field name: " + field.name());
+                valid = false;
+            }
+            if (field.type() == FieldType.BCD && field.length() <= 0) {
+                error(method, "BCD field '" + field.name() + "' needs a length");
+                valid = false;
+            }
+            if (field.type() == FieldType.BYTES && field.length() == 0 && i != fields.length - 1) {
+                error(method, "Remainder BYTES field '" + field.name() + "' must be the last field");
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void appendFlyweight(StringBuilder out, String className, String commandId, String what,
+                                 PayloadField[] fields, boolean command) {
+        out.append("\n    /**\n");
+        out.append("     * Flyweight over the ").append(commandId).append(' ').append(what).append(".\n");
+        out.append("     */\n");
+        out.append("    public static final class ").append(className).append(" extends Flyweight {\n\n");
+
+        out.append("        public ").append(className).append(" wrap(byte[] buffer, int offset, int length) {\n");
+        out.append("            bind(buffer, offset, length);\n");
+        out.append("            return this;\n");
+        out.append("        }\n\n");
+        String wrapName = command ? "wrapApdu" : "wrapResponse";
+        String bindName = command ? "bindApdu" : "bindResponse";
+        out.append("        public ").append(className).append(' ').append(wrapName).append("(byte[] bytes) {\n");
+        out.append("            ").append(bindName).append("(bytes, bytes.length);\n");
+        out.append("            return this;\n");
+        out.append("        }\n\n");
+        out.append("        public ").append(className).append(' ').append(wrapName).append("(byte[] bytes, int length) {\n");
+        out.append("            ").append(bindName).append("(bytes, length);\n");
+        out.append("            return this;\n");
+        out.append("        }\n");
+
+        // Offsets are constants until the first field whose size is read from the payload
+        int constantOffset = 0;
+        String previousEnd = null;
+        // Body of requiredLength(): walks the fields without reading past the region
+        StringBuilder required = new StringBuilder();
+        int requiredFixed = 0;
+        for (PayloadField field : fields) {
+            String name = field.name();
+            String start = previousEnd == null ? "offset + " + constantOffset : previousEnd + "()";
+            String startMethod = name + "Start";
+            out.append("\n        private int ").append(startMethod).append("() {\n");
+            out.append("            return ").append(start).append(";\n");
+            out.append("        }\n");
+
+            int fixedSize = fixedSize(field);
+            String endMethod = name + "End";
+            if (previousEnd != null || fixedSize <= 0) {
+                out.append("\n        private int ").append(endMethod).append("() {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            return start + ").append(sizeExpression(field, fixedSize)).append(";\n");
+                out.append("        }\n");
+            }
+            appendAccessors(out, className, field, fixedSize, startMethod);
+
+            if (fixedSize > 0 && previousEnd == null) {
+                constantOffset += fixedSize;
+            } else {
+                previousEnd = endMethod;
+            }
+
+            if (fixedSize > 0) {
+                requiredFixed += fixedSize;
+            } else if (field.type().isSelfDelimited()) {
+                if (required.length() == 0) {
+                    required.append("            int p = offset + ").append(requiredFixed).append(";\n");
+                } else if (requiredFixed > 0) {
+                    required.append("            p += ").append(requiredFixed).append(";\n");
+                }
+                requiredFixed = 0;
+                if (field.type() == FieldType.LV) {
+                    required.append("            p = lvEnd(p);\n");
+                } else {
+                    required.append("            p = tlvEnd(p, ").append(tagLiteral(field)).append(");\n");
+                }
+                required.append("            if (p < 0) {\n");
+                required.append("                return -1;\n");
+                required.append("            }\n");
+            }
+        }
+
+        out.append("\n        @Override\n");
+        out.append("        public int encodedLength() {\n");
+        if (previousEnd == null) {
+            out.append("            return ").append(constantOffset).append(";\n");
+        } else {
+            out.append("            return ").append(previousEnd).append("() - offset;\n");
+        }
+        out.append("        }\n");
+
+        // A trailing BYTES field without length takes whatever is left, possibly nothing
+        out.append("\n        @Override\n");
+        out.append("        protected int requiredLength() {\n");
+        if (required.length() == 0) {
+            out.append("            return ").append(requiredFixed).append(";\n");
+        } else {
+            out.append(required);
+            out.append("            return p - offset").append(requiredFixed > 0 ? " + " + requiredFixed : "").append(";\n");
+        }
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    private String tagLiteral(PayloadField field) {
+        return field.tag() == 0 ? "0" : "0x" + Integer.toHexString(field.tag()).toUpperCase();
+    }
+
+    private int fixedSize(PayloadField field) {
+        switch (field.type()) {
+            case UINT8:
+            case UINT16:
+            case UINT32:
+                return field.type().getSize();
+            case BCD:
+                return field.length();
+            case BYTES:
+                return field.length() > 0 ? field.length() : -1;
+            default:
+                return -1;
+        }
+    }
+
+    private String sizeExpression(PayloadField field, int fixedSize) {
+        if (fixedSize > 0) {
+            return String.valueOf(fixedSize);
+        }
+        switch (field.type()) {
+            case LV:
+                return "lvFieldSize(start)";
+            case TLV:
+                return "tlvFieldSize(start, " + tagLiteral(field) + ")";
+            default:
+                return "(offset + length - start)";
+        }
+    }
+
+    private void appendAccessors(StringBuilder out, String className, PayloadField field, int fixedSize, String startMethod) {
+        String name = field.name();
+        String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        switch (field.type()) {
+            case UINT8:
+            case UINT16:
+            case UINT32: {
+                String javaType = field.type() == FieldType.UINT32 ? "long" : "int";
+                String suffix = field.type() == FieldType.UINT8 ? "Uint8" : field.type() == FieldType.UINT16 ? "Uint16" : "Uint32";
+                out.append("\n        public ").append(javaType).append(" get").append(cap).append("() {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            checkBounds(start, ").append(fixedSize).append(");\n");
+                out.append("            return get").append(suffix).append("(buffer, start);\n");
+                out.append("        }\n");
+                out.append("\n        public ").append(className).append(" set").append(cap).append('(').append(javaType).append(" value) {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            checkBounds(start, ").append(fixedSize).append(");\n");
+                out.append("            put").append(suffix).append("(buffer, start, value);\n");
+                out.append("            return this;\n");
+                out.append("        }\n");
+                break;
+            }
+            case BCD:
+                out.append("\n        public long get").append(cap).append("() {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            checkBounds(start, ").append(fixedSize).append(");\n");
+                out.append("            return getBcd(buffer, start, ").append(fixedSize).append(");\n");
+                out.append("        }\n");
+                out.append("\n        public ").append(className).append(" set").append(cap).append("(long value) {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            checkBounds(start, ").append(fixedSize).append(");\n");
+                out.append("            putBcd(buffer, start, ").append(fixedSize).append(", value);\n");
+                out.append("            return this;\n");
+                out.append("        }\n");
+                break;
+            case BYTES:
+                out.append("\n        public int ").append(name).append("Offset() {\n");
+                out.append("            return ").append(startMethod).append("();\n");
+                out.append("        }\n");
+                out.append("\n        public int ").append(name).append("Length() {\n");
+                if (fixedSize > 0) {
+                    out.append("            return ").append(fixedSize).append(";\n");
+                } else {
+                    out.append("            int start = ").append(startMethod).append("();\n");
+                    out.append("            checkBounds(start, 0);\n");
+                    out.append("            return offset + length - start;\n");
+                }
+                out.append("        }\n");
+                appendCopyOut(out, name, cap);
+                if (fixedSize > 0) {
+                    out.append("\n        public ").append(className).append(" set").append(cap).append("(byte[] src, int srcOffset) {\n");
+                    out.append("            int start = ").append(startMethod).append("();\n");
+                    out.append("            checkBounds(start, ").append(fixedSize).append(");\n");
+                    out.append("            System.arraycopy(src, srcOffset, buffer, start, ").append(fixedSize).append(");\n");
+                    out.append("            return this;\n");
+                    out.append("        }\n");
+                } else {
+                    out.append("\n        public ").append(className).append(" set").append(cap).append("(byte[] src, int srcOffset, int len) {\n");
+                    out.append("            int start = ").append(startMethod).append("();\n");
+                    out.append("            checkBounds(start, len);\n");
+                    out.append("            System.arraycopy(src, srcOffset, buffer, start, len);\n");
+                    out.append("            length = start + len - offset;\n");
+                    out.append("            return this;\n");
+                    out.append("        }\n");
+                }
+                break;
+            case LV:
+                out.append("\n        public int ").append(name).append("Offset() {\n");
+                out.append("            return ").append(startMethod).append("() + 1;\n");
+                out.append("        }\n");
+                out.append("\n        public int ").append(name).append("Length() {\n");
+                out.append("            return lvFieldSize(").append(startMethod).append("()) - 1;\n");
+                out.append("        }\n");
+                appendCopyOut(out, name, cap);
+                out.append("\n        public ").append(className).append(" set").append(cap).append("(byte[] src, int srcOffset, int len) {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            if (len > 0xFF) {\n");
+                out.append("                throw new IllegalArgumentException(\"").append(name)
+                   .append(" is limited to 255 bytes, got \" + len);\n");
+                out.append("            }\n");
+                out.append("            checkBounds(start, len + 1);\n");
+                out.append("            buffer[start] = (byte) len;\n");
+                out.append("            System.arraycopy(src, srcOffset, buffer, start + 1, len);\n");
+                out.append("            return this;\n");
+                out.append("        }\n");
+                break;
+            case TLV:
+                out.append("\n        public int ").append(name).append("Offset() {\n");
+                out.append("            return ").append(startMethod).append("();\n");
+                out.append("        }\n");
+                out.append("\n        public int ").append(name).append("Length() {\n");
+                out.append("            return tlvFieldSize(").append(startMethod).append("(), ").append(tagLiteral(field)).append(");\n");
+                out.append("        }\n");
+                out.append("\n        /**\n");
+                out.append("         * Positions {@code view} on the ").append(name).append(" object; use {@link TlvView#enter} for its children.\n");
+                out.append("         */\n");
+                out.append("        public TlvView ").append(name).append("(TlvView view) {\n");
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            view.wrap(buffer, start, tlvFieldSize(start, ").append(tagLiteral(field)).append(")).next();\n");
+                out.append("            return view;\n");
+                out.append("        }\n");
+                out.append("\n        public ").append(className).append(" set").append(cap).append("(int tag, byte[] src, int srcOffset, int len) {\n");
+                if (field.tag() != 0) {
+                    out.append("            if (tag != ").append(tagLiteral(field)).append(") {\n");
+                    out.append("                throw new IllegalArgumentException(\"").append(name)
+                       .append(" must have tag ").append(Integer.toHexString(field.tag()).toUpperCase())
+                       .append(", got \" + Integer.toHexString(tag).toUpperCase());\n");
+                    out.append("            }\n");
+                }
+                out.append("            int start = ").append(startMethod).append("();\n");
+                out.append("            checkBounds(start, TlvView.headerSize(tag, len) + len);\n");
+                out.append("            int headerLength = TlvView.putHeader(buffer, start, tag, len);\n");
+                out.append("            System.arraycopy(src, srcOffset, buffer, start + headerLength, len);\n");
+                out.append("            return this;\n");
+                out.append("        }\n");
+                if (field.tag() != 0) {
+                    out.append("\n        public ").append(className).append(" set").append(cap).append("(byte[] src, int srcOffset, int len) {\n");
+                    out.append("            return set").append(cap).append('(').append(tagLiteral(field))
+                       .append(", src, srcOffset, len);\n");
+                    out.append("        }\n");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void appendCopyOut(StringBuilder out, String name, String cap) {
+        out.append("\n        public int get").append(cap).append("(byte[] dst, int dstOffset) {\n");
+        out.append("            int start = ").append(name).append("Offset();\n");
+        out.append("            int len = ").append(name).append("Length();\n");
+        out.append("            checkBounds(start, len);\n");
+        out.append("            System.arraycopy(buffer, start, dst, dstOffset, len);\n");
+        out.append("            return len;\n");
+        out.append("        }\n");
+    }
+
+    private String toTypeName(String commandId) {
+        StringBuilder typeName = new StringBuilder();
+        for (String part : commandId.toLowerCase().split("_")) {
+            if (!part.isEmpty()) {
+                typeName.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+            }
+        }
+        return typeName.toString();
+    }
 }